@@ -0,0 +1,23 @@
+package com.example.moviesearch.Service;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+// Indgang for benchmarks.jar. Tager de almindelige JMH-argumenter (fx "Mapping -f 1 -wi 3"),
+// men slår altid GC-profileren til, så hver benchmark også rapporterer gc.alloc.rate.norm (bytes pr. kald).
+public final class BenchmarkMain {
+
+    private BenchmarkMain() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        CommandLineOptions commandLine = new CommandLineOptions(args);
+        new Runner(new OptionsBuilder()
+                .parent(commandLine)
+                .addProfiler(GCProfiler.class)
+                .build())
+                .run();
+    }
+}
@@ -0,0 +1,53 @@
+package com.example.moviesearch.Service;
+
+import com.example.moviesearch.Model.GenreDto;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.List;
+
+// Fælles testdata til benchmarks. Filerne i resources/fixtures er realistiske svar fra TMDB og OpenAI
+// (en /movie/popular side med 20 film, genrelisten og en chat completion med 10 titler).
+final class Fixtures {
+
+    static final String TMDB_POPULAR_PAGE = "fixtures/tmdb-popular-page.json";
+    static final String TMDB_GENRES = "fixtures/tmdb-genres.json";
+    static final String OPENAI_CHAT_COMPLETION = "fixtures/openai-chat-completion.json";
+
+    private Fixtures() {
+    }
+
+    // Samme opsætning som Spring Boots ObjectMapper (bl.a. ukendte felter ignoreres, som i WebClient)
+    static ObjectMapper objectMapper() {
+        return Jackson2ObjectMapperBuilder.json().build();
+    }
+
+    static byte[] bytes(String name) {
+        try (InputStream in = Fixtures.class.getClassLoader().getResourceAsStream(name)) {
+            if (in == null) {
+                throw new IllegalStateException("Mangler fixture: " + name);
+            }
+            return in.readAllBytes();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    static <T> T read(ObjectMapper objectMapper, String name, Class<T> type) {
+        try {
+            return objectMapper.readValue(bytes(name), type);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    static GenreTable genreTable(ObjectMapper objectMapper) {
+        List<GenreDto> genres = read(objectMapper, TMDB_GENRES, MovieService.TmdbGenreApiResponse.class).getGenres();
+        GenreTable genreTable = new GenreTable();
+        genreTable.update(genres);
+        return genreTable;
+    }
+}
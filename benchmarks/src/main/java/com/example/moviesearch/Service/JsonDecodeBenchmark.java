@@ -0,0 +1,52 @@
+package com.example.moviesearch.Service;
+
+import com.example.moviesearch.Model.ChatCompletionResponse;
+import com.fasterxml.jackson.databind.ObjectReader;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+// Jackson databind af de rå svar fra TMDB og OpenAI (TMDB-siden til det tidligere objekt-træ,
+// se MappingBenchmark for den direkte vej til MovieDto).
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class JsonDecodeBenchmark {
+
+    private ObjectReader tmdbPageReader;
+    private ObjectReader chatCompletionReader;
+    private byte[] tmdbPage;
+    private byte[] chatCompletion;
+
+    @Setup
+    public void setup() {
+        var objectMapper = Fixtures.objectMapper();
+        tmdbPageReader = objectMapper.readerFor(LegacyTmdbMapping.TmdbMovieApiResponse.class);
+        chatCompletionReader = objectMapper.readerFor(ChatCompletionResponse.class);
+        tmdbPage = Fixtures.bytes(Fixtures.TMDB_POPULAR_PAGE);
+        chatCompletion = Fixtures.bytes(Fixtures.OPENAI_CHAT_COMPLETION);
+    }
+
+    @Benchmark
+    public LegacyTmdbMapping.TmdbMovieApiResponse decodeTmdbPage() throws IOException {
+        return tmdbPageReader.readValue(tmdbPage);
+    }
+
+    @Benchmark
+    public ChatCompletionResponse decodeChatCompletion() throws IOException {
+        return chatCompletionReader.readValue(chatCompletion);
+    }
+}
@@ -0,0 +1,72 @@
+package com.example.moviesearch.Service;
+
+import com.example.moviesearch.Model.GenreDto;
+import com.example.moviesearch.Model.MovieDto;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+// Den tidligere vej fra TMDB-JSON til MovieDto, bevaret her som reference for benchmarks:
+// Jackson databind til TMDB's eget objekt-træ, derefter kopieret over i MovieDto.
+// Produktionskoden bruger nu TmdbMovieDecoder, som læser direkte til MovieDto.
+final class LegacyTmdbMapping {
+
+    private final GenreTable genreTable;
+
+    LegacyTmdbMapping(GenreTable genreTable) {
+        this.genreTable = genreTable;
+    }
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class TmdbMovieApiResponse {
+        private Integer page;
+        private List<TmdbMovie> results;
+        private Integer total_pages;
+        private Integer total_results;
+
+        @Data
+        @NoArgsConstructor
+        @AllArgsConstructor
+        public static class TmdbMovie {
+            private Integer id;
+            private String title;
+            private String overview;
+            private String release_date;
+            private String poster_path;
+            private Double vote_average;
+            private List<GenreDto> genres;
+            private List<Integer> genre_ids;
+        }
+    }
+
+    List<MovieDto> mapResults(TmdbMovieApiResponse response) {
+        if (response.getResults() == null) {
+            return List.of();
+        }
+        return response.getResults().stream()
+                .map(this::mapToMovieDto)
+                .collect(Collectors.toList());
+    }
+
+    private MovieDto mapToMovieDto(TmdbMovieApiResponse.TmdbMovie tmdbMovie) {
+        List<GenreDto> mappedGenres;
+        if (tmdbMovie.getGenres() != null && !tmdbMovie.getGenres().isEmpty()) {
+            mappedGenres = tmdbMovie.getGenres();
+        } else if (tmdbMovie.getGenre_ids() != null && !tmdbMovie.getGenre_ids().isEmpty()) {
+            mappedGenres = new ArrayList<>(tmdbMovie.getGenre_ids().size());
+            for (Integer id : tmdbMovie.getGenre_ids()) {
+                mappedGenres.add(genreTable.resolve(id));
+            }
+        } else {
+            mappedGenres = List.of();
+        }
+        return new MovieDto(tmdbMovie.getId(), tmdbMovie.getTitle(), tmdbMovie.getRelease_date(),
+                tmdbMovie.getVote_average(), tmdbMovie.getPoster_path(), tmdbMovie.getOverview(), mappedGenres);
+    }
+}
@@ -0,0 +1,62 @@
+package com.example.moviesearch.Service;
+
+import com.example.moviesearch.Model.MovieDto;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Et /ai-recommend svar fra LocalMovieIndex i stedet for OpenAI. Indekset fyldes med movies film,
+// lavet ud fra fixture-siden med nye id'er, så alle pladser har realistiske overviews og genrer.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class LocalMovieIndexBenchmark {
+
+    @Param({"1000", "10000"})
+    private int movies;
+
+    private LocalMovieIndex index;
+
+    @Setup
+    public void setup() throws IOException {
+        var objectMapper = Fixtures.objectMapper();
+        List<MovieDto> page = new TmdbMovieDecoder(objectMapper, Fixtures.genreTable(objectMapper))
+                .decodePage(Fixtures.bytes(Fixtures.TMDB_POPULAR_PAGE))
+                .getResults();
+        // min-movies=0, så der altid søges helt igennem
+        index = new LocalMovieIndex(new SimpleMeterRegistry(), true, 512, movies, 0, 0.6, 0.25f, 3, 5);
+        List<MovieDto> batch = new ArrayList<>(page.size());
+        for (int i = 0; i < movies; i++) {
+            MovieDto source = page.get(i % page.size());
+            batch.add(new MovieDto(i + 1, source.getTitle() + " " + i, source.getReleaseDate(), source.getVoteAverage(),
+                    source.getPosterPath(), source.getOverview(), source.getGenres()));
+            if (batch.size() == page.size()) {
+                index.addAll(batch);
+                batch = new ArrayList<>(page.size());
+            }
+        }
+        index.addAll(batch);
+    }
+
+    @Benchmark
+    public List<MovieDto> answerPrompt() {
+        return index.answer("en ung kvinde der rejser gennem et ødelagt land");
+    }
+}
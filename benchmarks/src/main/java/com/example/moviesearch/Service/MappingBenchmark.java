@@ -0,0 +1,64 @@
+package com.example.moviesearch.Service;
+
+import com.example.moviesearch.Model.MovieDto;
+import com.example.moviesearch.Model.MoviePage;
+import com.fasterxml.jackson.databind.ObjectReader;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Fra rå TMDB-bytes (en side med 20 film) til List<MovieDto>, som popular, now-playing, by-genre og search gør.
+//   legacyDatabindAndMap   den tidligere vej: databind til TmdbMovieApiResponse + mapResults
+//   streamingDecode        TmdbMovieDecoder direkte til MovieDto
+//   mapOnly                kun kopieringen fra det færdige TMDB-objekt-træ (mapResults)
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class MappingBenchmark {
+
+    private byte[] body;
+    private ObjectReader legacyReader;
+    private LegacyTmdbMapping legacyMapping;
+    private LegacyTmdbMapping.TmdbMovieApiResponse decodedPage;
+    private TmdbMovieDecoder decoder;
+
+    @Setup
+    public void setup() throws IOException {
+        var objectMapper = Fixtures.objectMapper();
+        GenreTable genreTable = Fixtures.genreTable(objectMapper);
+        body = Fixtures.bytes(Fixtures.TMDB_POPULAR_PAGE);
+        legacyReader = objectMapper.readerFor(LegacyTmdbMapping.TmdbMovieApiResponse.class);
+        legacyMapping = new LegacyTmdbMapping(genreTable);
+        decodedPage = legacyReader.readValue(body);
+        decoder = new TmdbMovieDecoder(objectMapper, genreTable);
+    }
+
+    @Benchmark
+    public List<MovieDto> legacyDatabindAndMap() throws IOException {
+        return legacyMapping.mapResults(legacyReader.readValue(body));
+    }
+
+    @Benchmark
+    public MoviePage streamingDecode() throws IOException {
+        return decoder.decodePage(body);
+    }
+
+    @Benchmark
+    public List<MovieDto> mapOnly() {
+        return legacyMapping.mapResults(decodedPage);
+    }
+}
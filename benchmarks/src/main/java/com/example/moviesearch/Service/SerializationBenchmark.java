@@ -0,0 +1,47 @@
+package com.example.moviesearch.Service;
+
+import com.example.moviesearch.Model.MovieDto;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Serialisering af List<MovieDto> til JSON, som controllerne gør for hvert liste-svar.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class SerializationBenchmark {
+
+    private ObjectWriter movieListWriter;
+    private List<MovieDto> movies;
+
+    @Setup
+    public void setup() throws IOException {
+        var objectMapper = Fixtures.objectMapper();
+        movies = new TmdbMovieDecoder(objectMapper, Fixtures.genreTable(objectMapper))
+                .decodePage(Fixtures.bytes(Fixtures.TMDB_POPULAR_PAGE))
+                .getResults();
+        movieListWriter = objectMapper.writerFor(objectMapper.getTypeFactory()
+                .constructCollectionType(List.class, MovieDto.class));
+    }
+
+    @Benchmark
+    public byte[] serializeMovieList() throws JsonProcessingException {
+        return movieListWriter.writeValueAsBytes(movies);
+    }
+}
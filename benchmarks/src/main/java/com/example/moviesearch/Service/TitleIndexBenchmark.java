@@ -0,0 +1,77 @@
+package com.example.moviesearch.Service;
+
+import com.example.moviesearch.Model.MovieDto;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Et /autocomplete svar fra TitleIndex. Indekset fyldes med movies titler lavet ud fra fixture-siden med nye id'er,
+// så hver titel findes movies / 20 gange (fx "Dune: Del to 41"), og kortere forespørgsler har mange kandidater.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class TitleIndexBenchmark {
+
+    @Param({"1000", "50000"})
+    private int movies;
+
+    private TitleIndex index;
+
+    @Setup
+    public void setup() throws IOException {
+        var objectMapper = Fixtures.objectMapper();
+        List<MovieDto> page = new TmdbMovieDecoder(objectMapper, Fixtures.genreTable(objectMapper))
+                .decodePage(Fixtures.bytes(Fixtures.TMDB_POPULAR_PAGE))
+                .getResults();
+        index = new TitleIndex(new SimpleMeterRegistry(), true, movies, Duration.ZERO);
+        List<MovieDto> batch = new ArrayList<>(movies);
+        for (int i = 0; i < movies; i++) {
+            MovieDto source = page.get(i % page.size());
+            batch.add(new MovieDto(i + 1, source.getTitle() + " " + i, source.getReleaseDate(), source.getVoteAverage(),
+                    source.getPosterPath(), source.getOverview(), source.getGenres()));
+        }
+        index.addAll(batch);
+        index.rebuild(); // Snapshottet bygges ellers i baggrunden
+    }
+
+    // For kort til trigrammer, prefix-opslag i de sorterede titelord
+    @Benchmark
+    public List<MovieDto> shortPrefix() {
+        return index.search("du", 8);
+    }
+
+    // Fællesmængden af trigrammerne for "gladi"
+    @Benchmark
+    public List<MovieDto> trigramWord() {
+        return index.search("gladi", 8);
+    }
+
+    @Benchmark
+    public List<MovieDto> multipleWords() {
+        return index.search("planet of the ap", 8);
+    }
+
+    // Ingen titel har trigrammet, så opslaget stopper ved første binære søgning
+    @Benchmark
+    public List<MovieDto> miss() {
+        return index.search("xyzzy", 8);
+    }
+}
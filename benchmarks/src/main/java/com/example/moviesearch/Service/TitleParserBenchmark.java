@@ -0,0 +1,39 @@
+package com.example.moviesearch.Service;
+
+import com.example.moviesearch.Model.ChatCompletionResponse;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Kommasplit af AI'ens svar til titler, som i AiService.generateMovieTitlesFromPrompt.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class TitleParserBenchmark {
+
+    private String content;
+
+    @Setup
+    public void setup() {
+        content = Fixtures.read(Fixtures.objectMapper(), Fixtures.OPENAI_CHAT_COMPLETION, ChatCompletionResponse.class)
+                .getChoices().get(0).getMessage().getContent();
+    }
+
+    @Benchmark
+    public List<String> parseTitles() {
+        return TitleParser.parse(content);
+    }
+}
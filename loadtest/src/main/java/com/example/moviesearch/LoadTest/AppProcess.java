@@ -0,0 +1,110 @@
+package com.example.moviesearch.LoadTest;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// Starter MovieSearch som en separat JVM mod stand-in'erne og læser tråde og heap via /actuator/metrics.
+// Kan også pege på en instans der allerede kører (--target), så bliver der ikke startet noget.
+public final class AppProcess implements AutoCloseable {
+
+    private static final Pattern VALUE = Pattern.compile("\"statistic\"\\s*:\\s*\"VALUE\"\\s*,\\s*\"value\"\\s*:\\s*([0-9.E+-]+)");
+
+    private final Process process;
+    private final String baseUrl;
+    private final HttpClient client = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(2)).build();
+
+    private AppProcess(Process process, String baseUrl) {
+        this.process = process;
+        this.baseUrl = baseUrl;
+    }
+
+    public static AppProcess attach(String baseUrl) {
+        return new AppProcess(null, baseUrl);
+    }
+
+    public static AppProcess start(Path jar, List<String> jvmArgs, Map<String, String> properties, Path log)
+            throws IOException, InterruptedException {
+        int port;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        List<String> command = new ArrayList<>();
+        command.add(Path.of(System.getProperty("java.home"), "bin", "java").toString());
+        command.addAll(jvmArgs);
+        command.add("-jar");
+        command.add(jar.toString());
+        command.add("--server.port=" + port);
+        properties.forEach((key, value) -> command.add("--" + key + "=" + value));
+
+        ProcessBuilder builder = new ProcessBuilder(command).redirectErrorStream(true).redirectOutput(log.toFile());
+        builder.environment().putIfAbsent("API_KEY", "loadtest"); // Stand-in'erne tjekker ikke nøglen
+        AppProcess app = new AppProcess(builder.start(), "http://127.0.0.1:" + port);
+        app.awaitHealthy(Duration.ofSeconds(90), log);
+        return app;
+    }
+
+    public String getBaseUrl() {
+        return baseUrl;
+    }
+
+    private void awaitHealthy(Duration timeout, Path log) throws InterruptedException {
+        long deadline = System.nanoTime() + timeout.toNanos();
+        while (System.nanoTime() < deadline) {
+            if (process != null && !process.isAlive()) {
+                throw new IllegalStateException("Applikationen stoppede under opstart, se " + log);
+            }
+            String health = get("/actuator/health");
+            if (health != null && health.contains("\"UP\"")) {
+                return;
+            }
+            Thread.sleep(500);
+        }
+        throw new IllegalStateException("Applikationen blev ikke klar inden " + timeout + ", se " + log);
+    }
+
+    // Værdien af en gauge fra /actuator/metrics, fx jvm.threads.live eller jvm.memory.used?tag=area:heap. NaN hvis den mangler.
+    public double metric(String nameAndTags) {
+        String json = get("/actuator/metrics/" + nameAndTags);
+        if (json == null) {
+            return Double.NaN;
+        }
+        Matcher matcher = VALUE.matcher(json);
+        return matcher.find() ? Double.parseDouble(matcher.group(1)) : Double.NaN;
+    }
+
+    private String get(String path) {
+        try {
+            HttpResponse<String> response = client.send(HttpRequest.newBuilder(URI.create(baseUrl + path))
+                    .timeout(Duration.ofSeconds(2)).build(), HttpResponse.BodyHandlers.ofString());
+            return response.statusCode() == 200 ? response.body() : null;
+        } catch (IOException e) {
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+    }
+
+    @Override
+    public void close() throws InterruptedException {
+        if (process == null) {
+            return;
+        }
+        process.destroy();
+        if (!process.waitFor(20, TimeUnit.SECONDS)) {
+            process.destroyForcibly();
+        }
+    }
+}
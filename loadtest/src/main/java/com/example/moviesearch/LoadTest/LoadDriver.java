@@ -0,0 +1,126 @@
+package com.example.moviesearch.LoadTest;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+// Open-loop driver: requests startes på et fast tidspunkt (target RPS), uanset om de forrige er færdige.
+// Latency måles fra det planlagte starttidspunkt, ikke fra hvornår requesten faktisk blev sendt,
+// så en overbelastet instans ikke skjuler sin kø (coordinated omission).
+public final class LoadDriver {
+
+    private final HttpClient client;
+    private final String baseUrl;
+    private final Duration requestTimeout;
+
+    public LoadDriver(String baseUrl, Duration requestTimeout) {
+        this.baseUrl = baseUrl;
+        this.requestTimeout = requestTimeout;
+        this.client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(5))
+                .executor(Executors.newVirtualThreadPerTaskExecutor())
+                .build();
+    }
+
+    // Resultat af én kørsel ved én RPS
+    public static final class Result {
+        final int targetRps;
+        final long sent;
+        final long completed;
+        final long errors; // svar fra 500 og op, netværksfejl og requests der ikke blev færdige
+        final double seconds; // den planlagte varighed, så throughput kan sammenlignes direkte med target
+        final int maxInFlight;
+        final long[] latenciesNanos; // sorteret, kun gennemførte requests
+
+        Result(int targetRps, long sent, long completed, long errors, double seconds, int maxInFlight, long[] latenciesNanos) {
+            this.targetRps = targetRps;
+            this.sent = sent;
+            this.completed = completed;
+            this.errors = errors;
+            this.seconds = seconds;
+            this.maxInFlight = maxInFlight;
+            this.latenciesNanos = latenciesNanos;
+        }
+
+        public double throughput() {
+            return (sent - errors) / seconds;
+        }
+
+        public double errorRate() {
+            return (double) errors / sent;
+        }
+
+        public Duration percentile(double p) {
+            if (latenciesNanos.length == 0) {
+                return Duration.ZERO;
+            }
+            int index = (int) Math.ceil(p / 100.0 * latenciesNanos.length) - 1;
+            return Duration.ofNanos(latenciesNanos[Math.max(0, Math.min(index, latenciesNanos.length - 1))]);
+        }
+    }
+
+    public Result run(Scenario scenario, int rps, Duration duration, long seed) {
+        long total = Math.max(1, (long) rps * duration.toSeconds());
+        long intervalNanos = TimeUnit.SECONDS.toNanos(1) / rps;
+        long[] latencies = new long[(int) total];
+        AtomicInteger recorded = new AtomicInteger();
+        AtomicLong errors = new AtomicLong();
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicInteger maxInFlight = new AtomicInteger();
+        SplittableRandom random = new SplittableRandom(seed);
+
+        long start = System.nanoTime();
+        for (long i = 0; i < total; i++) {
+            long intended = start + i * intervalNanos;
+            long wait;
+            while ((wait = intended - System.nanoTime()) > 0) {
+                LockSupport.parkNanos(wait);
+            }
+            Scenario.Request request = scenario.next(random);
+            maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+            client.sendAsync(build(request), HttpResponse.BodyHandlers.discarding())
+                    .whenComplete((response, error) -> {
+                        // 404 er et gyldigt svar (ukendt film), alt fra 500 og op tæller som fejl
+                        if (error != null || response.statusCode() >= 500) {
+                            errors.incrementAndGet();
+                        }
+                        latencies[recorded.getAndIncrement()] = System.nanoTime() - intended;
+                        inFlight.decrementAndGet();
+                    });
+        }
+
+        // Venter på de sidste svar (højst requestTimeout), så halen kommer med i percentilerne.
+        // Requests der ikke er færdige inden da tæller som fejl.
+        long deadline = System.nanoTime() + requestTimeout.toNanos();
+        while (inFlight.get() > 0 && System.nanoTime() < deadline) {
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(10));
+        }
+        int completed = recorded.get();
+        double seconds = Math.max(duration.toNanos(), total * intervalNanos) / 1e9;
+        long[] sorted = Arrays.copyOf(latencies, completed);
+        Arrays.sort(sorted);
+        return new Result(rps, total, completed, errors.get() + (total - completed), seconds, maxInFlight.get(), sorted);
+    }
+
+    private HttpRequest build(Scenario.Request request) {
+        HttpRequest.Builder builder = HttpRequest.newBuilder(URI.create(baseUrl + request.path))
+                .timeout(requestTimeout);
+        if (request.body != null) {
+            builder.header("Content-Type", "text/plain; charset=utf-8")
+                    .method(request.method, HttpRequest.BodyPublishers.ofString(request.body));
+        } else {
+            builder.method(request.method, HttpRequest.BodyPublishers.noBody());
+        }
+        return builder.build();
+    }
+}
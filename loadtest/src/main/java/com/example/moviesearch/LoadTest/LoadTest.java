@@ -0,0 +1,229 @@
+package com.example.moviesearch.LoadTest;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+// Loadtest af én MovieSearch-instans mod lokale stand-ins for TMDB og OpenAI.
+// For hver execution mode (movie.execution.mode) startes applikationen, og hvert RPS-trin køres efter tur.
+// Et trin regnes for mættet når throughput falder under 95% af target, fejlraten er over 1% eller p99 > slo.
+//
+// Argumenter (alle valgfri, --navn=værdi):
+//   --scenario=mixed                 mixed, lists, details-with-ai eller ai-recommend (se Scenario)
+//   --rps=25,50,100,200,400          RPS-trin, i rækkefølge
+//   --duration=30s --warmup=10s      længde pr. trin og opvarmning (ved laveste RPS) efter hver opstart
+//   --modes=reactive                 fx reactive,blocking,virtual-threads for at sammenligne
+//   --jar=../target/MovieSearch-0.0.1-SNAPSHOT.jar
+//   --target=http://host:port        brug en instans der allerede kører (ingen stand-ins/opstart)
+//   --serve-only=true --port=8089    start kun stand-in'erne (på alle interfaces) og vent, til --target fra en anden maskine
+//   --tmdb-latency=80ms --tmdb-jitter=40ms --tmdb-error-rate=0
+//   --openai-latency=1500ms --openai-jitter=500ms --openai-error-rate=0
+//   --slo-p99=1s --timeout=30s       p99-grænse for mætning og timeout pr. request
+//   --jvm-args=-Xmx512m              JVM-argumenter til applikationen (adskilt med mellemrum)
+//   --app.<property>=<værdi>         sendes videre til applikationen, fx --app.movie.batch.concurrency=16
+//
+// Eksempel: hvor mange samtidige /details-with-ai kan én instans holde i hver mode?
+//   --scenario=details-with-ai --modes=reactive,blocking,virtual-threads --rps=50,100,200,400 --openai-latency=2s --slo-p99=4s
+public final class LoadTest {
+
+    // Stand-in'erne har ingen kvote, så applikationens egen rate limiting løftes som standard.
+    // Ellers måler vi tmdb.limit.rate/openai.limit.rate i stedet for instansen. Kan overskrives med --app.*
+    private static final Map<String, String> DEFAULT_APP_PROPERTIES = Map.of(
+            "tmdb.limit.rate", "100000",
+            "tmdb.limit.burst", "100000",
+            "tmdb.limit.max-concurrency", "1024",
+            "openai.limit.rate", "100000",
+            "openai.limit.burst", "100000",
+            "openai.limit.tokens-per-minute", "0",
+            "openai.limit.max-concurrency", "1024");
+
+    private LoadTest() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new LinkedHashMap<>();
+        Map<String, String> appProperties = new LinkedHashMap<>(DEFAULT_APP_PROPERTIES);
+        for (String arg : args) {
+            if (!arg.startsWith("--") || !arg.contains("=")) {
+                throw new IllegalArgumentException("Forventede --navn=værdi, fik: " + arg);
+            }
+            String key = arg.substring(2, arg.indexOf('='));
+            String value = arg.substring(arg.indexOf('=') + 1);
+            if (key.startsWith("app.")) {
+                appProperties.put(key.substring(4), value);
+            } else {
+                options.put(key, value);
+            }
+        }
+
+        Scenario scenario = Scenario.parse(options.getOrDefault("scenario", "mixed"));
+        int[] steps = Arrays.stream(options.getOrDefault("rps", "25,50,100,200,400").split(","))
+                .map(String::trim).mapToInt(Integer::parseInt).toArray();
+        Duration duration = duration(options.getOrDefault("duration", "30s"));
+        Duration warmup = duration(options.getOrDefault("warmup", "10s"));
+        Duration sloP99 = duration(options.getOrDefault("slo-p99", "1s"));
+        Duration timeout = duration(options.getOrDefault("timeout", "30s"));
+        String target = options.get("target");
+
+        if (target != null) {
+            System.out.printf("Scenario %s mod %s%n", scenario, target);
+            try (AppProcess app = AppProcess.attach(target)) {
+                runSteps(app, scenario, steps, duration, warmup, sloP99, timeout, "extern");
+            }
+            return;
+        }
+
+        StandInServers.Behaviour tmdb = new StandInServers.Behaviour(
+                duration(options.getOrDefault("tmdb-latency", "80ms")),
+                duration(options.getOrDefault("tmdb-jitter", "40ms")),
+                Double.parseDouble(options.getOrDefault("tmdb-error-rate", "0")));
+        StandInServers.Behaviour openAi = new StandInServers.Behaviour(
+                duration(options.getOrDefault("openai-latency", "1500ms")),
+                duration(options.getOrDefault("openai-jitter", "500ms")),
+                Double.parseDouble(options.getOrDefault("openai-error-rate", "0")));
+        if (Boolean.parseBoolean(options.getOrDefault("serve-only", "false"))) {
+            // Driver, stand-ins og applikation deler ellers CPU, hvilket flytter mætningspunktet
+            int port = Integer.parseInt(options.getOrDefault("port", "8089"));
+            try (StandInServers standIns = new StandInServers("0.0.0.0", port, tmdb, openAi)) {
+                System.out.printf("Stand-ins kører (Ctrl+C for at stoppe). Start applikationen med:%n"
+                        + "  --tmdb.base.url=%s --openai.url=%s --tmdb.images.base-url=%s%n",
+                        standIns.tmdbBaseUrl(), standIns.openAiUrl(), standIns.imagesBaseUrl());
+                Thread.currentThread().join();
+            }
+            return;
+        }
+
+        Path jar = Path.of(options.getOrDefault("jar", "../target/MovieSearch-0.0.1-SNAPSHOT.jar"));
+        if (!Files.exists(jar)) {
+            throw new IllegalStateException("Fandt ikke " + jar + " - byg applikationen med mvn package først");
+        }
+        List<String> jvmArgs = options.containsKey("jvm-args")
+                ? List.of(options.get("jvm-args").trim().split("\\s+"))
+                : List.of();
+        Path workDir = Files.createDirectories(Path.of("target", "loadtest"));
+
+        try (StandInServers standIns = new StandInServers(tmdb, openAi)) {
+            System.out.printf("Scenario %s, TMDB %s, OpenAI %s%n", scenario, tmdb, openAi);
+            for (String mode : options.getOrDefault("modes", "reactive").split(",")) {
+                Map<String, String> properties = new LinkedHashMap<>(appProperties);
+                properties.put("tmdb.base.url", standIns.tmdbBaseUrl());
+                properties.put("openai.url", standIns.openAiUrl());
+                properties.put("tmdb.images.base-url", standIns.imagesBaseUrl());
+                properties.putIfAbsent("movie.posters.dir", workDir.resolve("posters-" + mode.trim()).toString());
+                properties.put("movie.execution.mode", mode.trim());
+                // Tomt opsummeringslager pr. kørsel, så details-with-ai faktisk rammer OpenAI
+                properties.putIfAbsent("movie.summary-store.path",
+                        workDir.resolve("ai-summaries-" + mode.trim() + "-" + System.currentTimeMillis() + ".log").toString());
+
+                Path log = workDir.resolve("app-" + mode.trim() + ".log");
+                System.out.printf("%nMode %s (log: %s)%n", mode.trim(), log);
+                try (AppProcess app = AppProcess.start(jar, jvmArgs, properties, log)) {
+                    runSteps(app, scenario, steps, duration, warmup, sloP99, timeout, mode.trim());
+                }
+                System.out.printf("Stand-in kald i alt: TMDB %d, OpenAI %d%n",
+                        standIns.getTmdbRequests(), standIns.getOpenAiRequests());
+            }
+        }
+    }
+
+    private static void runSteps(AppProcess app, Scenario scenario, int[] steps, Duration duration, Duration warmup,
+                                 Duration sloP99, Duration timeout, String mode) {
+        LoadDriver driver = new LoadDriver(app.getBaseUrl(), timeout);
+        if (!warmup.isZero()) {
+            driver.run(scenario, steps[0], warmup, 1L);
+        }
+
+        System.out.printf("%-8s %9s %8s %9s %9s %9s %9s %7s %9s %9s%n",
+                "rps", "opnået/s", "fejl", "p50", "p99", "p999", "max", "i gang", "tråde", "heap MB");
+        List<String> verdicts = new ArrayList<>();
+        Integer lastHealthy = null;
+        Integer firstSaturated = null;
+        for (int rps : steps) {
+            ResourceSampler sampler = new ResourceSampler(app);
+            LoadDriver.Result result;
+            try {
+                result = driver.run(scenario, rps, duration, rps);
+            } finally {
+                sampler.stop();
+            }
+            boolean saturated = result.throughput() < rps * 0.95
+                    || result.errorRate() > 0.01
+                    || result.percentile(99).compareTo(sloP99) > 0;
+            System.out.printf(Locale.ROOT, "%-8d %9.1f %7.2f%% %9s %9s %9s %9s %7d %9.0f %9.0f%s%n",
+                    rps, result.throughput(), result.errorRate() * 100,
+                    format(result.percentile(50)), format(result.percentile(99)), format(result.percentile(99.9)),
+                    format(result.percentile(100)), result.maxInFlight,
+                    sampler.maxThreads(), sampler.maxHeapBytes() / (1024 * 1024),
+                    saturated ? "  <- mættet" : "");
+            if (saturated && firstSaturated == null) {
+                firstSaturated = rps;
+            } else if (!saturated && firstSaturated == null) {
+                lastHealthy = rps;
+            }
+        }
+        verdicts.add(lastHealthy == null ? "ingen trin holdt" : "holdt " + lastHealthy + " rps");
+        verdicts.add(firstSaturated == null ? "ikke mættet ved højeste trin" : "mættet ved " + firstSaturated + " rps");
+        System.out.printf("Mode %s: %s%n", mode, String.join(", ", verdicts));
+    }
+
+    // Læser tråde og heap fra applikationen hvert sekund mens et trin kører, og husker maksimum.
+    private static final class ResourceSampler {
+        private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+        private final AtomicReference<double[]> max = new AtomicReference<>(new double[]{0, 0});
+
+        ResourceSampler(AppProcess app) {
+            scheduler.scheduleAtFixedRate(() -> {
+                double threads = app.metric("jvm.threads.live");
+                double heap = app.metric("jvm.memory.used?tag=area:heap");
+                max.updateAndGet(current -> new double[]{
+                        Double.isNaN(threads) ? current[0] : Math.max(current[0], threads),
+                        Double.isNaN(heap) ? current[1] : Math.max(current[1], heap)});
+            }, 0, 1, TimeUnit.SECONDS);
+        }
+
+        void stop() {
+            scheduler.shutdownNow();
+        }
+
+        double maxThreads() {
+            return max.get()[0];
+        }
+
+        double maxHeapBytes() {
+            return max.get()[1];
+        }
+    }
+
+    private static String format(Duration duration) {
+        long micros = duration.toNanos() / 1_000;
+        return micros < 10_000 ? String.format(Locale.ROOT, "%.1fms", micros / 1000.0) : (micros / 1000) + "ms";
+    }
+
+    // "30s", "1500ms", "2m" eller ISO-8601 (PT30S)
+    private static Duration duration(String value) {
+        String text = value.trim().toLowerCase(Locale.ROOT);
+        if (text.startsWith("pt")) {
+            return Duration.parse(text);
+        }
+        if (text.endsWith("ms")) {
+            return Duration.ofMillis(Long.parseLong(text.substring(0, text.length() - 2)));
+        }
+        if (text.endsWith("s")) {
+            return Duration.ofSeconds(Long.parseLong(text.substring(0, text.length() - 1)));
+        }
+        if (text.endsWith("m")) {
+            return Duration.ofMinutes(Long.parseLong(text.substring(0, text.length() - 1)));
+        }
+        return Duration.ofMillis(Long.parseLong(text));
+    }
+}
@@ -0,0 +1,82 @@
+package com.example.moviesearch.LoadTest;
+
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.SplittableRandom;
+
+// De request-mix loadtesten kan køre mod MovieController.
+//   mixed            realistisk blanding af lister, søgning, detaljer og lidt AI
+//   lists            kun de cachede liste-endpoints (loftet for den billige vej)
+//   details-with-ai  /details-with-ai/{id} over mange id'er, så de fleste kræver et OpenAI-kald
+//   ai-recommend     POST /ai-recommend med forskellige prompts (ingen hits i prompt-cachen)
+public enum Scenario {
+
+    MIXED, LISTS, DETAILS_WITH_AI, AI_RECOMMEND;
+
+    private static final int[] GENRES = {28, 12, 16, 35, 80, 18, 14, 27, 878, 53};
+    private static final String[] QUERIES = {"matrix", "dune", "alien", "batman", "toy story", "inception", "heat"};
+
+    // Én request: metode, sti (med query) og evt. body
+    public static final class Request {
+        final String method;
+        final String path;
+        final String body;
+        final String endpoint; // til rapporten
+
+        Request(String method, String path, String body, String endpoint) {
+            this.method = method;
+            this.path = path;
+            this.body = body;
+            this.endpoint = endpoint;
+        }
+
+        static Request get(String path, String endpoint) {
+            return new Request("GET", path, null, endpoint);
+        }
+    }
+
+    public static Scenario parse(String name) {
+        return valueOf(name.trim().toUpperCase().replace('-', '_'));
+    }
+
+    public Request next(SplittableRandom random) {
+        return switch (this) {
+            case LISTS -> list(random);
+            case DETAILS_WITH_AI -> detailsWithAi(random);
+            case AI_RECOMMEND -> aiRecommend(random);
+            case MIXED -> {
+                int roll = random.nextInt(100);
+                if (roll < 55) {
+                    yield list(random);
+                } else if (roll < 70) {
+                    yield Request.get("/api/movies/search?query="
+                            + URLEncoder.encode(QUERIES[random.nextInt(QUERIES.length)], StandardCharsets.UTF_8), "search");
+                } else if (roll < 95) {
+                    yield Request.get("/api/movies/" + (1 + random.nextInt(5_000)), "details");
+                } else if (roll < 98) {
+                    yield detailsWithAi(random);
+                } else {
+                    yield aiRecommend(random);
+                }
+            }
+        };
+    }
+
+    private static Request list(SplittableRandom random) {
+        return switch (random.nextInt(4)) {
+            case 0 -> Request.get("/api/movies/popular", "popular");
+            case 1 -> Request.get("/api/movies/now-playing", "now-playing");
+            case 2 -> Request.get("/api/movies/genres", "genres");
+            default -> Request.get("/api/movies/by-genre?genreId=" + GENRES[random.nextInt(GENRES.length)], "by-genre");
+        };
+    }
+
+    private static Request detailsWithAi(SplittableRandom random) {
+        return Request.get("/api/movies/details-with-ai/" + (1 + random.nextInt(500_000)), "details-with-ai");
+    }
+
+    private static Request aiRecommend(SplittableRandom random) {
+        return new Request("POST", "/api/movies/ai-recommend",
+                "Rolige sci-fi film om kunstig intelligens nr. " + random.nextInt(1_000_000), "ai-recommend");
+    }
+}
@@ -0,0 +1,318 @@
+package com.example.moviesearch.LoadTest;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// Lokale stand-ins for TMDB og OpenAI, så loadtesten hverken koster penge eller rammer rate limits.
+// Én HttpServer på en tilfældig port:
+//   /3/...                    TMDB (tmdb.base.url = http://127.0.0.1:<port>/3)
+//   /t/p/<størrelse>/<fil>    TMDB's billed-CDN (tmdb.images.base-url), samme latency som TMDB
+//   /v1/chat/completions      OpenAI (openai.url), både almindelige svar, stream=true (SSE)
+//                             og batch-opsummeringer (response_format json_object, se SummaryBatcher)
+// Hvert svar ventes med latency +- jitter, og en andel (error-rate) svarer 500 i stedet.
+// Handlerne kører på virtual threads, så ventetiden ikke begrænser hvor mange kald stand-in'en kan holde.
+public final class StandInServers implements AutoCloseable {
+
+    private static final String[] TITLES = {
+            "Blade Runner 2049", "Arrival", "Ex Machina", "Interstellar", "Her", "Annihilation", "Moon",
+            "Gattaca", "Children of Men", "District 9", "Dune", "Oppenheimer", "Inception", "The Matrix"
+    };
+    private static final int[] GENRE_IDS = {28, 12, 16, 35, 80, 99, 18, 10751, 14, 36, 27, 10402, 9648, 10749, 878, 53};
+    private static final String GENRES_JSON = "{\"genres\":[{\"id\":28,\"name\":\"Action\"},{\"id\":12,\"name\":\"Eventyr\"},"
+            + "{\"id\":16,\"name\":\"Animation\"},{\"id\":35,\"name\":\"Komedie\"},{\"id\":80,\"name\":\"Kriminalitet\"},"
+            + "{\"id\":99,\"name\":\"Dokumentar\"},{\"id\":18,\"name\":\"Drama\"},{\"id\":10751,\"name\":\"Familie\"},"
+            + "{\"id\":14,\"name\":\"Fantasy\"},{\"id\":36,\"name\":\"Historie\"},{\"id\":27,\"name\":\"Gyser\"},"
+            + "{\"id\":10402,\"name\":\"Musik\"},{\"id\":9648,\"name\":\"Mysterie\"},{\"id\":10749,\"name\":\"Romantik\"},"
+            + "{\"id\":878,\"name\":\"Science fiction\"},{\"id\":53,\"name\":\"Thriller\"}]}";
+    private static final String OVERVIEW = "En ung kvinde rejser gennem et ødelagt land for at finde sin familie, "
+            + "mens en mørk magt truer alt hun kender. Venskab og mod bliver sat på den ultimative prøve.";
+
+    // Et "billede" på ca. en w500-plakats størrelse. Indholdet er ligegyldigt, PosterCache gemmer bare bytes.
+    private static final byte[] POSTER = new byte[60 * 1024];
+
+    private static final String SUMMARY = "En kort tekst med en fun fact om film";
+    // Film-id'er i en batch-request, hvor filmene er et JSON-array inde i beskedens (escapede) indhold
+    private static final Pattern MOVIE_ID = Pattern.compile("\\\\\"id\\\\\":(\\d+)");
+
+    // Latency og fejlrate for én upstream
+    public static final class Behaviour {
+        final Duration latency;
+        final Duration jitter;
+        final double errorRate;
+
+        public Behaviour(Duration latency, Duration jitter, double errorRate) {
+            this.latency = latency;
+            this.jitter = jitter;
+            this.errorRate = errorRate;
+        }
+
+        @Override
+        public String toString() {
+            return latency.toMillis() + "ms +- " + jitter.toMillis() + "ms, " + (errorRate * 100) + "% fejl";
+        }
+    }
+
+    private final HttpServer server;
+    private final String host;
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final Behaviour tmdb;
+    private final Behaviour openAi;
+    private final AtomicLong tmdbRequests = new AtomicLong();
+    private final AtomicLong openAiRequests = new AtomicLong();
+    private final AtomicLong imageRequests = new AtomicLong();
+
+    public StandInServers(Behaviour tmdb, Behaviour openAi) throws IOException {
+        this("127.0.0.1", 0, tmdb, openAi);
+    }
+
+    // Med bindHost 0.0.0.0 kan applikationen køre på en anden maskine (se --serve-only i LoadTest)
+    public StandInServers(String bindHost, int port, Behaviour tmdb, Behaviour openAi) throws IOException {
+        this.tmdb = tmdb;
+        this.openAi = openAi;
+        this.host = bindHost.equals("0.0.0.0") ? InetAddress.getLocalHost().getHostName() : bindHost;
+        this.server = HttpServer.create(new InetSocketAddress(bindHost, port), 1024);
+        server.setExecutor(executor);
+        server.createContext("/3/", this::handleTmdb);
+        server.createContext("/v1/chat/completions", this::handleOpenAi);
+        server.createContext("/t/p/", this::handleImages);
+        server.start();
+    }
+
+    public String tmdbBaseUrl() {
+        return "http://" + host + ":" + server.getAddress().getPort() + "/3";
+    }
+
+    public String openAiUrl() {
+        return "http://" + host + ":" + server.getAddress().getPort() + "/v1/chat/completions";
+    }
+
+    public String imagesBaseUrl() {
+        return "http://" + host + ":" + server.getAddress().getPort() + "/t/p";
+    }
+
+    public long getImageRequests() {
+        return imageRequests.get();
+    }
+
+    public long getTmdbRequests() {
+        return tmdbRequests.get();
+    }
+
+    public long getOpenAiRequests() {
+        return openAiRequests.get();
+    }
+
+    private void handleImages(HttpExchange exchange) throws IOException {
+        imageRequests.incrementAndGet();
+        try (exchange) {
+            if (simulate(exchange, tmdb)) {
+                return;
+            }
+            exchange.getResponseHeaders().set("Content-Type", "image/jpeg");
+            exchange.sendResponseHeaders(200, POSTER.length);
+            exchange.getResponseBody().write(POSTER);
+        }
+    }
+
+    private void handleTmdb(HttpExchange exchange) throws IOException {
+        tmdbRequests.incrementAndGet();
+        try (exchange) {
+            if (simulate(exchange, tmdb)) {
+                return;
+            }
+            String path = exchange.getRequestURI().getPath().substring("/3".length());
+            Map<String, String> query = query(exchange.getRequestURI());
+            int page = Integer.parseInt(query.getOrDefault("page", "1"));
+
+            if (path.equals("/genre/movie/list")) {
+                send(exchange, 200, "application/json", GENRES_JSON);
+            } else if (path.equals("/movie/popular") || path.equals("/movie/now_playing")) {
+                send(exchange, 200, "application/json", moviePage(path.hashCode(), page));
+            } else if (path.equals("/discover/movie")) {
+                send(exchange, 200, "application/json", moviePage(query.getOrDefault("with_genres", "").hashCode(), page));
+            } else if (path.equals("/search/movie")) {
+                send(exchange, 200, "application/json", moviePage(query.getOrDefault("query", "").hashCode(), page));
+            } else if (path.startsWith("/movie/")) {
+                int id = parseId(path.substring("/movie/".length()));
+                if (id <= 0) {
+                    send(exchange, 404, "application/json", "{\"success\":false,\"status_code\":34}");
+                } else {
+                    send(exchange, 200, "application/json", movieDetails(id));
+                }
+            } else {
+                send(exchange, 404, "application/json", "{\"success\":false,\"status_code\":34}");
+            }
+        }
+    }
+
+    private void handleOpenAi(HttpExchange exchange) throws IOException {
+        openAiRequests.incrementAndGet();
+        try (exchange) {
+            String body = new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
+            if (simulate(exchange, openAi)) {
+                return;
+            }
+            if (body.contains("\"response_format\"")) {
+                // Batch-opsummeringer: svaret er et JSON-objekt fra film-id til tekst, escaped som beskedens indhold
+                List<String> ids = new ArrayList<>();
+                Matcher matcher = MOVIE_ID.matcher(body);
+                while (matcher.find()) {
+                    ids.add(matcher.group(1));
+                }
+                StringBuilder summaries = new StringBuilder("{");
+                for (String id : ids) {
+                    summaries.append(summaries.length() > 1 ? "," : "")
+                            .append("\\\"").append(id).append("\\\":\\\"").append(SUMMARY).append(' ').append(id).append("\\\"");
+                }
+                summaries.append('}');
+                send(exchange, 200, "application/json", completion(summaries.toString(), 90 + 20 * ids.size(), 40 * ids.size()));
+                return;
+            }
+            String content = titles(body.hashCode(), 8);
+            if (body.contains("\"stream\":true")) {
+                // Titlerne sendes som deltas, ligesom OpenAI gør det, efterfulgt af [DONE]
+                exchange.getResponseHeaders().set("Content-Type", "text/event-stream");
+                exchange.sendResponseHeaders(200, 0);
+                OutputStream out = exchange.getResponseBody();
+                for (String part : content.split("(?<=,)")) {
+                    out.write(("data: {\"choices\":[{\"index\":0,\"delta\":{\"content\":\"" + part + "\"}}]}\n\n")
+                            .getBytes(StandardCharsets.UTF_8));
+                    out.flush();
+                }
+                out.write("data: [DONE]\n\n".getBytes(StandardCharsets.UTF_8));
+                return;
+            }
+            send(exchange, 200, "application/json", completion(content, 90, 40));
+        }
+    }
+
+    private static String completion(String content, int promptTokens, int completionTokens) {
+        return "{\"id\":\"chatcmpl-loadtest\",\"object\":\"chat.completion\","
+                + "\"choices\":[{\"index\":0,\"message\":{\"role\":\"assistant\",\"content\":\"" + content + "\"},"
+                + "\"finish_reason\":\"stop\"}],"
+                + "\"usage\":{\"prompt_tokens\":" + promptTokens + ",\"completion_tokens\":" + completionTokens
+                + ",\"total_tokens\":" + (promptTokens + completionTokens) + "}}";
+    }
+
+    // Venter latency +- jitter og svarer evt. 500. Returnerer true hvis svaret allerede er sendt.
+    private boolean simulate(HttpExchange exchange, Behaviour behaviour) throws IOException {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long jitter = behaviour.jitter.toMillis();
+        long delay = behaviour.latency.toMillis() + (jitter > 0 ? random.nextLong(-jitter, jitter + 1) : 0);
+        if (delay > 0) {
+            try {
+                Thread.sleep(delay);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (random.nextDouble() < behaviour.errorRate) {
+            send(exchange, 500, "application/json", "{\"error\":\"stand-in fejl\"}");
+            return true;
+        }
+        return false;
+    }
+
+    private static String moviePage(int seed, int page) {
+        StringBuilder json = new StringBuilder(12_000).append("{\"page\":").append(page).append(",\"results\":[");
+        for (int i = 0; i < 20; i++) {
+            int id = Math.floorMod(seed * 31 + page * 20 + i, 900_000) + 1;
+            if (i > 0) {
+                json.append(',');
+            }
+            movie(json, id, false);
+        }
+        return json.append("],\"total_pages\":500,\"total_results\":10000}").toString();
+    }
+
+    private static String movieDetails(int id) {
+        StringBuilder json = new StringBuilder(1_000);
+        movie(json, id, true);
+        return json.toString();
+    }
+
+    private static void movie(StringBuilder json, int id, boolean fullGenres) {
+        int first = GENRE_IDS[id % GENRE_IDS.length];
+        int second = GENRE_IDS[(id / 7) % GENRE_IDS.length];
+        json.append("{\"adult\":false,\"backdrop_path\":\"/b").append(id).append(".jpg\",")
+                .append("\"id\":").append(id).append(",\"original_language\":\"en\",")
+                .append("\"title\":\"").append(TITLES[id % TITLES.length]).append(' ').append(id).append("\",")
+                .append("\"overview\":\"").append(OVERVIEW).append("\",")
+                .append("\"popularity\":").append(id % 1000).append(".5,")
+                .append("\"poster_path\":\"/p").append(id).append(".jpg\",")
+                .append("\"release_date\":\"20").append(10 + id % 15).append("-0").append(1 + id % 9).append("-15\",")
+                .append("\"vote_average\":").append(5 + (id % 40) / 10.0).append(",\"vote_count\":").append(id % 5000).append(',');
+        if (fullGenres) {
+            json.append("\"genres\":[{\"id\":").append(first).append(",\"name\":\"Genre ").append(first).append("\"},")
+                    .append("{\"id\":").append(second).append(",\"name\":\"Genre ").append(second).append("\"}]}");
+        } else {
+            json.append("\"genre_ids\":[").append(first).append(',').append(second).append("]}");
+        }
+    }
+
+    private static String titles(int seed, int count) {
+        StringBuilder content = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            if (i > 0) {
+                content.append(", ");
+            }
+            content.append(TITLES[Math.floorMod(seed + i, TITLES.length)]);
+        }
+        return content.toString();
+    }
+
+    private static int parseId(String value) {
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static Map<String, String> query(URI uri) {
+        Map<String, String> params = new HashMap<>();
+        String raw = uri.getRawQuery();
+        if (raw == null) {
+            return params;
+        }
+        for (String pair : raw.split("&")) {
+            int eq = pair.indexOf('=');
+            if (eq > 0) {
+                params.put(pair.substring(0, eq), URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8));
+            }
+        }
+        return params;
+    }
+
+    private static void send(HttpExchange exchange, int status, String contentType, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", contentType);
+        exchange.sendResponseHeaders(status, bytes.length);
+        exchange.getResponseBody().write(bytes);
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,48 @@
+package com.example.moviesearch.Config;
+
+import com.example.moviesearch.Service.RequestExecution;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jdk.jfr.consumer.RecordingStream;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.embedded.tomcat.TomcatProtocolHandlerCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// Aktiveres med movie.execution.mode=virtual-threads.
+// Tomcat får en executor der starter en virtuel tråd pr. request, så MovieController og de
+// blokerende kald til MovieService/AiService ikke længere er begrænset af Tomcats trådpulje.
+@Configuration
+@ConditionalOnProperty(name = "movie.execution.mode", havingValue = RequestExecution.VIRTUAL_THREADS)
+public class ExecutionModeConfig {
+
+    @Bean(destroyMethod = "close")
+    public ExecutorService virtualThreadExecutor() {
+        return Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("movie-vt-", 0).factory());
+    }
+
+    @Bean
+    public TomcatProtocolHandlerCustomizer<?> virtualThreadProtocolHandlerCustomizer(ExecutorService virtualThreadExecutor,
+                                                                                      RequestExecution execution) {
+        return protocolHandler -> protocolHandler.setExecutor(task -> virtualThreadExecutor.execute(execution.track(task)));
+    }
+
+    // JFR-strøm der tæller hver gang en virtuel tråd bliver "pinned" til sin carrier-tråd (fx block() inde i synchronized).
+    // Tælleren bør blive på 0. Ellers mister vi fordelen ved virtuelle tråde.
+    @Bean(destroyMethod = "close")
+    public RecordingStream virtualThreadPinnedRecording(MeterRegistry meterRegistry) {
+        Counter pinned = Counter.builder("movie.execution.threads.pinned")
+                .description("Antal gange en virtuel tråd blev pinned til sin carrier-tråd")
+                .register(meterRegistry);
+
+        RecordingStream recording = new RecordingStream();
+        recording.enable("jdk.VirtualThreadPinned").withThreshold(Duration.ofMillis(20));
+        recording.onEvent("jdk.VirtualThreadPinned", event -> pinned.increment());
+        recording.startAsync();
+        return recording;
+    }
+}
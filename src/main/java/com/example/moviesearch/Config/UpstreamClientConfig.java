@@ -0,0 +1,113 @@
+package com.example.moviesearch.Config;
+
+import io.micrometer.observation.ObservationRegistry;
+import io.netty.channel.ChannelOption;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.netty.http.HttpProtocol;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.time.Duration;
+
+// Fælles opsætning af HTTP-klienterne mod TMDB og OpenAI.
+// Hver upstream får sin egen navngivne connection pool, så en langsom OpenAI ikke kan bruge
+// forbindelserne op for TMDB. Alt kan justeres i application.properties under tmdb.http.*, openai.http.* og images.http.*.
+// Pool-metrics (aktive, ledige, ventende og ventetid på en forbindelse) ligger under
+// reactor.netty.connection.provider.* med tag name=tmdb/openai/images.
+@Configuration
+public class UpstreamClientConfig {
+
+    private final Environment environment;
+
+    public UpstreamClientConfig(Environment environment) {
+        this.environment = environment;
+    }
+
+    @Bean(destroyMethod = "dispose")
+    public ConnectionProvider tmdbConnectionProvider() {
+        return connectionProvider("tmdb");
+    }
+
+    @Bean(destroyMethod = "dispose")
+    public ConnectionProvider openAiConnectionProvider() {
+        return connectionProvider("openai");
+    }
+
+    // WebClient til TMDB's API med base url (tmdb.base.url), så kaldene kun angiver stien, fx "/movie/popular".
+    // Bruger den navngivne "tmdb" connection pool (tmdb.http.*) med pool-metrics, og observation er slået fra
+    // fordi URL'erne indeholder api_key.
+    @Bean
+    public WebClient tmdbWebClient(WebClient.Builder builder,
+                                   @Qualifier("tmdbConnectionProvider") ConnectionProvider provider,
+                                   @Value("${tmdb.base.url:https://api.themoviedb.org/3}") String baseUrl) {
+        return builder.clone()
+                .observationRegistry(ObservationRegistry.NOOP) // URL'erne indeholder api_key, må ikke ende i metrics-tags
+                .baseUrl(baseUrl)
+                .clientConnector(new ReactorClientHttpConnector(httpClient("tmdb", provider)))
+                .build();
+    }
+
+    // TMDB's billed-CDN, som PosterCache henter plakater fra. Plakaterne er allerede komprimerede (jpg),
+    // så der bedes ikke om gzip (images.http.compress=false).
+    @Bean(destroyMethod = "dispose")
+    public ConnectionProvider imagesConnectionProvider() {
+        return connectionProvider("images");
+    }
+
+    @Bean
+    public WebClient tmdbImagesWebClient(WebClient.Builder builder,
+                                         @Qualifier("imagesConnectionProvider") ConnectionProvider provider,
+                                         @Value("${tmdb.images.base-url:https://image.tmdb.org/t/p}") String baseUrl) {
+        return builder.clone()
+                .observationRegistry(ObservationRegistry.NOOP)
+                .baseUrl(baseUrl)
+                .clientConnector(new ReactorClientHttpConnector(httpClient("images", provider)))
+                .build();
+    }
+
+    @Bean
+    public WebClient openAiWebClient(WebClient.Builder builder,
+                                     @Qualifier("openAiConnectionProvider") ConnectionProvider provider) {
+        return builder.clone()
+                .observationRegistry(ObservationRegistry.NOOP)
+                .clientConnector(new ReactorClientHttpConnector(httpClient("openai", provider)))
+                .build();
+    }
+
+    private ConnectionProvider connectionProvider(String upstream) {
+        String prefix = upstream + ".http.";
+        return ConnectionProvider.builder(upstream)
+                .maxConnections(environment.getProperty(prefix + "max-connections", Integer.class, 100))
+                .pendingAcquireMaxCount(environment.getProperty(prefix + "pending-acquire-max", Integer.class, 1000))
+                .pendingAcquireTimeout(duration(prefix + "pending-acquire-timeout", Duration.ofSeconds(5)))
+                .maxIdleTime(duration(prefix + "max-idle-time", Duration.ofSeconds(30)))
+                .maxLifeTime(duration(prefix + "max-life-time", Duration.ofMinutes(10)))
+                .evictInBackground(duration(prefix + "evict-interval", Duration.ofSeconds(30)))
+                .metrics(true)
+                .build();
+    }
+
+    private HttpClient httpClient(String upstream, ConnectionProvider provider) {
+        String prefix = upstream + ".http.";
+        boolean http2 = environment.getProperty(prefix + "http2", Boolean.class, false);
+
+        return HttpClient.create(provider)
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS,
+                        (int) duration(prefix + "connect-timeout", Duration.ofSeconds(2)).toMillis())
+                .option(ChannelOption.SO_KEEPALIVE, true)
+                .responseTimeout(duration(prefix + "response-timeout", Duration.ofSeconds(30)))
+                .keepAlive(true)
+                .compress(environment.getProperty(prefix + "compress", Boolean.class, true))
+                .protocol(http2 ? new HttpProtocol[]{HttpProtocol.H2, HttpProtocol.HTTP11} : new HttpProtocol[]{HttpProtocol.HTTP11});
+    }
+
+    private Duration duration(String key, Duration defaultValue) {
+        return environment.getProperty(key, Duration.class, defaultValue);
+    }
+}
@@ -2,11 +2,13 @@ package com.example.moviesearch.Controller;
 
 
 import com.example.moviesearch.Service.AiService;
+import com.example.moviesearch.Service.RequestExecution;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.bind.annotation.CrossOrigin;
+import reactor.core.publisher.Mono;
 
 import java.util.List;
 
@@ -16,13 +18,15 @@ import java.util.List;
 public class AiTestController {
 
     private final AiService aiService;
+    private final RequestExecution execution;
 
-    public AiTestController(AiService aiService) {
+    public AiTestController(AiService aiService, RequestExecution execution) {
         this.aiService = aiService;
+        this.execution = execution;
     }
 
     @GetMapping("/recommendations")
-    public List<String> getAiMovieRecommendations(@RequestParam String prompt) {
-        return aiService.generateMovieTitlesFromPrompt(prompt);
+    public Mono<List<String>> getAiMovieRecommendations(@RequestParam String prompt) {
+        return execution.await(aiService.generateMovieTitlesFromPrompt(prompt));
     }
 }
\ No newline at end of file
@@ -1,135 +1,354 @@
 package com.example.moviesearch.Controller; // Bemærk, din pakke hedder Controller, ikke controller
 
-import com.example.moviesearch.Model.GenreDto;
+import com.example.moviesearch.Model.BatchMovieResult;
 import com.example.moviesearch.Model.MovieDto;
 import com.example.moviesearch.Model.MovieDtoWithAiRecommendation;
+import com.example.moviesearch.Model.MoviePage;
 import com.example.moviesearch.Service.MovieService; // Bemærk, din pakke hedder Service, ikke service
+import com.example.moviesearch.Service.RequestExecution;
+import com.example.moviesearch.Service.SerializedResponseCache;
+import com.example.moviesearch.Service.ServiceMetrics;
+import com.example.moviesearch.Service.UpstreamBusyException;
+import com.example.moviesearch.Service.UpstreamUnavailableException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
 
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.util.List;
+import java.util.function.IntFunction;
 
 @RestController
 @RequestMapping("/api/movies")
-@CrossOrigin(origins = "*")
+@CrossOrigin(origins = "*", exposedHeaders = {HttpHeaders.ETAG, MovieController.TOTAL_PAGES_HEADER})
 public class MovieController {
 
+    private static final Logger log = LoggerFactory.getLogger(MovieController.class);
+    // Antal sider TMDB har for listen, så frontendens infinite scroll ved hvornår den skal stoppe
+    static final String TOTAL_PAGES_HEADER = "X-Total-Pages";
+    private static final byte[] EMPTY_LIST = "[]".getBytes(StandardCharsets.UTF_8);
+
     private final MovieService movieService;
+    private final RequestExecution execution;
+    private final ServiceMetrics metrics;
+    private final SerializedResponseCache responseCache;
+    private final CacheControl listsCacheControl;
+    private final CacheControl genresCacheControl;
+
+    // Maks antal sider i ét /pages kald
+    @Value("${movie.pagination.stream-max-pages:10}")
+    private int streamMaxPages;
+
+    // Maks antal forslag i ét /autocomplete kald
+    @Value("${movie.autocomplete.max-limit:20}")
+    private int autocompleteMaxLimit;
+
+    // Maks antal id'er i et /batch kald
+    @Value("${movie.batch.max-ids:100}")
+    private int batchMaxIds;
 
     // MovieController skal kun kende MovieService
-    public MovieController(MovieService movieService) {
+    // RequestExecution bestemmer om vi venter reaktivt eller blokerende (se movie.execution.mode)
+    // ServiceMetrics tæller fejl pr. endpoint og årsag (movie.endpoint.errors)
+    // SerializedResponseCache holder de færdige bytes til liste-endpoints, Cache-Control styres af movie.http.cache.*
+    public MovieController(MovieService movieService, RequestExecution execution, ServiceMetrics metrics,
+                           SerializedResponseCache responseCache,
+                           @Value("${movie.http.cache.lists.max-age:60s}") Duration listsMaxAge,
+                           @Value("${movie.http.cache.genres.max-age:1h}") Duration genresMaxAge,
+                           @Value("${movie.http.cache.stale-while-revalidate:10m}") Duration staleWhileRevalidate) {
         this.movieService = movieService;
+        this.execution = execution;
+        this.metrics = metrics;
+        this.responseCache = responseCache;
+        this.listsCacheControl = CacheControl.maxAge(listsMaxAge).cachePublic().staleWhileRevalidate(staleWhileRevalidate);
+        this.genresCacheControl = CacheControl.maxAge(genresMaxAge).cachePublic().staleWhileRevalidate(staleWhileRevalidate);
     }
 
     // Metode returnerer 20 populære film
-    // Try catch, ved fejl
+    // Alle endpoints returnerer en Mono, så servlet-tråden frigives mens TMDB/OpenAI svarer.
+    // onErrorResume erstatter try catch, ved fejl
+    // De varme liste-endpoints svarer med færdigserialiserede bytes (se serialized), inkl. ETag og 304.
+    // ?page=N giver side N (standard 1), og side N+1 hentes i baggrunden så den er klar til næste scroll.
     @GetMapping("/popular")
-    public ResponseEntity<List<MovieDto>> getPopularMovies() {
-        try {
-            List<MovieDto> movies = movieService.fetchPopularMovies();
-            return ResponseEntity.ok(movies);
-        } catch (Exception e) {
-            System.err.println("Fejl ved hentning af populære film: " + e.getMessage());
-            return ResponseEntity.status(500).body(List.of());
+    public Mono<ResponseEntity<byte[]>> getPopularMovies(@RequestParam(defaultValue = "1") int page,
+                                                         @RequestHeader HttpHeaders headers) {
+        if (!validPage(page)) {
+            return Mono.just(emptyList(400));
         }
+        return execution.await(movieService.fetchPopularPage(page))
+                .map(result -> serializedPage(result, headers))
+                .onErrorResume(e -> {
+                    log.error("Fejl ved hentning af populære film: {}", e.getMessage(), e);
+                    metrics.recordEndpointError("popular", e);
+                    return Mono.just(emptyList(statusFor(e)));
+                });
     }
 
     // En post metode, som modtager prompt i browser og returnerer film.
     @PostMapping("/ai-recommend")
-    public ResponseEntity<List<MovieDto>> getAiRecommendations(@RequestBody String prompt) {
-        try {
-            List<MovieDto> movies = movieService.findMoviesByAiPrompt(prompt);
-            return ResponseEntity.ok(movies);
-        } catch (Exception e) {
-            System.err.println("Fejl ved AI-anbefaling: " + e.getMessage());
-            e.printStackTrace(); // Godt til fejlfinding
-            return ResponseEntity.status(500).body(List.of());
-        }
+    public Mono<ResponseEntity<List<MovieDto>>> getAiRecommendations(@RequestBody String prompt) {
+        return execution.await(movieService.findMoviesByAiPrompt(prompt))
+                .map(ResponseEntity::ok)
+                .onErrorResume(e -> {
+                    log.error("Fejl ved AI-anbefaling: {}", e.getMessage(), e);
+                    metrics.recordEndpointError("ai-recommend", e);
+                    return Mono.just(ResponseEntity.status(statusFor(e)).body(List.of()));
+                });
+    }
+
+    // Streaming-udgave af ai-recommend. Hver film sendes til klienten så snart den er fundet,
+    // som Server-Sent Events (Accept: text/event-stream) eller NDJSON (Accept: application/x-ndjson).
+    // GET med prompt som parameter, så browserens EventSource kan bruge den direkte.
+    @GetMapping(value = "/ai-recommend/stream",
+            produces = {MediaType.TEXT_EVENT_STREAM_VALUE, MediaType.APPLICATION_NDJSON_VALUE})
+    public Flux<MovieDto> streamAiRecommendations(@RequestParam String prompt) {
+        return movieService.streamMoviesByAiPrompt(prompt)
+                .onErrorResume(e -> {
+                    log.error("Fejl ved streaming af AI-anbefaling: {}", e.getMessage(), e);
+                    metrics.recordEndpointError("ai-recommend-stream", e);
+                    return Flux.empty();
+                });
     }
 
     // En Get metode, som henter flere film på baggrund af en søgning.
     @GetMapping("/search")
-    public ResponseEntity<List<MovieDto>> searchMovies(@RequestParam String query) {
-        try {
-            List<MovieDto> movies = movieService.searchMoviesMulti(query);
-            return ResponseEntity.ok(movies);
-        } catch (Exception e) {
-            System.err.println("Fejl ved almindelig søgning: " + e.getMessage());
-            e.printStackTrace();
-            return ResponseEntity.status(500).body(List.of());
+    public Mono<ResponseEntity<byte[]>> searchMovies(@RequestParam String query,
+                                                     @RequestParam(defaultValue = "1") int page,
+                                                     @RequestHeader HttpHeaders headers) {
+        if (!validPage(page)) {
+            return Mono.just(emptyList(400));
         }
+        return execution.await(movieService.searchMoviesPage(query, page))
+                .map(result -> serializedPage(result, headers))
+                .onErrorResume(e -> {
+                    log.error("Fejl ved almindelig søgning: {}", e.getMessage(), e);
+                    metrics.recordEndpointError("search", e);
+                    return Mono.just(emptyList(statusFor(e)));
+                });
+    }
+
+    // Typeahead til søgefeltet, fx /api/movies/autocomplete?q=star%20wa&limit=8
+    // Svares fra et lokalt indeks over alle titler vi har hentet, TMDB spørges kun når der er for få hits.
+    // Kort max-age, da indekset vokser mens brugerne søger.
+    @GetMapping("/autocomplete")
+    public Mono<ResponseEntity<List<MovieDto>>> autocomplete(@RequestParam String q,
+                                                             @RequestParam(defaultValue = "8") int limit) {
+        if (q.isBlank() || limit < 1 || limit > autocompleteMaxLimit) {
+            return Mono.just(ResponseEntity.badRequest().body(List.of()));
+        }
+        return execution.await(movieService.autocomplete(q, limit))
+                .map(movies -> ResponseEntity.ok()
+                        .cacheControl(CacheControl.maxAge(Duration.ofSeconds(30)).cachePublic())
+                        .body(movies))
+                .onErrorResume(e -> {
+                    log.error("Fejl ved autocomplete: {}", e.getMessage(), e);
+                    metrics.recordEndpointError("autocomplete", e);
+                    return Mono.just(ResponseEntity.status(statusFor(e)).body(List.of()));
+                });
+    }
+
+    // Flere sider af en liste som én NDJSON-strøm, fx /api/movies/pages?list=popular&from=3&pages=5
+    // list er popular, now-playing, by-genre (kræver genreId) eller search (kræver query).
+    // Hver film er én linje, og de kommer side for side i TMDB's rækkefølge.
+    @GetMapping(value = "/pages", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public Flux<MovieDto> streamPages(@RequestParam String list,
+                                      @RequestParam(required = false) Integer genreId,
+                                      @RequestParam(required = false) String query,
+                                      @RequestParam(defaultValue = "1") int from,
+                                      @RequestParam(defaultValue = "3") int pages) {
+        IntFunction<Mono<MoviePage>> pageLoader = switch (list) {
+            case "popular" -> movieService::fetchPopularPage;
+            case "now-playing" -> movieService::fetchNowPlayingPage;
+            case "by-genre" -> genreId == null ? null : page -> movieService.fetchMoviesByGenrePage(genreId, page);
+            case "search" -> query == null ? null : page -> movieService.searchMoviesPage(query, page);
+            default -> null;
+        };
+        if (pageLoader == null || !validPage(from) || pages < 1 || pages > streamMaxPages) {
+            return Flux.error(new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                    "Ukendt liste, manglende genreId/query eller ugyldigt sideinterval"));
+        }
+        return movieService.streamPages(pageLoader, from, pages)
+                .onErrorResume(e -> {
+                    log.error("Fejl ved streaming af sider fra {}: {}", list, e.getMessage(), e);
+                    metrics.recordEndpointError("pages", e);
+                    return Flux.empty();
+                });
     }
 
     // Get Metode, som henter genre til drop-down
     @GetMapping("/genres")
-    public ResponseEntity<List<GenreDto>> getGenres() {
-        try {
-            List<GenreDto> genres = movieService.fetchGenres();
-            return ResponseEntity.ok(genres);
-        } catch (Exception e) {
-            System.err.println("Fejl ved hentning af genrer: " + e.getMessage());
-            return ResponseEntity.status(500).body(List.of());
-        }
+    public Mono<ResponseEntity<byte[]>> getGenres(@RequestHeader HttpHeaders headers) {
+        return execution.await(movieService.fetchGenres().map(responseCache::get))
+                .map(body -> serialized(body, headers, genresCacheControl, null))
+                .onErrorResume(e -> {
+                    log.error("Fejl ved hentning af genrer: {}", e.getMessage(), e);
+                    metrics.recordEndpointError("genres", e);
+                    return Mono.just(emptyList(statusFor(e)));
+                });
     }
 
     // Get metode, som henter film på baggrund af valg genre i drop-down
     @GetMapping("/by-genre")
-    public ResponseEntity<List<MovieDto>> getMoviesByGenre(@RequestParam Integer genreId) {
-        try {
-            List<MovieDto> movies = movieService.fetchMoviesByGenre(genreId);
-            return ResponseEntity.ok(movies);
-        } catch (Exception e) {
-            System.err.println("Fejl ved hentning af film efter genre: " + e.getMessage());
-            e.printStackTrace();
-            return ResponseEntity.status(500).body(List.of());
+    public Mono<ResponseEntity<byte[]>> getMoviesByGenre(@RequestParam Integer genreId,
+                                                         @RequestParam(defaultValue = "1") int page,
+                                                         @RequestHeader HttpHeaders headers) {
+        if (!validPage(page)) {
+            return Mono.just(emptyList(400));
+        }
+        return execution.await(movieService.fetchMoviesByGenrePage(genreId, page))
+                .map(result -> serializedPage(result, headers))
+                .onErrorResume(e -> {
+                    log.error("Fejl ved hentning af film efter genre: {}", e.getMessage(), e);
+                    metrics.recordEndpointError("by-genre", e);
+                    return Mono.just(emptyList(statusFor(e)));
+                });
+    }
+
+    // Henter mange film i ét kald, fx /api/movies/batch?ids=603,27205,155&includeAi=false
+    // Erstatter et kald til /{id} pr. film på watchlist og "senest set".
+    @GetMapping("/batch")
+    public Mono<ResponseEntity<List<BatchMovieResult>>> getMovieDetailsBatch(@RequestParam List<Integer> ids,
+                                                                            @RequestParam(defaultValue = "false") boolean includeAi) {
+        return batch(ids, includeAi);
+    }
+
+    // Samme som ovenfor, men med id'erne som JSON-array i body, til lange lister.
+    @PostMapping("/batch")
+    public Mono<ResponseEntity<List<BatchMovieResult>>> postMovieDetailsBatch(@RequestBody List<Integer> ids,
+                                                                             @RequestParam(defaultValue = "false") boolean includeAi) {
+        return batch(ids, includeAi);
+    }
+
+    private Mono<ResponseEntity<List<BatchMovieResult>>> batch(List<Integer> ids, boolean includeAi) {
+        if (ids.size() > batchMaxIds) {
+            return Mono.just(ResponseEntity.badRequest().body(List.of()));
         }
+        return execution.await(movieService.fetchMovieDetailsBatch(ids, includeAi))
+                .map(ResponseEntity::ok)
+                .onErrorResume(e -> {
+                    log.error("Fejl ved hentning af batch af film: {}", e.getMessage(), e);
+                    metrics.recordEndpointError("batch", e);
+                    return Mono.just(ResponseEntity.status(statusFor(e)).body(List.of()));
+                });
     }
 
     // Get Metode, som henter film oplysninger på baggrund af filmens id
     @GetMapping("/{id}")
-    public ResponseEntity<MovieDto> getMovieDetails(@PathVariable Integer id) {
-        try {
-            MovieDto movie = movieService.fetchMovieDetails(id);
-            if (movie != null) {
-                return ResponseEntity.ok(movie);
-            }
-            return ResponseEntity.notFound().build(); // Hvis filmen ikke findes
-        } catch (Exception e) {
-            System.err.println("Fejl ved hentning af filmdetaljer for ID " + id + ": " + e.getMessage());
-            e.printStackTrace();
-            return ResponseEntity.status(500).build(); // Generisk fejl
-        }
+    public Mono<ResponseEntity<MovieDto>> getMovieDetails(@PathVariable Integer id) {
+        return execution.await(movieService.fetchMovieDetails(id))
+                .map(ResponseEntity::ok)
+                .defaultIfEmpty(ResponseEntity.notFound().build()) // Hvis filmen ikke findes
+                .onErrorResume(e -> {
+                    log.error("Fejl ved hentning af filmdetaljer for ID {}: {}", id, e.getMessage(), e);
+                    metrics.recordEndpointError("details", e);
+                    return Mono.just(ResponseEntity.status(statusFor(e)).build()); // Generisk fejl
+                });
     }
 
     // Get Metode, som henter film detaljer og ai beskrivelse på baggrund af id.
     @GetMapping("/details-with-ai/{id}")
-    public ResponseEntity<MovieDtoWithAiRecommendation> getMovieDetailsWithAi(@PathVariable Integer id) {
-        try {
-            MovieDtoWithAiRecommendation movieDetails = movieService.fetchMovieDetailsWithAiRecommendation(id);
-            if (movieDetails != null) {
-                return ResponseEntity.ok(movieDetails);
-            }
-            return ResponseEntity.notFound().build();
-        } catch (Exception e) {
-            System.err.println("Fejl ved hentning af filmdetaljer med AI for ID " + id + ": " + e.getMessage());
-            e.printStackTrace();
-            return ResponseEntity.status(500).build();
-        }
+    public Mono<ResponseEntity<MovieDtoWithAiRecommendation>> getMovieDetailsWithAi(@PathVariable Integer id) {
+        return execution.await(movieService.fetchMovieDetailsWithAiRecommendation(id))
+                .map(ResponseEntity::ok)
+                .defaultIfEmpty(ResponseEntity.notFound().build())
+                .onErrorResume(e -> {
+                    log.error("Fejl ved hentning af filmdetaljer med AI for ID {}: {}", id, e.getMessage(), e);
+                    metrics.recordEndpointError("details-with-ai", e);
+                    return Mono.just(ResponseEntity.status(statusFor(e)).build());
+                });
     }
 
     // Get metode, som henter film som er i biffen.
     @GetMapping("/now-playing") // Nyt endpoint for aktuelle film
-    public ResponseEntity<List<MovieDto>> getNowPlayingMovies() {
-        try {
-            List<MovieDto> movies = movieService.fetchNowPlayingMovies();
-            return ResponseEntity.ok(movies);
-        } catch (Exception e) {
-            System.err.println("Fejl ved hentning af aktuelle film: " + e.getMessage());
-            e.printStackTrace();
-            return ResponseEntity.status(500).body(List.of());
+    public Mono<ResponseEntity<byte[]>> getNowPlayingMovies(@RequestParam(defaultValue = "1") int page,
+                                                            @RequestHeader HttpHeaders headers) {
+        if (!validPage(page)) {
+            return Mono.just(emptyList(400));
         }
+        return execution.await(movieService.fetchNowPlayingPage(page))
+                .map(result -> serializedPage(result, headers))
+                .onErrorResume(e -> {
+                    log.error("Fejl ved hentning af aktuelle film: {}", e.getMessage(), e);
+                    metrics.recordEndpointError("now-playing", e);
+                    return Mono.just(emptyList(statusFor(e)));
+                });
     }
 
     // Fjern GET /search endpoint herfra for nu, for at simplificere og fokusere på AI.
     // Hvis du vil have en dedikeret søgefunktion ud over AI, kan du implementere den senere.
+
+    private boolean validPage(int page) {
+        return page >= 1 && page <= movieService.getMaxPage();
+    }
+
+    private ResponseEntity<byte[]> serializedPage(MoviePage page, HttpHeaders request) {
+        return serialized(responseCache.get(page.getResults()), request, listsCacheControl, page.getTotalPages());
+    }
+
+    // Svar med færdige bytes. Matcher If-None-Match, får klienten 304 uden body.
+    // gzip-varianten sendes når klienten accepterer den, Vary sørger for at caches holder dem adskilt.
+    // totalPages sendes som X-Total-Pages, null for svar der ikke er sider (genrer).
+    private static ResponseEntity<byte[]> serialized(SerializedResponseCache.Body body, HttpHeaders request,
+                                                     CacheControl cacheControl, Integer totalPages) {
+        boolean gzip = acceptsGzip(request);
+        String etag = gzip ? body.gzipEtag() : body.etag();
+        if (body.matches(request.getIfNoneMatch())) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED)
+                    .eTag(etag)
+                    .cacheControl(cacheControl)
+                    .varyBy(HttpHeaders.ACCEPT_ENCODING)
+                    .build();
+        }
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_JSON)
+                .eTag(etag)
+                .cacheControl(cacheControl)
+                .varyBy(HttpHeaders.ACCEPT_ENCODING);
+        if (totalPages != null) {
+            response.header(TOTAL_PAGES_HEADER, String.valueOf(totalPages));
+        }
+        if (gzip) {
+            return response.header(HttpHeaders.CONTENT_ENCODING, "gzip")
+                    .contentLength(body.gzip().length)
+                    .body(body.gzip());
+        }
+        return response.contentLength(body.identity().length).body(body.identity());
+    }
+
+    // Accept-Encoding: gzip, deflate, br (gzip;q=0 betyder nej tak)
+    private static boolean acceptsGzip(HttpHeaders request) {
+        for (String value : request.getOrEmpty(HttpHeaders.ACCEPT_ENCODING)) {
+            for (String coding : value.split(",")) {
+                String[] parts = coding.trim().split(";");
+                if (parts[0].trim().equalsIgnoreCase("gzip")) {
+                    return parts.length < 2 || !parts[1].replace(" ", "").matches("q=0(\\.0*)?");
+                }
+            }
+        }
+        return false;
+    }
+
+    // Fejlsvar er stadig en tom JSON-liste, som før, og må ikke caches
+    private static ResponseEntity<byte[]> emptyList(int status) {
+        return ResponseEntity.status(status)
+                .contentType(MediaType.APPLICATION_JSON)
+                .cacheControl(CacheControl.noStore())
+                .body(EMPTY_LIST);
+    }
+
+    // 503 når TMDB/OpenAI er overbelastet og kaldet ikke kunne komme igennem i tide, eller når
+    // circuit breakeren er åben, så frontenden kan prøve igen. Alle andre fejl er stadig 500.
+    private static int statusFor(Throwable e) {
+        return e instanceof UpstreamBusyException || e instanceof UpstreamUnavailableException ? 503 : 500;
+    }
 }
\ No newline at end of file
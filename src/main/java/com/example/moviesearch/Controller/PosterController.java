@@ -0,0 +1,103 @@
+package com.example.moviesearch.Controller;
+
+import com.example.moviesearch.Service.PosterCache;
+import com.example.moviesearch.Service.RequestExecution;
+import com.example.moviesearch.Service.ServiceMetrics;
+import jakarta.servlet.http.HttpServletRequest;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.CrossOrigin;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+
+// Plakater via vores egen server i stedet for direkte fra TMDB, fx /api/posters/w500/abc123.jpg
+// hvor abc123.jpg er posterPath fra MovieDto uden den første skråstreg.
+// Filen ligger på disk (PosterCache) og sendes uden at passere heapen: med Tomcats sendfile sender kernen
+// filen direkte til socket'en (se send).
+// Plakaterne ændrer sig aldrig (se PosterCache), så de må caches et år af browsere og CDN'er.
+@RestController
+@RequestMapping("/api/posters")
+@CrossOrigin(origins = "*", exposedHeaders = HttpHeaders.ETAG)
+public class PosterController {
+
+    private static final Logger log = LoggerFactory.getLogger(PosterController.class);
+    // Tomcat sætter support-attributten når connectoren kan bruge sendfile
+    private static final String SENDFILE_SUPPORT = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+    private static final CacheControl IMMUTABLE = CacheControl.maxAge(Duration.ofDays(365)).cachePublic().immutable();
+
+    private final PosterCache posterCache;
+    private final RequestExecution execution;
+    private final ServiceMetrics metrics;
+
+    public PosterController(PosterCache posterCache, RequestExecution execution, ServiceMetrics metrics) {
+        this.posterCache = posterCache;
+        this.execution = execution;
+        this.metrics = metrics;
+    }
+
+    // 400 ved ukendt størrelse eller filnavn, 404 hvis TMDB ikke har plakaten, 304 ved matchende If-None-Match.
+    // Returtypen er Object, fordi en plakat der allerede ligger på disk besvares med det samme (ResponseEntity):
+    // Tomcat bruger ikke sendfile efter en async dispatch, som en Mono altid giver. Kun en plakat der skal hentes
+    // fra TMDB først, returneres som Mono, og den sendes så som almindelig stream fra filen.
+    @GetMapping("/{size}/{file:.+}")
+    public Object getPoster(@PathVariable String size,
+                            @PathVariable String file,
+                            @RequestHeader HttpHeaders headers,
+                            HttpServletRequest request) {
+        if (!posterCache.isValid(size, file)) {
+            return ResponseEntity.badRequest().build();
+        }
+        PosterCache.Poster cached = posterCache.getCached(size, file);
+        if (cached != null) {
+            return send(cached, headers, request);
+        }
+        return execution.await(posterCache.get(size, file))
+                .map(poster -> send(poster, headers, null))
+                .defaultIfEmpty(ResponseEntity.notFound().build())
+                .onErrorResume(e -> {
+                    log.warn("Fejl ved hentning af plakat {}/{}: {}", size, file, e.getMessage());
+                    metrics.recordEndpointError("posters", e);
+                    return Mono.just(ResponseEntity.status(HttpStatus.BAD_GATEWAY).build());
+                });
+    }
+
+    // Med request (synkront svar) og en connector der understøtter det, sender Tomcat filen med sendfile
+    // (FileChannel.transferTo direkte til socket'en) når svaret er færdigt, så der skrives ingen body her.
+    // Ellers streames filen af Springs ResourceHttpMessageConverter.
+    // Tomcat åbner først filen efter vi har svaret. Derfor tjekker getCached at filen findes (ellers hentes den igen
+    // og streames), og PosterCache venter delete-delay med at slette filer den smider ud.
+    private static ResponseEntity<?> send(PosterCache.Poster poster, HttpHeaders headers, HttpServletRequest request) {
+        if (poster.matches(headers.getIfNoneMatch())) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED)
+                    .eTag(poster.etag())
+                    .cacheControl(IMMUTABLE)
+                    .build();
+        }
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+                .eTag(poster.etag())
+                .cacheControl(IMMUTABLE)
+                .contentType(poster.contentType())
+                .contentLength(poster.length());
+        if (request != null && Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT))) {
+            request.setAttribute(SENDFILE_FILENAME, poster.file().toString());
+            request.setAttribute(SENDFILE_START, 0L);
+            request.setAttribute(SENDFILE_END, poster.length());
+            return response.build();
+        }
+        return response.body(new FileSystemResource(poster.file()));
+    }
+}
@@ -0,0 +1,21 @@
+package com.example.moviesearch.Model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// Et resultat i svaret fra /api/movies/batch. Ét pr. id i samme rækkefølge som forespørgslen.
+// status er "ok", "not_found" (TMDB kender ikke filmen) eller "error" (TMDB/OpenAI fejlede).
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class BatchMovieResult {
+    public static final String OK = "ok";
+    public static final String NOT_FOUND = "not_found";
+    public static final String ERROR = "error";
+
+    private Integer id;
+    private String status;
+    private MovieDto movie;
+    private String aiRecommendation; // Kun udfyldt hvis includeAi=true
+}
@@ -1,5 +1,6 @@
     package com.example.moviesearch.Model;
 
+    import com.fasterxml.jackson.annotation.JsonInclude;
     import lombok.Getter;
     import lombok.Setter;
 
@@ -20,6 +21,22 @@
         private double top_p;
         private double frequency_penalty;
         private double presence_penalty;
+        // Sættes kun ved streaming (Server-Sent Events). Null betyder at feltet ikke sendes med.
+        @JsonInclude(JsonInclude.Include.NON_NULL)
+        private Boolean stream;
+        // Sættes når svaret skal være et JSON-objekt ({"type": "json_object"}), fx ved batch-opsummeringer.
+        @JsonInclude(JsonInclude.Include.NON_NULL)
+        private ResponseFormat response_format;
+
+        @Getter
+        @Setter
+        public static class ResponseFormat {
+            private String type;
+
+            public ResponseFormat(String type) {
+                this.type = type;
+            }
+        }
 
         // En klar definition af hvad en besked indeholder af parameter, rolle og indhold.
         @Getter
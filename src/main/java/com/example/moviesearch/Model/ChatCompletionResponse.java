@@ -20,6 +20,8 @@ public class ChatCompletionResponse {
     public static class Choice {
         private int index;
         private Message message;
+        // Ved streaming kommer svaret i små bidder i delta i stedet for message.
+        private Message delta;
         private String finish_reason;
     }
 
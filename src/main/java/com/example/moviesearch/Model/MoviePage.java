@@ -0,0 +1,17 @@
+package com.example.moviesearch.Model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+// Én side af en TMDB-liste (popular, now_playing, discover, search), dekodet direkte til MovieDto.
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class MoviePage {
+    private List<MovieDto> results;
+    private int page;
+    private int totalPages;
+}
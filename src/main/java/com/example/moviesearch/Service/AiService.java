@@ -1,30 +1,40 @@
 package com.example.moviesearch.Service;
 
 import com.example.moviesearch.Model.ChatCompletionRequest;
-import com.example.moviesearch.Model.ChatCompletionResponse;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.http.MediaType;
 import org.springframework.stereotype.Service;
-import org.springframework.web.reactive.function.BodyInserters;
-import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
-import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 @Service
 public class AiService {
 
-    private final WebClient webClient;
+    private static final String SERVICE = "AiService"; // service-tag i movie.service.calls
 
-    // Application Properties
-    @Value("${openai.api.key}")
-    private String openaiApiKey;
+    // Svaret når OpenAI ikke gav noget brugbart. Gemmes ikke i SummaryStore.
+    public static final String SUMMARY_FALLBACK = "Kunne ikke generere en AI-anbefaling for denne film.";
+    private static final String SUMMARY_LENGTH = "Fokuser på dens kerneelementer, men gør det kort (max 50 ord).";
+    // Svar-tokens pr. film i et batch: de 100 fra enkeltkaldet plus id og JSON-tegn
+    private static final int BATCH_TOKENS_PER_MOVIE = 120;
+
+    // En film der skal have en opsummering, i et batch (se SummaryBatcher)
+    public record MovieToSummarize(int id, String title, String overview) {
+    }
 
-    @Value("${openai.url}")
-    private String openaiUrl;
+    private final OpenAiClient openAiClient;
+    private final PromptCache promptCache;
+    private final ServiceMetrics metrics;
+    private final ObjectMapper objectMapper;
 
+    // Application Properties
     @Value("${openai.model}")
     private String openaiModel;
 
@@ -34,12 +44,59 @@ public class AiService {
     @Value("${openai.max_tokens}")
     private int openaiMaxTokens;
 
-    public AiService() {
-        this.webClient = WebClient.builder().build();
+    public AiService(OpenAiClient openAiClient, PromptCache promptCache, ServiceMetrics metrics, ObjectMapper objectMapper) {
+        this.openAiClient = openAiClient;
+        this.promptCache = promptCache;
+        this.metrics = metrics;
+        this.objectMapper = objectMapper;
     }
 
     // Metode som returnerer filmtitler på baggrund af en prompt til openAi.
-    public List<String> generateMovieTitlesFromPrompt(String userPrompt) {
+    public Mono<List<String>> generateMovieTitlesFromPrompt(String userPrompt) {
+        // Har vi set (næsten) samme prompt før, springes OpenAI-kaldet helt over.
+        String cacheKey = PromptCache.normalize(userPrompt);
+        List<String> cachedTitles = promptCache.get(cacheKey);
+        if (cachedTitles != null) {
+            return metrics.timed(SERVICE, "generateMovieTitlesFromPrompt", Mono.just(cachedTitles));
+        }
+
+        ChatCompletionRequest requestDto = titleRequest(userPrompt);
+
+        // Mono er asynkron, som ikke blokerer andet kode.
+        // Et løfte om en respons i fremtiden. Controlleren returnerer Mono'en direkte,
+        // så ingen tråd venter mens OpenAI svarer.
+        return metrics.timed(SERVICE, "generateMovieTitlesFromPrompt", openAiClient.complete(requestDto) // Sender DTO som JSON
+                .filter(response -> response.getChoices() != null && !response.getChoices().isEmpty())
+                .map(response -> TitleParser.parse(response.getChoices().get(0).getMessage().getContent()))
+                .doOnNext(titles -> {
+                    if (!titles.isEmpty()) {
+                        promptCache.put(cacheKey, titles);
+                    }
+                })
+                .defaultIfEmpty(List.of())); // Ved fejl returner tom liste
+    }
+
+    // Streaming-udgave: titlerne sendes videre en ad gangen, så snart AI'en har skrevet dem færdig.
+    // Hele listen gemmes i PromptCache når strømmen er slut, ligesom ved det almindelige kald.
+    public Flux<String> streamMovieTitlesFromPrompt(String userPrompt) {
+        String cacheKey = PromptCache.normalize(userPrompt);
+        List<String> cachedTitles = promptCache.get(cacheKey);
+        if (cachedTitles != null) {
+            return Flux.fromIterable(cachedTitles);
+        }
+
+        List<String> seen = new CopyOnWriteArrayList<>();
+        return metrics.timed(SERVICE, "streamMovieTitlesFromPrompt",
+                TitleParser.parseIncrementally(openAiClient.stream(titleRequest(userPrompt)))
+                        .doOnNext(seen::add)
+                        .doOnComplete(() -> {
+                            if (!seen.isEmpty()) {
+                                promptCache.put(cacheKey, seen);
+                            }
+                        }));
+    }
+
+    private ChatCompletionRequest titleRequest(String userPrompt) {
         String systemMessage = "Du er en filmanbefaler. " +
                 "Brugeren ønsker at se en film baseret på følgende beskrivelse: '" + userPrompt + "'. " +
                 "Foreslå 3-5 filmtitler, der matcher godt. " +
@@ -55,41 +112,14 @@ public class AiService {
         requestDto.getMessages().add(new ChatCompletionRequest.Message("system", systemMessage));
         requestDto.getMessages().add(new ChatCompletionRequest.Message("user", userPrompt));
 
-        // Mono er asynkron, som ikke blokerer andet kode.
-        // Et løfte om en respons i fremtiden.
-        Mono<ChatCompletionResponse> responseMono = webClient.post()
-                .uri(openaiUrl)
-                .header("Authorization", "Bearer " + openaiApiKey)
-                .contentType(MediaType.APPLICATION_JSON)
-                .body(BodyInserters.fromValue(requestDto)) // Sender DTO som JSON
-                .retrieve()
-                .bodyToMono(ChatCompletionResponse.class);
-
-        // Vent på svar, vi kører ikke asynkron.
-        // Fokus på skalerbarhed. I fremtiden kan applikationen blive asynkron.
-        // Jeg kunne også have brugt RestTemplate, postForObject().
-        // Men valgte webClient som i dette tilfælde er lidt modsigende en Mono, som er asynkron.
-        // I tilfælde af asynkron, kunne vi risikere at controlleren, returnerede for tidligt
-        // Vi ville skulle blockere i controlleren alligevel så.
-        ChatCompletionResponse response = responseMono.block();
-
-        if (response != null && response.getChoices() != null && !response.getChoices().isEmpty()) {
-            String aiResponseContent = response.getChoices().get(0).getMessage().getContent();
-            // Pars den kommaseparerede streng til en liste af titler
-            return Arrays.stream(aiResponseContent.split(","))
-                    .map(String::trim) // Trim whitespace med ->
-                    .filter(s -> !s.isEmpty()) // Fjern tomme strenge
-                    .collect(Collectors.toList());
-        }
-        // Ved fejl returner tom liste
-        return List.of();
+        return requestDto;
     }
 
     // Metode som genererer en kort beskrivelse med fakta omkring en film
-    public String generateMovieSummary(String movieTitle, String movieOverview) {
+    public Mono<String> generateMovieSummary(String movieTitle, String movieOverview) {
         String systemMessage = "Du er en filmanbefaler. " +
                 "Lav en kort, fængende tekst med en fun fact eller teknisk detalje for filmnørder på dansk af filmen. " +
-                "Fokuser på dens kerneelementer, men gør det kort (max 50 ord).";
+                SUMMARY_LENGTH;
         String userPrompt = "Filmtitel: " + movieTitle + "\nBeskrivelse: " + movieOverview;
 
         // Samme koncept som anden metode.
@@ -100,19 +130,64 @@ public class AiService {
         requestDto.getMessages().add(new ChatCompletionRequest.Message("system", systemMessage));
         requestDto.getMessages().add(new ChatCompletionRequest.Message("user", userPrompt));
 
-        Mono<ChatCompletionResponse> responseMono = webClient.post()
-                .uri(openaiUrl)
-                .header("Authorization", "Bearer " + openaiApiKey)
-                .contentType(MediaType.APPLICATION_JSON)
-                .body(BodyInserters.fromValue(requestDto))
-                .retrieve()
-                .bodyToMono(ChatCompletionResponse.class);
+        return metrics.timed(SERVICE, "generateMovieSummary", openAiClient.complete(requestDto)
+                .filter(response -> response.getChoices() != null && !response.getChoices().isEmpty())
+                .map(response -> response.getChoices().get(0).getMessage().getContent())
+                .defaultIfEmpty(SUMMARY_FALLBACK)); // Fejlbesked
+    }
 
-        ChatCompletionResponse response = responseMono.block();
+    // Opsummeringer for flere film i ét OpenAI-kald, så systemprompten og et round trip deles af dem alle.
+    // Filmene sendes som et JSON-array, og svaret er et JSON-objekt fra film-id til tekst (response_format json_object).
+    // Film som mangler i svaret, eller hvis tekst er tom, er ikke med i map'et.
+    public Mono<Map<Integer, String>> generateMovieSummaries(List<MovieToSummarize> movies) {
+        String systemMessage = "Du er en filmanbefaler. " +
+                "Brugeren sender en liste af film som JSON med id, title og overview. " +
+                "Lav for hver film en kort, fængende tekst med en fun fact eller teknisk detalje for filmnørder på dansk. " +
+                SUMMARY_LENGTH + " " +
+                "Svar kun med et JSON-objekt, hvor nøglen er filmens id og værdien er teksten, " +
+                "fx {\"603\": \"...\", \"27205\": \"...\"}.";
+        String userPrompt;
+        try {
+            userPrompt = objectMapper.writeValueAsString(movies);
+        } catch (JsonProcessingException e) {
+            return Mono.error(e);
+        }
 
-        if (response != null && response.getChoices() != null && !response.getChoices().isEmpty()) {
-            return response.getChoices().get(0).getMessage().getContent();
+        ChatCompletionRequest requestDto = new ChatCompletionRequest();
+        requestDto.setModel(openaiModel);
+        requestDto.setTemperature(0.3); // Samme som enkeltkaldet
+        requestDto.setMax_tokens(BATCH_TOKENS_PER_MOVIE * movies.size());
+        requestDto.setResponse_format(new ChatCompletionRequest.ResponseFormat("json_object"));
+        requestDto.getMessages().add(new ChatCompletionRequest.Message("system", systemMessage));
+        requestDto.getMessages().add(new ChatCompletionRequest.Message("user", userPrompt));
+
+        return metrics.timed(SERVICE, "generateMovieSummaries", openAiClient.complete(requestDto)
+                .filter(response -> response.getChoices() != null && !response.getChoices().isEmpty())
+                .map(response -> parseSummaries(response.getChoices().get(0).getMessage().getContent()))
+                .defaultIfEmpty(Map.of()));
+    }
+
+    // {"603": "tekst", ...} -> {603=tekst}. Ugyldig JSON giver et tomt map, så kalderne får SUMMARY_FALLBACK.
+    private Map<Integer, String> parseSummaries(String content) {
+        Map<Integer, String> summaries = new HashMap<>();
+        if (content == null) {
+            return summaries;
+        }
+        try {
+            JsonNode root = objectMapper.readTree(content);
+            for (Map.Entry<String, JsonNode> field : root.properties()) {
+                String summary = field.getValue().asText("").trim();
+                if (!summary.isEmpty()) {
+                    try {
+                        summaries.put(Integer.parseInt(field.getKey().trim()), summary);
+                    } catch (NumberFormatException ignored) {
+                        // Ukendt nøgle, springes over
+                    }
+                }
+            }
+        } catch (JsonProcessingException e) {
+            return Map.of();
         }
-        return "Kunne ikke generere en AI-anbefaling for denne film."; // Fejlbesked
+        return summaries;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,187 @@
+package com.example.moviesearch.Service;
+
+import com.example.moviesearch.Model.MovieDto;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Holder cachen varm, så de første brugere efter en deploy (eller efter en ny TMDB-liste) ikke betaler for den kolde vej.
+// Kører ved opstart og derefter hver movie.warmup.interval:
+//   1. Henter genrer, popular, now-playing og discover for hver genre på ny, inden de udløber (se MovieService.refreshCachedLists)
+//   2. I off-peak vinduet (movie.warmup.summaries.off-peak, fx 01:00-06:00) genereres AI-opsummeringer for alle film
+//      på popular og now-playing, som ikke allerede ligger i SummaryStore. Højst token-budget-per-day OpenAI-tokens pr. dag.
+// Med movie.warmup.summaries.on-startup=true genereres de manglende opsummeringer også ved opstart, uanset tidspunkt.
+// Det er slået fra som standard, så en deploy eller genstart midt på dagen ikke bruger OpenAI-tokens.
+// Budgettet måles på movie.openai.tokens mens opvarmningen kører, så brugernes kald i samme tidsrum tæller med.
+// Det er med vilje konservativt. Budgettet tjekkes lige før hver bid af batch-size film sendes, når den forrige bid er
+// færdig og talt med, og er det brugt, stopper kørslen. Det kan altså kun overskrides med forbruget fra den sidste bid.
+// I warm-start mode (movie.upstream-archive.mode) kommer opstartens kald fra arkivet.
+@Component
+public class CacheWarmer {
+
+    private static final Logger log = LoggerFactory.getLogger(CacheWarmer.class);
+
+    private final MovieService movieService;
+    private final MeterRegistry meterRegistry;
+    private final boolean enabled;
+    private final int concurrency;
+    private final int summaryBatchSize;
+    private final long tokenBudgetPerDay;
+    private final boolean summariesOnStartup;
+    private final ZoneId zone;
+    private final LocalTime offPeakStart;
+    private final LocalTime offPeakEnd;
+
+    private final AtomicBoolean running = new AtomicBoolean();
+    private final Counter summariesGenerated;
+    // Tokens brugt af opvarmningen på budgetDay. Kun én kørsel ad gangen (se running).
+    private volatile LocalDate budgetDay;
+    private final AtomicLong tokensSpent = new AtomicLong();
+
+    public CacheWarmer(MovieService movieService,
+                       MeterRegistry meterRegistry,
+                       @Value("${movie.warmup.enabled:true}") boolean enabled,
+                       @Value("${movie.warmup.concurrency:4}") int concurrency,
+                       @Value("${movie.warmup.summaries.batch-size:20}") int summaryBatchSize,
+                       @Value("${movie.warmup.summaries.token-budget-per-day:100000}") long tokenBudgetPerDay,
+                       @Value("${movie.warmup.summaries.on-startup:false}") boolean summariesOnStartup,
+                       @Value("${movie.warmup.summaries.off-peak:01:00-06:00}") String offPeak,
+                       @Value("${movie.warmup.zone:Europe/Copenhagen}") String zone) {
+        this.movieService = movieService;
+        this.meterRegistry = meterRegistry;
+        this.enabled = enabled;
+        this.concurrency = concurrency;
+        this.summaryBatchSize = summaryBatchSize;
+        this.tokenBudgetPerDay = tokenBudgetPerDay;
+        this.summariesOnStartup = summariesOnStartup;
+        this.zone = ZoneId.of(zone);
+        // Tomt vindue = hele døgnet
+        String[] window = offPeak.isBlank() ? new String[]{"00:00", "00:00"} : offPeak.trim().split("-");
+        this.offPeakStart = LocalTime.parse(window[0].trim());
+        this.offPeakEnd = LocalTime.parse(window[1].trim());
+        this.summariesGenerated = Counter.builder("movie.warmup.summaries")
+                .description("AI-opsummeringer genereret på forhånd af CacheWarmer")
+                .register(meterRegistry);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmOnStartup() {
+        warm(summariesOnStartup, true);
+    }
+
+    @Scheduled(initialDelayString = "${movie.warmup.interval:PT5M}", fixedDelayString = "${movie.warmup.interval:PT5M}")
+    public void warmOnSchedule() {
+        warm(isOffPeak(ZonedDateTime.now(zone).toLocalTime()), false);
+    }
+
+    // Starter en kørsel i baggrunden, medmindre den forrige stadig er i gang
+    private void warm(boolean summaries, boolean startup) {
+        if (!enabled || !running.compareAndSet(false, true)) {
+            return;
+        }
+        long start = System.nanoTime();
+        movieService.refreshCachedLists(concurrency)
+                .flatMap(lists -> (summaries ? precomputeSummaries() : Mono.just(0L))
+                        .map(generated -> new long[]{lists, generated}))
+                .doFinally(signal -> running.set(false))
+                .subscribe(
+                        result -> {
+                            String message = "Cache-opvarmning: {} lister opdateret, {} AI-opsummeringer genereret ({} tokens brugt i dag) på {} ms";
+                            Object[] args = {result[0], result[1], tokensSpent.get(), (System.nanoTime() - start) / 1_000_000};
+                            if (startup) {
+                                log.info(message, args);
+                            } else {
+                                log.debug(message, args);
+                            }
+                        },
+                        e -> log.warn("Fejl ved cache-opvarmning: {}", e.getMessage()));
+    }
+
+    // Opsummeringer for film på popular og now-playing, så længe dagens budget rækker.
+    // Forbruget er tilvæksten i movie.openai.tokens siden denne fase startede, lagt til det der var brugt før.
+    private Mono<Long> precomputeSummaries() {
+        return Mono.defer(() -> {
+            LocalDate today = LocalDate.now(zone);
+            if (!today.equals(budgetDay)) {
+                budgetDay = today;
+                tokensSpent.set(0);
+            }
+            long spentBefore = tokensSpent.get();
+            double counterBefore = openAiTokens();
+            // Først detaljerne for alle film (de er også dem /details-with-ai bruger), derefter opsummeringerne
+            // i bidder af batch-size film, som alle spørges samtidig, så SummaryBatcher sender hver bid i ét kald.
+            // Budgettet tjekkes i Mono.defer, dvs. først når concatMap starter bidden (efter den forrige er færdig).
+            // Er det brugt, giver bidden -1, og takeWhile stopper kørslen. prefetch 0, så der ikke hentes detaljer
+            // til bidder der alligevel ikke bliver sendt.
+            return Flux.merge(movieService.fetchPopularMovies(), movieService.fetchNowPlayingMovies())
+                    .flatMapIterable(movies -> movies)
+                    .map(MovieDto::getId)
+                    .distinct()
+                    .flatMap(id -> movieService.fetchMovieDetails(id)
+                            .onErrorResume(e -> {
+                                log.debug("Kunne ikke hente detaljer for film {}: {}", id, e.getMessage());
+                                return Mono.empty();
+                            }), concurrency)
+                    .buffer(summaryBatchSize)
+                    .concatMap(chunk -> Mono.defer(() -> budgetLeft(spentBefore, counterBefore)
+                            ? summarize(chunk)
+                            : Mono.just(-1L)), 0)
+                    .takeWhile(generated -> generated >= 0)
+                    .reduce(0L, Long::sum)
+                    .doOnNext(generated -> budgetLeft(spentBefore, counterBefore));
+        });
+    }
+
+    // Opdaterer tokensSpent med forbruget siden fasen startede, og svarer om der er budget tilbage i dag
+    private boolean budgetLeft(long spentBefore, double counterBefore) {
+        tokensSpent.set(spentBefore + (long) (openAiTokens() - counterBefore));
+        return tokensSpent.get() < tokenBudgetPerDay;
+    }
+
+    // Én bid: alle film spørges samtidig. Giver antallet af nye opsummeringer.
+    private Mono<Long> summarize(List<MovieDto> chunk) {
+        return Flux.fromIterable(chunk)
+                .flatMap(movie -> movieService.precomputeAiSummary(movie)
+                        .onErrorResume(e -> {
+                            log.debug("Kunne ikke forberede AI-opsummering for film {}: {}",
+                                    movie.getId(), e.getMessage());
+                            return Mono.just(false);
+                        }), chunk.size())
+                .filter(generated -> generated)
+                .doOnNext(generated -> summariesGenerated.increment())
+                .count();
+    }
+
+    // Summen af prompt- og completion-tokens fra OpenAiClient
+    private double openAiTokens() {
+        return meterRegistry.find("movie.openai.tokens").counters().stream()
+                .mapToDouble(Counter::count)
+                .sum();
+    }
+
+    // Vinduet må gå over midnat, fx 22:00-05:00. Start lig slut betyder hele døgnet.
+    boolean isOffPeak(LocalTime now) {
+        if (offPeakStart.equals(offPeakEnd)) {
+            return true;
+        }
+        return offPeakStart.isBefore(offPeakEnd)
+                ? !now.isBefore(offPeakStart) && now.isBefore(offPeakEnd)
+                : !now.isBefore(offPeakStart) || now.isBefore(offPeakEnd);
+    }
+}
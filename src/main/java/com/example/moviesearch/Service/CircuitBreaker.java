@@ -0,0 +1,149 @@
+package com.example.moviesearch.Service;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Simpel circuit breaker pr. endpoint-familie (fx tmdb.details eller openai.chat).
+// CLOSED: alle kald går igennem, og udfaldet af de sidste window kald huskes.
+// OPEN: er fejlraten over grænsen, afvises alle kald med det samme i openDuration.
+// HALF_OPEN: derefter slippes halfOpenCalls prøvekald igennem. Lykkes de, lukkes breakeren igen.
+public class CircuitBreaker {
+
+    public enum State { CLOSED, OPEN, HALF_OPEN }
+
+    private final String name;
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private final boolean[] failures; // Ringbuffer med de sidste kald, true = fejl
+    private final int minimumCalls;
+    private final double failureRateThreshold;
+    private final long openDurationNanos;
+    private final int halfOpenCalls;
+
+    private State state = State.CLOSED;
+    private int position;
+    private int recorded;
+    private int failureCount;
+    private long openedAtNanos;
+    private int halfOpenPermits;
+    private int halfOpenSuccesses;
+
+    public CircuitBreaker(String name, int window, int minimumCalls, double failureRatePercent,
+                          Duration openDuration, int halfOpenCalls) {
+        this.name = name;
+        this.failures = new boolean[window];
+        this.minimumCalls = minimumCalls;
+        this.failureRateThreshold = failureRatePercent / 100.0;
+        this.openDurationNanos = openDuration.toNanos();
+        this.halfOpenCalls = halfOpenCalls;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public State getState() {
+        lock.lock();
+        try {
+            return state;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Må vi kalde upstream lige nu?
+    public boolean tryAcquire() {
+        lock.lock();
+        try {
+            if (state == State.OPEN && System.nanoTime() - openedAtNanos >= openDurationNanos) {
+                state = State.HALF_OPEN;
+                halfOpenPermits = halfOpenCalls;
+                halfOpenSuccesses = 0;
+            }
+            if (state == State.OPEN) {
+                return false;
+            }
+            if (state == State.HALF_OPEN) {
+                if (halfOpenPermits == 0) {
+                    return false;
+                }
+                halfOpenPermits--;
+            }
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void onSuccess() {
+        lock.lock();
+        try {
+            if (state == State.HALF_OPEN) {
+                if (++halfOpenSuccesses >= halfOpenCalls) {
+                    reset(State.CLOSED);
+                }
+                return;
+            }
+            record(false);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void onFailure() {
+        lock.lock();
+        try {
+            if (state == State.HALF_OPEN) {
+                open();
+                return;
+            }
+            record(true);
+            if (recorded >= minimumCalls && (double) failureCount / recorded >= failureRateThreshold) {
+                open();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Kaldet gav hverken et svar eller en upstream-fejl (fx annulleret). Et prøvekald i HALF_OPEN gives tilbage.
+    public void onIgnored() {
+        lock.lock();
+        try {
+            if (state == State.HALF_OPEN && halfOpenPermits < halfOpenCalls - halfOpenSuccesses) {
+                halfOpenPermits++;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void record(boolean failed) {
+        if (recorded == failures.length) {
+            if (failures[position]) {
+                failureCount--;
+            }
+        } else {
+            recorded++;
+        }
+        failures[position] = failed;
+        if (failed) {
+            failureCount++;
+        }
+        position = (position + 1) % failures.length;
+    }
+
+    private void open() {
+        reset(State.OPEN);
+        openedAtNanos = System.nanoTime();
+    }
+
+    private void reset(State next) {
+        state = next;
+        position = 0;
+        recorded = 0;
+        failureCount = 0;
+        Arrays.fill(failures, false);
+    }
+}
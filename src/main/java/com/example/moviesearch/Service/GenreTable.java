@@ -0,0 +1,49 @@
+package com.example.moviesearch.Service;
+
+import com.example.moviesearch.Model.GenreDto;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+// Opslagstabel fra TMDB genre-id til GenreDto, så lister fra /popular, /search osv. kan få rigtige
+// genrenavne i stedet for "N/A". Tabellen er et array indekseret direkte med id'et (TMDB's id'er er
+// små tal, den største er ca. 10770), og alle film deler de samme GenreDto-objekter.
+// Bygges ud fra fetchGenres og udskiftes atomisk, så læsere aldrig ser en halvt opdateret tabel.
+@Component
+public class GenreTable {
+
+    private final AtomicReference<GenreDto[]> table = new AtomicReference<>(new GenreDto[0]);
+
+    public void update(List<GenreDto> genres) {
+        int maxId = -1;
+        for (GenreDto genre : genres) {
+            if (genre.getId() != null && genre.getId() >= 0) {
+                maxId = Math.max(maxId, genre.getId());
+            }
+        }
+        GenreDto[] next = new GenreDto[maxId + 1];
+        for (GenreDto genre : genres) {
+            if (genre.getId() != null && genre.getId() >= 0) {
+                next[genre.getId()] = new GenreDto(genre.getId(), genre.getName());
+            }
+        }
+        table.set(next);
+    }
+
+    // Den delte GenreDto for id'et, eller null hvis vi ikke kender det.
+    public GenreDto lookup(int id) {
+        GenreDto[] current = table.get();
+        return id >= 0 && id < current.length ? current[id] : null;
+    }
+
+    // Som lookup, men falder tilbage til en GenreDto med "N/A" som navn (den gamle opførsel).
+    public GenreDto resolve(int id) {
+        GenreDto genre = lookup(id);
+        return genre != null ? genre : new GenreDto(id, "N/A");
+    }
+
+    public boolean isEmpty() {
+        return table.get().length == 0;
+    }
+}
@@ -0,0 +1,355 @@
+package com.example.moviesearch.Service;
+
+import com.example.moviesearch.Model.GenreDto;
+import com.example.moviesearch.Model.MovieDto;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// Lokal søgning over de film MovieService allerede har set (lister, søgninger og detaljer), så /ai-recommend
+// kan svares uden OpenAI når vi er sikre nok. Ingen ekstern model, ingen tokens.
+//
+// Hver film er en hashed TF-IDF vektor (feature hashing) med movie.local-retrieval.dimensions pladser,
+// bygget af titel, overview og genrenavne, og gemt som én række i en flad float[] (rækkerne efter hinanden).
+// Vægtningen er SMART lnc.ltc: filmene har log-tf, cosinus-normaliseret. Prompten har log-tf gange idf, også normaliseret.
+// Hashing bruges kun til vektorerne. Ved siden af holdes et ordforråd (ord -> antal film med ordet), og idf og coverage
+// beregnes ud fra det, så et ukendt ord ikke tæller som kendt fordi det deler plads med et andet.
+// Ordforrådet koster en map-post pr. forskelligt ord (typisk få titusinder ved 10.000 film) plus ordene pr. film.
+// Nærmeste naboer findes brute force, men kun promptens få pladser læses pr. film, så 10.000 film tager under et millisekund (se LocalMovieIndexBenchmark).
+//
+// Vi svarer kun lokalt når:
+//   - indekset har mindst min-movies film
+//   - mindst min-coverage af promptens ord findes i indekset
+//   - mindst min-results film scorer over min-score
+// Ellers er svaret en tom liste, og kalderen spørger AiService. Resultater over min-score ordnes efter score
+// med et lille løft for vote_average. Udfaldet tælles i movie.ai.local-retrieval med tag outcome=local/fallback.
+@Component
+public class LocalMovieIndex {
+
+    // Fyldord i prompts og overviews, som ikke siger noget om filmen (efter normalize og stemming)
+    private static final Set<String> STOP_WORDS = Set.of(
+            "film", "filmen", "movie", "movies", "som", "der", "det", "den", "de", "en", "et", "og", "eller", "i", "pa",
+            "paa", "med", "om", "til", "af", "for", "fra", "er", "var", "har", "jeg", "vil", "gerne", "se", "noget",
+            "nogle", "man", "sig", "sin", "sit", "han", "hun", "hans", "hendes", "deres", "men", "ikke", "kan", "skal",
+            "bliv", "blive", "bliver", "hvor", "hvad", "naar", "nar", "efter", "over", "under", "mod", "ud", "op",
+            "the", "and", "with", "about", "like", "want", "watch", "some", "that", "this", "from", "her", "his", "their",
+            "anbefal", "find", "giv", "vis", "god", "godt", "gode");
+    private static final int TITLE_WEIGHT = 2;
+    private static final int GENRE_WEIGHT = 3;
+    // Hvor meget vote_average (0-10) løfter en film med samme score: op til 20%
+    private static final float VOTE_BOOST = 0.2f;
+
+    private final boolean enabled;
+    private final int dimensions;
+    private final int maxMovies;
+    private final int minMovies;
+    private final double minCoverage;
+    private final float minScore;
+    private final int minResults;
+    private final int maxResults;
+
+    // Skrivning (nye film) tager write-låsen, forespørgsler read-låsen
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private float[] vectors;
+    private MovieDto[] movies;
+    private String[][] terms; // Filmens forskellige ord, så documentFrequency kan rettes når filmen opdateres
+    private final Map<String, Integer> documentFrequency = new HashMap<>();
+    private final Map<Integer, Integer> rowById = new HashMap<>();
+    private int size;
+
+    private final Counter localAnswers;
+    private final Counter fallbacks;
+
+    public LocalMovieIndex(MeterRegistry meterRegistry,
+                           @Value("${movie.local-retrieval.enabled:true}") boolean enabled,
+                           @Value("${movie.local-retrieval.dimensions:512}") int dimensions,
+                           @Value("${movie.local-retrieval.max-movies:10000}") int maxMovies,
+                           @Value("${movie.local-retrieval.min-movies:200}") int minMovies,
+                           @Value("${movie.local-retrieval.min-coverage:0.6}") double minCoverage,
+                           @Value("${movie.local-retrieval.min-score:0.25}") float minScore,
+                           @Value("${movie.local-retrieval.min-results:3}") int minResults,
+                           @Value("${movie.local-retrieval.max-results:5}") int maxResults) {
+        this.enabled = enabled;
+        this.dimensions = dimensions;
+        this.maxMovies = maxMovies;
+        this.minMovies = minMovies;
+        this.minCoverage = minCoverage;
+        this.minScore = minScore;
+        this.minResults = minResults;
+        this.maxResults = maxResults;
+        this.vectors = new float[0];
+        this.movies = new MovieDto[0];
+        this.terms = new String[0][];
+
+        this.localAnswers = Counter.builder("movie.ai.local-retrieval")
+                .description("AI-prompts besvaret af det lokale indeks (local) eller sendt videre til OpenAI (fallback)")
+                .tag("outcome", "local")
+                .register(meterRegistry);
+        this.fallbacks = Counter.builder("movie.ai.local-retrieval")
+                .description("AI-prompts besvaret af det lokale indeks (local) eller sendt videre til OpenAI (fallback)")
+                .tag("outcome", "fallback")
+                .register(meterRegistry);
+        Gauge.builder("movie.ai.local-retrieval.movies", this, LocalMovieIndex::size)
+                .description("Antal film i det lokale indeks")
+                .register(meterRegistry);
+    }
+
+    // Tilføjer eller opdaterer filmene. Kaldes af MovieService for alt hvad der hentes fra TMDB.
+    // Er indekset fuldt (max-movies), opdateres kendte film stadig, men nye kommer ikke med.
+    // Vektorerne bygges før låsen tages, så forespørgsler kun venter på selve kopieringen.
+    public void addAll(List<MovieDto> newMovies) {
+        if (!enabled || newMovies == null || newMovies.isEmpty()) {
+            return;
+        }
+        List<MovieDto> accepted = new ArrayList<>(newMovies.size());
+        List<Document> documents = new ArrayList<>(newMovies.size());
+        for (MovieDto movie : newMovies) {
+            Document document = movie == null || movie.getId() == null ? null : document(movie);
+            if (document != null) {
+                accepted.add(movie);
+                documents.add(document);
+            }
+        }
+        lock.writeLock().lock();
+        try {
+            for (int i = 0; i < accepted.size(); i++) {
+                put(accepted.get(i), documents.get(i));
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void add(MovieDto movie) {
+        if (movie != null) {
+            addAll(List.of(movie));
+        }
+    }
+
+    // Filmens vektor og dens forskellige ord
+    private record Document(float[] vector, String[] terms) {
+    }
+
+    private void put(MovieDto movie, Document document) {
+        Integer row = rowById.get(movie.getId());
+        if (row == null) {
+            if (size == maxMovies) {
+                return;
+            }
+            ensureCapacity(size + 1);
+            row = size++;
+            rowById.put(movie.getId(), row);
+        } else {
+            updateDocumentFrequency(terms[row], -1);
+        }
+        System.arraycopy(document.vector(), 0, vectors, row * dimensions, dimensions);
+        updateDocumentFrequency(document.terms(), 1);
+        terms[row] = document.terms();
+        movies[row] = movie;
+    }
+
+    // De bedste film for prompten, eller en tom liste hvis indekset ikke er sikkert nok (se klassens kommentar).
+    public List<MovieDto> answer(String prompt) {
+        if (!enabled) {
+            return List.of();
+        }
+        List<MovieDto> result = search(prompt);
+        (result.isEmpty() ? fallbacks : localAnswers).increment();
+        return result;
+    }
+
+    private List<MovieDto> search(String prompt) {
+        Map<String, Float> termFrequency = termFrequencies(List.of(prompt), 1, new LinkedHashMap<>());
+        if (termFrequency.isEmpty()) {
+            return List.of();
+        }
+        lock.readLock().lock();
+        try {
+            if (size < minMovies) {
+                return List.of();
+            }
+            // Promptens vægte (log-tf * idf) lagt i ordenes pladser og normaliseret.
+            // Ord ingen film har (efter ordforrådet, ikke pladsen) tæller mod coverage.
+            Map<Integer, Float> slotWeights = new LinkedHashMap<>();
+            int known = 0;
+            for (Map.Entry<String, Float> term : termFrequency.entrySet()) {
+                Integer frequency = documentFrequency.get(term.getKey());
+                if (frequency == null) {
+                    continue;
+                }
+                float weight = (float) ((1 + Math.log(term.getValue())) * (Math.log((size + 1.0) / (frequency + 1.0)) + 1));
+                slotWeights.merge(slot(term.getKey()), weight, Float::sum);
+                known++;
+            }
+            if (known == 0 || (double) known / termFrequency.size() < minCoverage) {
+                return List.of();
+            }
+            int[] slots = new int[slotWeights.size()];
+            float[] weights = new float[slotWeights.size()];
+            double norm = 0;
+            int n = 0;
+            for (Map.Entry<Integer, Float> slot : slotWeights.entrySet()) {
+                slots[n] = slot.getKey();
+                weights[n] = slot.getValue();
+                norm += weights[n] * weights[n];
+                n++;
+            }
+            float inverseNorm = (float) (1 / Math.sqrt(norm));
+            for (int i = 0; i < n; i++) {
+                weights[i] *= inverseNorm;
+            }
+
+            // Brute force over alle film, kun promptens pladser læses. De bedste maxResults holdes sorteret.
+            int[] bestRows = new int[maxResults];
+            float[] bestRanks = new float[maxResults];
+            Arrays.fill(bestRanks, -1f);
+            int candidates = 0;
+            for (int row = 0; row < size; row++) {
+                int offset = row * dimensions;
+                float score = 0;
+                for (int i = 0; i < n; i++) {
+                    score += weights[i] * vectors[offset + slots[i]];
+                }
+                if (score < minScore) {
+                    continue;
+                }
+                candidates++;
+                Double vote = movies[row].getVoteAverage();
+                float rank = score * (1 + VOTE_BOOST * (vote == null ? 0f : vote.floatValue() / 10f));
+                if (rank > bestRanks[maxResults - 1]) {
+                    int position = maxResults - 1;
+                    while (position > 0 && bestRanks[position - 1] < rank) {
+                        bestRanks[position] = bestRanks[position - 1];
+                        bestRows[position] = bestRows[position - 1];
+                        position--;
+                    }
+                    bestRanks[position] = rank;
+                    bestRows[position] = row;
+                }
+            }
+            if (candidates < minResults) {
+                return List.of();
+            }
+            List<MovieDto> result = new ArrayList<>(Math.min(candidates, maxResults));
+            for (int i = 0; i < maxResults && bestRanks[i] >= 0; i++) {
+                result.add(movies[bestRows[i]]);
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return size;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // log-tf over titel, overview og genrer, cosinus-normaliseret. null hvis filmen ikke har nogen ord.
+    // Ord der hasher til samme plads, lægges sammen i pladsen.
+    private Document document(MovieDto movie) {
+        Map<String, Float> termFrequency = new HashMap<>();
+        termFrequencies(List.of(nullToEmpty(movie.getTitle())), TITLE_WEIGHT, termFrequency);
+        termFrequencies(List.of(nullToEmpty(movie.getOverview())), 1, termFrequency);
+        if (movie.getGenres() != null) {
+            List<String> genreNames = new ArrayList<>(movie.getGenres().size());
+            for (GenreDto genre : movie.getGenres()) {
+                genreNames.add(nullToEmpty(genre.getName()));
+            }
+            termFrequencies(genreNames, GENRE_WEIGHT, termFrequency);
+        }
+        if (termFrequency.isEmpty()) {
+            return null;
+        }
+        float[] vector = new float[dimensions];
+        for (Map.Entry<String, Float> term : termFrequency.entrySet()) {
+            vector[slot(term.getKey())] += (float) (1 + Math.log(term.getValue()));
+        }
+        double norm = 0;
+        for (float value : vector) {
+            norm += value * value;
+        }
+        float inverseNorm = (float) (1 / Math.sqrt(norm));
+        for (int i = 0; i < dimensions; i++) {
+            vector[i] *= inverseNorm;
+        }
+        return new Document(vector, termFrequency.keySet().toArray(new String[0]));
+    }
+
+    // Lægger weight til hvert ord i teksterne. Ord normaliseres som i PromptCache og stemmes groft.
+    private Map<String, Float> termFrequencies(List<String> texts, int weight, Map<String, Float> into) {
+        for (String text : texts) {
+            String normalized = PromptCache.normalize(text);
+            if (normalized.isEmpty()) {
+                continue;
+            }
+            for (String word : normalized.split(" ")) {
+                String term = stem(word);
+                if (term.length() < 3 || STOP_WORDS.contains(term) || isNumber(term)) {
+                    continue;
+                }
+                into.merge(term, (float) weight, Float::sum);
+            }
+        }
+        return into;
+    }
+
+    // Fjerner almindelige danske bøjningsendelser, så "hunde", "hundene" og "hund" bliver samme ord
+    private static String stem(String word) {
+        for (String suffix : new String[]{"erne", "ene", "er", "en", "et", "e", "s"}) {
+            if (word.length() > suffix.length() + 3 && word.endsWith(suffix)) {
+                return word.substring(0, word.length() - suffix.length());
+            }
+        }
+        return word;
+    }
+
+    private int slot(String term) {
+        return (int) Long.remainderUnsigned(SummaryStore.hash(term), dimensions);
+    }
+
+    // Ord der ikke længere findes i nogen film, fjernes helt, så de igen tæller som ukendte
+    private void updateDocumentFrequency(String[] documentTerms, int delta) {
+        for (String term : documentTerms) {
+            documentFrequency.merge(term, delta, (count, change) -> count + change == 0 ? null : count + change);
+        }
+    }
+
+    private void ensureCapacity(int rows) {
+        if (rows <= movies.length) {
+            return;
+        }
+        int capacity = Math.min(maxMovies, Math.max(rows, Math.max(64, movies.length * 2)));
+        vectors = Arrays.copyOf(vectors, capacity * dimensions);
+        movies = Arrays.copyOf(movies, capacity);
+        terms = Arrays.copyOf(terms, capacity);
+    }
+
+    private static boolean isNumber(String term) {
+        for (int i = 0; i < term.length(); i++) {
+            if (!Character.isDigit(term.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String nullToEmpty(String text) {
+        return text == null ? "" : text;
+    }
+}
@@ -1,269 +1,447 @@
 package com.example.moviesearch.Service;
+import com.example.moviesearch.Model.BatchMovieResult;
 import com.example.moviesearch.Model.MovieDtoWithAiRecommendation;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
 import org.springframework.web.util.UriComponentsBuilder;
 import com.example.moviesearch.Model.GenreDto;
 import com.example.moviesearch.Model.MovieDto;
+import com.example.moviesearch.Model.MoviePage;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
-import org.springframework.web.reactive.function.client.WebClient; // Korrekt import for WebClient
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
 
 
 
+import java.time.Duration;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntFunction;
+import java.util.function.Predicate;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 @Service
 public class MovieService {
 
-    private final WebClient webClient;
+    private static final Logger log = LoggerFactory.getLogger(MovieService.class);
+    private static final String SERVICE = "MovieService"; // service-tag i movie.service.calls
+
+    private final TmdbClient tmdbClient;
+    private final TmdbMovieDecoder movieDecoder;
     private final AiService aiService;
+    private final SummaryBatcher summaryBatcher;
+    private final LocalMovieIndex movieIndex;
+    private final TitleIndex titleIndex;
+    private final SummaryStore summaryStore;
+    private final GenreTable genreTable;
+    private final ServiceMetrics metrics;
+
+    // Caches foran de TMDB-kald hvis data kun ændrer sig over timer. Nøglen er TMDB-URL'en (inkl. side).
+    private final ReactiveCache<String, MoviePage> popularCache;
+    private final ReactiveCache<String, MoviePage> nowPlayingCache;
+    private final ReactiveCache<String, MoviePage> byGenreCache;
+    private final ReactiveCache<String, MoviePage> searchCache;
+    private final ReactiveCache<String, List<GenreDto>> genreCache;
+    private final ReactiveCache<String, MovieDto> detailsCache;
 
     @Value("${tmdb.api.key}")
     private String tmdbApiKey;
 
+    // Hvor mange AI-titler der må slås op på TMDB på samme tid, og hvor længe et enkelt opslag må tage.
+    @Value("${movie.ai.lookup.concurrency:5}")
+    private int aiLookupConcurrency;
+
+    @Value("${movie.ai.lookup.timeout-ms:3000}")
+    private long aiLookupTimeoutMs;
+
+    // Hvor mange film /batch henter fra TMDB på samme tid
+    @Value("${movie.batch.concurrency:8}")
+    private int batchConcurrency;
+
+    // Sider: når side N serveres, hentes side N+1 i baggrunden ind i cachen (infinite scroll).
+    // TMDB giver højst side 500, uanset total_pages.
+    @Value("${movie.pagination.prefetch:true}")
+    private boolean prefetchNextPage;
+
+    @Value("${movie.pagination.max-page:500}")
+    private int maxPage;
 
+    // Autocomplete spørger kun TMDB når TitleIndex har færre end min-local-hits titler (eller limit, hvis den er mindre),
+    // og først når forespørgslen er mindst fallback-min-length tegn, så et enkelt bogstav ikke bliver et TMDB-kald.
+    @Value("${movie.autocomplete.min-local-hits:3}")
+    private int autocompleteMinLocalHits;
 
-    private static final String TMDB_IMAGE_BASE_URL = "https://image.tmdb.org/t/p/w500";
+    @Value("${movie.autocomplete.fallback-min-length:3}")
+    private int autocompleteFallbackMinLength;
 
-    // WebClient konfigureret TMDB base url.
-    // Efterfølgende kan man specificere med eks. "movie/popular
-    public MovieService(AiService aiService) {
-        this.webClient = WebClient.builder()
-                .baseUrl("https://api.themoviedb.org/3")
-                .build();
+    // Slås fra i tests, så konteksten kan starte uden at kalde TMDB
+    @Value("${movie.genre-table.refresh-enabled:true}")
+    private boolean genreTableRefreshEnabled;
+
+
+    public MovieService(TmdbClient tmdbClient, TmdbMovieDecoder movieDecoder, AiService aiService,
+                        SummaryBatcher summaryBatcher, LocalMovieIndex movieIndex, TitleIndex titleIndex,
+                        SummaryStore summaryStore, GenreTable genreTable, ReactiveCacheFactory cacheFactory, ServiceMetrics metrics) {
+        this.tmdbClient = tmdbClient;
+        this.movieDecoder = movieDecoder;
         this.aiService = aiService;
+        this.summaryBatcher = summaryBatcher;
+        this.movieIndex = movieIndex;
+        this.titleIndex = titleIndex;
+        this.summaryStore = summaryStore;
+        this.genreTable = genreTable;
+        this.metrics = metrics;
+
+        // Standardværdier, kan overskrives med movie.cache.<navn>.ttl/stale/max-size
+        this.popularCache = cacheFactory.create("popular", Duration.ofMinutes(10), 50, this::loadMovieList);
+        this.nowPlayingCache = cacheFactory.create("now-playing", Duration.ofMinutes(10), 50, this::loadMovieList);
+        this.byGenreCache = cacheFactory.create("by-genre", Duration.ofMinutes(30), 500, this::loadMovieList);
+        this.searchCache = cacheFactory.create("search", Duration.ofMinutes(5), 2_000, this::loadMovieList);
+        this.genreCache = cacheFactory.create("genres", Duration.ofHours(12), 5, this::loadGenres);
+        this.detailsCache = cacheFactory.create("details", Duration.ofHours(1), 5_000, this::loadMovieDetails);
     }
 
     // Metode som henter detaljer på film med filmens id
-    public MovieDto fetchMovieDetails(Integer movieId) {
+    public Mono<MovieDto> fetchMovieDetails(Integer movieId) {
         // Bygger URL til TMDB endpoint med api nøgle og på dansk.
         String url = "/movie/" + movieId + "?api_key=" + tmdbApiKey + "&language=da-DK";
 
-        // Her sender vi et get kald og konverterer en TMDB film objekt.
-        Mono<TmdbMovieApiResponse.TmdbMovie> responseMono = webClient.get()
-                .uri(url)
-                .retrieve()
-                .bodyToMono(TmdbMovieApiResponse.TmdbMovie.class); // <-- Direkte til TmdbMovie
-
-        // Igen vi blokerer og venter på svaret.
-        TmdbMovieApiResponse.TmdbMovie tmdbMovie = responseMono.block();
-
-        // Hvis vi modtager svar, mapper vi til MovieDTO
-        if (tmdbMovie != null) {
-            // Metoden mapToMovieDto, hjælper med at konverterer til en film fra TMDB til MovieDto.
-            return mapToMovieDto(tmdbMovie);
-        }
-        return null; // Returner null, hvis filmen ikke kan findes
+        // Tom Mono, hvis filmen ikke kan findes.
+        return metrics.timed(SERVICE, "fetchMovieDetails", detailsCache.get(url));
     }
 
-    public List<MovieDto> fetchPopularMovies() {
+    public Mono<List<MovieDto>> fetchPopularMovies() {
+        return fetchPopularPage(1).map(MoviePage::getResults);
+    }
 
+    public Mono<MoviePage> fetchPopularPage(int page) {
         // Endpoint for populære film
-        String url = "/movie/popular?api_key=" + tmdbApiKey + "&language?=da-DK";
-
-        // TMDB's svar har en "results" liste, så vi skal lave en wrapper DTO
-        // Fordi at vi får flere film i en liste
-        Mono<TmdbMovieApiResponse> responseMono = webClient.get()
-                .uri(url)
-                .retrieve() // Anmod og hent svar
-                .bodyToMono(TmdbMovieApiResponse.class); // Konverter svar til dto
-
-        // Endnu en block()
-        TmdbMovieApiResponse response = responseMono.block();
-
-        if(response != null && response.getResults() !=null) {
-            // Map TMDB egen dto til moviedto som sendes til frontend
-            return response.getResults().stream()
-                    .map(this::mapToMovieDto) // Kalder helper-metode til at mappe TMDB movie til vores MovieDto
-                    .collect(Collectors.toList()); // TMDB film bliver transformeret til et MovieDto objekt.
-        }
-        return List.of(); // Returner tom liste ved fejl
+        return metrics.timed(SERVICE, "fetchPopularPage", pageWithPrefetch(popularCache, this::popularUrl, page));
+    }
+
+    private String popularUrl(int page) {
+        return "/movie/popular?api_key=" + tmdbApiKey + "&language=da-DK" + pageParam(page);
     }
 
     // Metode til at søge efter specifik film
     // Applikationen bruger denne når den søger efter film med ai-prompt
-    public MovieDto searchMovies(String query) {
-        String url = "/search/movie?api_key=" + tmdbApiKey + "&language=da-DK&query=" + query;
-
-        Mono<TmdbMovieApiResponse> responseMono = webClient.get()
-                .uri(url)
-                .retrieve()
-                .bodyToMono(TmdbMovieApiResponse.class);
-
-        TmdbMovieApiResponse response = responseMono.block();
+    public Mono<MovieDto> searchMovies(String query) {
+        return metrics.timed(SERVICE, "searchMovies", searchCache.get(searchUrl(query, 1))
+                .filter(page -> !page.getResults().isEmpty())
+                .map(page -> page.getResults().get(0))); // Tag første (bedste) match
+    }
 
-        if (response != null && response.getResults() != null && !response.getResults().isEmpty()) {
-            return mapToMovieDto(response.getResults().get(0)); // Tag første (bedste) match
+    // Finder film med ai prompts, bruger searchMovies
+    // Kan det lokale indeks svare sikkert (se LocalMovieIndex), spørges hverken OpenAI eller TMDB.
+    public Mono<List<MovieDto>> findMoviesByAiPrompt(String userPrompt) {
+        List<MovieDto> local = movieIndex.answer(userPrompt);
+        if (!local.isEmpty()) {
+            return metrics.timed(SERVICE, "findMoviesByAiPrompt", Mono.just(local));
         }
-        return null; // Returner null, hvis ingen film findes
+        // Alle titler slås op på TMDB samtidig (højst aiLookupConcurrency ad gangen).
+        // flatMapSequential bevarer AI'ens rækkefølge, og et opslag der fejler eller er for langsomt
+        // springes over, så vi returnerer de film vi nåede at finde.
+        return metrics.timed(SERVICE, "findMoviesByAiPrompt", aiService.generateMovieTitlesFromPrompt(userPrompt)
+                .flatMap(titles -> Flux.fromIterable(titles)
+                        .flatMapSequential(title -> searchMovies(title)
+                                .timeout(Duration.ofMillis(aiLookupTimeoutMs))
+                                .onErrorResume(e -> Mono.empty()), aiLookupConcurrency)
+                        .collectList()
+                        .doOnNext(movies -> metrics.recordAiTitleResolution(titles.size(), movies.size()))));
     }
 
-    // Finder film med ai prompts, bruger SearchMovies
-    public List<MovieDto> findMoviesByAiPrompt(String userPrompt) {
-        List<String> aiMovieTitles = aiService.generateMovieTitlesFromPrompt(userPrompt);
+    // Streaming-udgave af findMoviesByAiPrompt: hver titel slås op på TMDB så snart AI'en har skrevet den,
+    // og filmen sendes videre med det samme. Rækkefølgen er stadig AI'ens.
+    public Flux<MovieDto> streamMoviesByAiPrompt(String userPrompt) {
+        List<MovieDto> local = movieIndex.answer(userPrompt);
+        if (!local.isEmpty()) {
+            return metrics.timed(SERVICE, "streamMoviesByAiPrompt", Flux.fromIterable(local));
+        }
+        AtomicInteger suggested = new AtomicInteger();
+        AtomicInteger resolved = new AtomicInteger();
+        return metrics.timed(SERVICE, "streamMoviesByAiPrompt", aiService.streamMovieTitlesFromPrompt(userPrompt)
+                .doOnNext(title -> suggested.incrementAndGet())
+                .flatMapSequential(title -> searchMovies(title)
+                        .timeout(Duration.ofMillis(aiLookupTimeoutMs))
+                        .onErrorResume(e -> Mono.empty()), aiLookupConcurrency)
+                .doOnNext(movie -> resolved.incrementAndGet())
+                .doOnComplete(() -> metrics.recordAiTitleResolution(suggested.get(), resolved.get())));
+    }
 
-        return aiMovieTitles.stream()
-                .map(this::searchMovies) // Brug den nye searchMovies metode for hver titel
-                .filter(movieDto -> movieDto != null) // Filtrer film, der ikke kunne findes på TMDB
-                .collect(Collectors.toList());
+    // Søger og finder flere film, 20 pr. side som TMDB returnerer dem
+    public Mono<List<MovieDto>> searchMoviesMulti(String query) {
+        return searchMoviesPage(query, 1).map(MoviePage::getResults); // Alle fundne TMDB movies
     }
 
-    // Søger og finder flere film, maks 20 TMDB er i stand til at returnere
-    public List<MovieDto> searchMoviesMulti(String query) {
-        String url = "/search/movie?api_key=" + tmdbApiKey + "&language=da-DK&query=" + query;
+    public Mono<MoviePage> searchMoviesPage(String query, int page) {
+        return metrics.timed(SERVICE, "searchMoviesPage",
+                pageWithPrefetch(searchCache, p -> searchUrl(query, p), page));
+    }
 
-        Mono<TmdbMovieApiResponse> responseMono = webClient.get()
-                .uri(url)
-                .retrieve()
-                .bodyToMono(TmdbMovieApiResponse.class);
+    // Typeahead: titler der starter med det brugeren har skrevet, de mest populære først (se TitleIndex).
+    // Svares lokalt når indekset har nok hits. Ellers bruges side 1 af TMDB's søgning (cachet i searchCache),
+    // og de lokale hits kommer først. Filmene fra TMDB kommer selv i indekset, så næste tast kan svares lokalt.
+    // Fejler TMDB, returneres de lokale hits.
+    public Mono<List<MovieDto>> autocomplete(String query, int limit) {
+        List<MovieDto> local = titleIndex.search(query, limit);
+        if (local.size() >= Math.min(limit, autocompleteMinLocalHits)
+                || query.strip().length() < autocompleteFallbackMinLength) {
+            metrics.recordAutocomplete("local");
+            return metrics.timed(SERVICE, "autocomplete", Mono.just(local));
+        }
+        metrics.recordAutocomplete("tmdb");
+        return metrics.timed(SERVICE, "autocomplete", searchMoviesPage(query, 1)
+                .map(page -> Stream.concat(local.stream(), page.getResults().stream())
+                        .filter(distinctById())
+                        .limit(limit)
+                        .toList())
+                .defaultIfEmpty(local)
+                .onErrorResume(e -> {
+                    log.debug("Autocomplete faldt tilbage til lokale hits for '{}': {}", query, e.getMessage());
+                    return Mono.just(local);
+                }));
+    }
 
-        TmdbMovieApiResponse response = responseMono.block();
+    private static Predicate<MovieDto> distinctById() {
+        Set<Integer> seen = new HashSet<>();
+        return movie -> seen.add(movie.getId());
+    }
 
-        if (response != null && response.getResults() != null) {
-            return response.getResults().stream()
-                    .map(this::mapToMovieDto) // Mapper alle fundne TMDB movies
-                    .collect(Collectors.toList());
-        }
-        return List.of(); // Returner tom liste, hvis intet findes
+    private String searchUrl(String query, int page) {
+        return "/search/movie?api_key=" + tmdbApiKey + "&language=da-DK&query=" + query + pageParam(page);
     }
 
     // Henter genre
-    public List<GenreDto> fetchGenres() {
-        String url = "/genre/movie/list?api_key=" + tmdbApiKey + "&language=da-DK";
+    public Mono<List<GenreDto>> fetchGenres() {
+        return metrics.timed(SERVICE, "fetchGenres", genreCache.get(genresUrl())
+                .defaultIfEmpty(List.of()));
+    }
 
-        Mono<TmdbGenreApiResponse> responseMono = webClient.get()
-                .uri(url)
-                .retrieve()
-                .bodyToMono(TmdbGenreApiResponse.class);
+    private String genresUrl() {
+        return "/genre/movie/list?api_key=" + tmdbApiKey + "&language=da-DK";
+    }
 
-        TmdbGenreApiResponse response = responseMono.block();
+    // Henter forsidens lister på ny fra TMDB inden de udløber (bruges af CacheWarmer):
+    // genrer, side 1 af popular og now-playing, og side 1 af discover for hver genre.
+    // Højst concurrency kald ad gangen. En liste der fejler logges og springes over, den gamle værdi bliver i cachen.
+    // Returnerer antal filmlister der blev opdateret.
+    public Mono<Long> refreshCachedLists(int concurrency) {
+        return metrics.timed(SERVICE, "refreshCachedLists", genreCache.refresh(genresUrl())
+                .onErrorResume(e -> {
+                    log.warn("Fejl ved opdatering af genrer: {}", e.getMessage());
+                    return fetchGenres();
+                })
+                .defaultIfEmpty(List.of())
+                .flatMapMany(genres -> Flux.concat(
+                        Flux.just(popularCache.refresh(popularUrl(1)), nowPlayingCache.refresh(nowPlayingUrl(1))),
+                        Flux.fromIterable(genres)
+                                .map(genre -> byGenreCache.refresh(byGenreUrl(genre.getId(), 1)))))
+                .flatMap(refresh -> refresh
+                        .onErrorResume(e -> {
+                            log.warn("Fejl ved opdatering af cachet liste: {}", e.getMessage());
+                            return Mono.empty();
+                        }), concurrency)
+                .count());
+    }
 
-        if (response != null && response.getGenres() != null) {
-            return response.getGenres(); // TMDB's Genre objekt matcher typisk vores DTO ret godt
+    // Holder GenreTable opdateret i baggrunden. Kører ved opstart og derefter med fast interval.
+    // Går igennem genreCache, så en frisk cache ikke koster et TMDB-kald.
+    @Scheduled(initialDelay = 0, fixedDelayString = "${movie.genre-table.refresh-interval:PT1H}")
+    public void refreshGenreTable() {
+        if (!genreTableRefreshEnabled) {
+            return;
         }
-        return List.of();
+        fetchGenres().subscribe(
+                genres -> { },
+                e -> log.warn("Fejl ved opdatering af genre-tabel: {}", e.getMessage()));
     }
 
     // Henter film ved genre, bruges i dropdown.
-    public List<MovieDto> fetchMoviesByGenre(Integer genreId) {
+    public Mono<List<MovieDto>> fetchMoviesByGenre(Integer genreId) {
+        return fetchMoviesByGenrePage(genreId, 1).map(MoviePage::getResults);
+    }
+
+    public Mono<MoviePage> fetchMoviesByGenrePage(Integer genreId, int page) {
+        return metrics.timed(SERVICE, "fetchMoviesByGenrePage",
+                pageWithPrefetch(byGenreCache, p -> byGenreUrl(genreId, p), page));
+    }
+
+    private String byGenreUrl(Integer genreId, int page) {
         // TMDB Discover endpoint for at filtrere efter genre
         // URL til Discover, som også kan tage api_key, language, og with_genres
-        String url = UriComponentsBuilder.fromPath("/discover/movie")
+        UriComponentsBuilder url = UriComponentsBuilder.fromPath("/discover/movie")
                 .queryParam("api_key", tmdbApiKey)
                 .queryParam("language", "da-DK")
-                .queryParam("with_genres", genreId) // Her specificerer vi genre id
-                .build()
-                .toUriString();
+                .queryParam("with_genres", genreId); // Her specificerer vi genre id
+        if (page > 1) {
+            url.queryParam("page", page);
+        }
+        return url.build().toUriString();
+    }
 
-        Mono<TmdbMovieApiResponse> responseMono = webClient.get()
-                .uri(url)
-                .retrieve()
-                .bodyToMono(TmdbMovieApiResponse.class);
+    // Hent film detaljer og ai anbefaling
+    public Mono<MovieDtoWithAiRecommendation> fetchMovieDetailsWithAiRecommendation(Integer movieId) {
+        // Genbruger eksisterende metode til at hente filmen, og kæder AI-kaldet på uden at blokere
+        return metrics.timed(SERVICE, "fetchMovieDetailsWithAiRecommendation", fetchMovieDetails(movieId)
+                .flatMap(movie -> fetchAiSummary(movie)
+                        .map(aiRecommendation -> new MovieDtoWithAiRecommendation(movie, aiRecommendation))));
+    }
 
-        TmdbMovieApiResponse response = responseMono.block();
+    // Henter mange film på én gang, bruges af watchlist og "senest set".
+    // Dubletter hentes kun én gang, cachede film serveres direkte, og resten hentes parallelt.
+    // Svaret har ét resultat pr. id i samme rækkefølge som ids, med status not_found/error hvor det gik galt.
+    public Mono<List<BatchMovieResult>> fetchMovieDetailsBatch(List<Integer> ids, boolean includeAi) {
+        List<Integer> distinctIds = ids.stream()
+                .filter(Objects::nonNull)
+                .distinct()
+                .collect(Collectors.toList());
 
-        if (response != null && response.getResults() != null) {
-            return response.getResults().stream()
-                    .map(this::mapToMovieDto)
-                    .collect(Collectors.toList());
-        }
-        return List.of();
+        return metrics.timed(SERVICE, "fetchMovieDetailsBatch", Flux.fromIterable(distinctIds)
+                .flatMap(id -> fetchBatchEntry(id, includeAi), batchConcurrency)
+                .collectMap(BatchMovieResult::getId)
+                .map(resultsById -> ids.stream()
+                        .map(id -> resultsById.getOrDefault(id, new BatchMovieResult(id, BatchMovieResult.NOT_FOUND, null, null)))
+                        .collect(Collectors.toList())));
     }
 
-    // Hent film detaljer og ai anbefaling
-    public MovieDtoWithAiRecommendation fetchMovieDetailsWithAiRecommendation(Integer movieId) {
-        MovieDto movie = fetchMovieDetails(movieId); // Genbruger eksisterende metode til at hente filmen
+    private Mono<BatchMovieResult> fetchBatchEntry(Integer id, boolean includeAi) {
+        Mono<BatchMovieResult> entry = includeAi
+                ? fetchMovieDetailsWithAiRecommendation(id)
+                        .map(details -> new BatchMovieResult(id, BatchMovieResult.OK, details.getMovie(), details.getAiRecommendation()))
+                : fetchMovieDetails(id)
+                        .map(movie -> new BatchMovieResult(id, BatchMovieResult.OK, movie, null));
+
+        return entry
+                .defaultIfEmpty(new BatchMovieResult(id, BatchMovieResult.NOT_FOUND, null, null))
+                .onErrorResume(WebClientResponseException.NotFound.class,
+                        e -> Mono.just(new BatchMovieResult(id, BatchMovieResult.NOT_FOUND, null, null)))
+                .onErrorResume(e -> Mono.just(new BatchMovieResult(id, BatchMovieResult.ERROR, null, null)));
+    }
+
+    // Sørger for at filmens AI-opsummering ligger i SummaryStore (bruges af CacheWarmer med filmen fra fetchMovieDetails),
+    // så /details-with-ai svarer uden OpenAI-kald. Returnerer true hvis OpenAI blev spurgt.
+    public Mono<Boolean> precomputeAiSummary(MovieDto movie) {
+        if (summaryStore.get(movie.getId(), movie.getOverview()) != null) {
+            return Mono.just(false);
+        }
+        return metrics.timed(SERVICE, "precomputeAiSummary", fetchAiSummary(movie).thenReturn(true));
+    }
 
-        if (movie != null) {
-            String aiRecommendation = aiService.generateMovieSummary(movie.getTitle(), movie.getOverview());
-            return new MovieDtoWithAiRecommendation(movie, aiRecommendation); // Returner en ny DTO
+    // Slår først op i SummaryStore. Kun hvis der ikke er en opsummering for filmens nuværende overview,
+    // spørger vi OpenAI (samlet med andre films opsummeringer af SummaryBatcher), og gemmer svaret til næste gang.
+    private Mono<String> fetchAiSummary(MovieDto movie) {
+        String stored = summaryStore.get(movie.getId(), movie.getOverview());
+        if (stored != null) {
+            return Mono.just(stored);
         }
-        return null;
+        return summaryBatcher.summarize(movie.getId(), movie.getTitle(), movie.getOverview())
+                .doOnNext(summary -> {
+                    if (!AiService.SUMMARY_FALLBACK.equals(summary)) {
+                        summaryStore.put(movie.getId(), movie.getOverview(), summary);
+                    }
+                });
     }
 
     // Hent aktuelle film
-    public List<MovieDto> fetchNowPlayingMovies() {
-        String url = "/movie/now_playing?api_key=" + tmdbApiKey + "&language=da-DK";
+    public Mono<List<MovieDto>> fetchNowPlayingMovies() {
+        return fetchNowPlayingPage(1).map(MoviePage::getResults);
+    }
 
-        Mono<TmdbMovieApiResponse> responseMono = webClient.get()
-                .uri(url)
-                .retrieve()
-                .bodyToMono(TmdbMovieApiResponse.class);
+    public Mono<MoviePage> fetchNowPlayingPage(int page) {
+        return metrics.timed(SERVICE, "fetchNowPlayingPage", pageWithPrefetch(nowPlayingCache, this::nowPlayingUrl, page));
+    }
 
-        TmdbMovieApiResponse response = responseMono.block();
+    private String nowPlayingUrl(int page) {
+        return "/movie/now_playing?api_key=" + tmdbApiKey + "&language=da-DK" + pageParam(page);
+    }
 
-        if (response != null && response.getResults() != null) {
-            return response.getResults().stream()
-                    .map(this::mapToMovieDto)
-                    .collect(Collectors.toList());
-        }
-        return List.of();
-    }
-
-    // Helper-metode til at mappe TMDB's movie format til MovieDto
-    private MovieDto mapToMovieDto(TmdbMovieApiResponse.TmdbMovie tmdbMovie) {
-        List<GenreDto> mappedGenres;
-
-        if (tmdbMovie.getGenres() != null && !tmdbMovie.getGenres().isEmpty()) {
-            // Hvis TMDB svar allerede indeholder fulde genre objekter eks. fra /movie/{id} kaldet
-            mappedGenres = tmdbMovie.getGenres(); // Brug dem direkte
-        } else if (tmdbMovie.getGenre_ids() != null && !tmdbMovie.getGenre_ids().isEmpty()) {
-            // Hvis TMDB kun returnerer genre-IDer eks. fra /popular eller /search lister
-            mappedGenres = tmdbMovie.getGenre_ids().stream()
-                    .map(id -> new GenreDto(id, "N/A")) // Opret GenreDto med ID og "N/A" som navn
-                    .collect(Collectors.toList());
-        } else {
-            // Ingen genre-info tilgængelig
-            mappedGenres = List.of();
-        }
+    // Flere sider i træk som én strøm af film (NDJSON på /api/movies/pages), fra side from og højst count sider.
+    // Siderne hentes én ad gangen i rækkefølge, og hver side henter den næste på forhånd (se pageWithPrefetch),
+    // så den næste som regel allerede ligger i cachen. Stopper ved TMDB's sidste side.
+    public Flux<MovieDto> streamPages(IntFunction<Mono<MoviePage>> pages, int from, int count) {
+        int last = Math.min(maxPage, from + count - 1);
+        return metrics.timed(SERVICE, "streamPages", Flux.range(from, Math.max(0, last - from + 1))
+                .concatMap(pages::apply)
+                .takeUntil(page -> page.getPage() >= Math.min(page.getTotalPages(), last))
+                .concatMapIterable(MoviePage::getResults));
+    }
 
-        return new MovieDto(
-                tmdbMovie.getId(),
-                tmdbMovie.getTitle(),
-                tmdbMovie.getRelease_date(),
-                tmdbMovie.getVote_average(),
-                tmdbMovie.getPoster_path(),
-                tmdbMovie.getOverview(),
-                mappedGenres // Brug den nye mappede genreliste
-        );
+    public int getMaxPage() {
+        return maxPage;
     }
 
-    // --- INTERNE DTO'ER til at håndtere TMDB's API-svar ---
-    @Data
-    @NoArgsConstructor
-    @AllArgsConstructor
-    public static class TmdbMovieApiResponse {
-        private Integer page;
-        private List<TmdbMovie> results;
-        private Integer total_pages;
-        private Integer total_results;
-
-        @Data
-        @NoArgsConstructor
-        @AllArgsConstructor
-        public static class TmdbMovie {
-            private Integer id;
-            private String title;
-            private String overview;
-            private String release_date;
-            private String poster_path;
-            private Double vote_average;
-            // Original: private List<Integer> genre_ids;
-
-            // Tilføj dette felt for at fange genrer som objekter for enkeltfilm:
-            private List<GenreDto> genres; // <--- NYT FELT TIL FULDE GENRE-OBJEKTER!
-
-            // Beholder genre_ids også for at håndtere lister, hvor det kun er IDs
-            private List<Integer> genre_ids;
-            // Tilføj andre felter, hvis nødvendigt for andre kald
-        }
+    // Side 1 hentes uden page-parameter, som før, så cache- og arkivnøgler for forsiden er uændrede
+    private static String pageParam(int page) {
+        return page > 1 ? "&page=" + page : "";
+    }
+
+    // Henter side page fra cachen, og starter hentningen af næste side i baggrunden når den er serveret
+    private Mono<MoviePage> pageWithPrefetch(ReactiveCache<String, MoviePage> cache, IntFunction<String> urlForPage,
+                                             int page) {
+        return cache.get(urlForPage.apply(page))
+                .doOnNext(result -> {
+                    int next = page + 1;
+                    if (prefetchNextPage && next <= Math.min(result.getTotalPages(), maxPage)) {
+                        cache.prefetch(urlForPage.apply(next));
+                    }
+                });
+    }
+
+    // Loaders som cachen bruger ved miss eller når en værdi skal opdateres.
+    // TMDB's svar har en "results" liste, så vi skal lave en wrapper DTO
+    // Fordi at vi får flere film i en liste
+    // Er genre-tabellen ikke klar endnu (lige efter opstart), hentes genrerne først,
+    // så listen ikke bliver cachet med "N/A" som genrenavne.
+    private Mono<MoviePage> loadMovieList(String url) {
+        Mono<Void> genresReady = genreTable.isEmpty()
+                ? fetchGenres().then().onErrorResume(e -> Mono.empty())
+                : Mono.empty();
+        return genresReady.then(getPage(url));
+    }
+
+    // Her sender vi et get kald og konverterer en TMDB film objekt direkte til MovieDto.
+    private Mono<MovieDto> loadMovieDetails(String url) {
+        return tmdbClient.get(url, MovieDto.class, movieDecoder::decodeMovie)
+                .doOnNext(movie -> {
+                    movieIndex.add(movie);
+                    titleIndex.add(movie);
+                });
+    }
+
+    private Mono<List<GenreDto>> loadGenres(String url) {
+        return get(url, TmdbGenreApiResponse.class)
+                .filter(response -> response.getGenres() != null)
+                .map(TmdbGenreApiResponse::getGenres) // TMDB's Genre objekt matcher typisk vores DTO ret godt
+                .doOnNext(genreTable::update); // Hver gang genrerne hentes, bygges opslagstabellen på ny
+    }
+
+    // Fælles GET mod TMDB. Alle metoder ovenfor går igennem her.
+    private <T> Mono<T> get(String url, Class<T> responseType) {
+        return tmdbClient.get(url, responseType);
+    }
+
+    // Lister fra TMDB dekodes direkte til MovieDto med TmdbMovieDecoder (genrenavne slås op i GenreTable).
+    // Alle film vi ser, kommer i LocalMovieIndex og TitleIndex.
+    private Mono<MoviePage> getPage(String url) {
+        return tmdbClient.get(url, MoviePage.class, movieDecoder::decodePage)
+                .doOnNext(page -> {
+                    movieIndex.addAll(page.getResults());
+                    titleIndex.addAll(page.getResults());
+                });
     }
 
+    // --- INTERNE DTO'ER til at håndtere TMDB's API-svar ---
     @Data
     @NoArgsConstructor
     @AllArgsConstructor
@@ -0,0 +1,168 @@
+package com.example.moviesearch.Service;
+
+import com.example.moviesearch.Model.ChatCompletionRequest;
+import com.example.moviesearch.Model.ChatCompletionResponse;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.core.codec.DecodingException;
+import org.springframework.core.env.Environment;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.BodyInserters;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+// Al kommunikation med OpenAI's Chat Completion API går igennem her.
+// Identiske requests der er i gang samtidig (fx mange der åbner samme details-with-ai side)
+// bliver samlet til ét kald. Nøglen er en SHA-256 af requesten som JSON.
+@Component
+public class OpenAiClient {
+
+    private final WebClient webClient;
+    private final ObjectMapper objectMapper;
+    private final UpstreamArchive archive;
+    private final SingleFlight<String, ChatCompletionResponse> singleFlight = new SingleFlight<>();
+    private final UpstreamLimiter limiter;
+    private final UpstreamCallPolicy chatPolicy; // openai.timeout.chat, openai.breaker.*
+    private final Counter promptTokens;
+    private final Counter completionTokens;
+
+    // Application Properties
+    @Value("${openai.api.key}")
+    private String openaiApiKey;
+
+    @Value("${openai.url}")
+    private String openaiUrl;
+
+    // WebClient med OpenAI's connection pool kommer fra UpstreamClientConfig
+    // UpstreamLimiter holder os inden for OpenAI's request- og token-kvote (openai.limit.*)
+    // UpstreamArchive kan optage eller afspille svarene (movie.upstream-archive.*)
+    public OpenAiClient(@Qualifier("openAiWebClient") WebClient webClient, ObjectMapper objectMapper,
+                        UpstreamArchive archive, Environment environment, MeterRegistry meterRegistry) {
+        this.webClient = webClient;
+        this.archive = archive;
+        this.limiter = new UpstreamLimiter("openai", environment, meterRegistry);
+        this.chatPolicy = new UpstreamCallPolicy("openai", "chat", environment, meterRegistry);
+        this.objectMapper = objectMapper;
+
+        FunctionCounter.builder("movie.upstream.coalesced", singleFlight, SingleFlight::getJoinedCount)
+                .description("Kald der delte svar med et identisk kald der allerede var i gang")
+                .tag("upstream", "openai")
+                .register(meterRegistry);
+        Gauge.builder("movie.upstream.inflight", singleFlight, SingleFlight::getInFlightCount)
+                .tag("upstream", "openai")
+                .register(meterRegistry);
+        // Faktisk tokenforbrug fra Usage, så prisen pr. endpoint kan følges (streams har ingen Usage)
+        this.promptTokens = Counter.builder("movie.openai.tokens")
+                .tag("type", "prompt")
+                .register(meterRegistry);
+        this.completionTokens = Counter.builder("movie.openai.tokens")
+                .tag("type", "completion")
+                .register(meterRegistry);
+    }
+
+    // Rækkefølge: samles med identiske kald -> arkiv (replay) -> breaker -> rate limit/token-budget -> timeout -> OpenAI
+    public Mono<ChatCompletionResponse> complete(ChatCompletionRequest requestDto) {
+        long estimatedTokens = estimateTokens(requestDto);
+        String key = requestKey(requestDto);
+        return singleFlight.execute(key,
+                () -> archive.replay("openai", key)
+                        .map(this::decode)
+                        .switchIfEmpty(Mono.defer(() -> chatPolicy.apply(limiter, estimatedTokens,
+                                () -> post(requestDto, key, estimatedTokens)))));
+    }
+
+    private Mono<ChatCompletionResponse> post(ChatCompletionRequest requestDto, String key, long estimatedTokens) {
+        return archive.record("openai", key, webClient.post()
+                        .uri(openaiUrl)
+                        .header("Authorization", "Bearer " + openaiApiKey)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .body(BodyInserters.fromValue(requestDto)) // Sender DTO som JSON
+                        .retrieve()
+                        .bodyToMono(byte[].class))
+                .map(this::decode)
+                .doOnNext(response -> {
+                    // Token-budgettet rettes til med det faktiske forbrug fra Usage
+                    if (response.getUsage() != null) {
+                        limiter.adjustTokens(estimatedTokens, response.getUsage().getTotal_tokens());
+                        promptTokens.increment(response.getUsage().getPrompt_tokens());
+                        completionTokens.increment(response.getUsage().getCompletion_tokens());
+                    }
+                });
+    }
+
+    // Kalder OpenAI med stream=true og returnerer indholdet efterhånden som det kommer.
+    // Svaret er Server-Sent Events, hvor hver event er et ChatCompletionResponse med en delta,
+    // og den sidste event er "[DONE]". Streams samles ikke med SingleFlight.
+    public Flux<String> stream(ChatCompletionRequest requestDto) {
+        requestDto.setStream(true);
+        // Arkivet gemmer event-data uden [DONE], så en afspillet stream slutter af sig selv
+        String key = "stream " + requestKey(requestDto);
+        return archive.replayMany("openai", key)
+                .switchIfEmpty(Flux.defer(() -> archive.recordMany("openai", key,
+                        chatPolicy.applyMany(() -> limiter.executeMany(estimateTokens(requestDto), () -> webClient.post()
+                                        .uri(openaiUrl)
+                                        .header("Authorization", "Bearer " + openaiApiKey)
+                                        .contentType(MediaType.APPLICATION_JSON)
+                                        .accept(MediaType.TEXT_EVENT_STREAM)
+                                        .body(BodyInserters.fromValue(requestDto))
+                                        .retrieve()
+                                        .bodyToFlux(new ParameterizedTypeReference<ServerSentEvent<String>>() { })))
+                                .mapNotNull(ServerSentEvent::data)
+                                .takeWhile(data -> !"[DONE]".equals(data.trim())))))
+                .mapNotNull(this::deltaContent);
+    }
+
+    private ChatCompletionResponse decode(byte[] body) {
+        try {
+            return objectMapper.readValue(body, ChatCompletionResponse.class);
+        } catch (IOException e) {
+            throw new DecodingException("Ugyldigt svar fra OpenAI: " + e.getMessage(), e);
+        }
+    }
+
+    private String deltaContent(String json) {
+        try {
+            ChatCompletionResponse chunk = objectMapper.readValue(json, ChatCompletionResponse.class);
+            if (chunk.getChoices() == null || chunk.getChoices().isEmpty()
+                    || chunk.getChoices().get(0).getDelta() == null) {
+                return null;
+            }
+            return chunk.getChoices().get(0).getDelta().getContent();
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Ugyldig stream-chunk fra OpenAI", e);
+        }
+    }
+
+    // Groft skøn før kaldet: ca. 4 tegn pr. token i beskederne plus max_tokens til svaret.
+    private long estimateTokens(ChatCompletionRequest requestDto) {
+        long characters = 0;
+        for (ChatCompletionRequest.Message message : requestDto.getMessages()) {
+            characters += message.getContent() != null ? message.getContent().length() : 0;
+        }
+        return characters / 4 + requestDto.getMax_tokens();
+    }
+
+    private String requestKey(ChatCompletionRequest requestDto) {
+        try {
+            byte[] json = objectMapper.writeValueAsBytes(requestDto);
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(json));
+        } catch (JsonProcessingException | NoSuchAlgorithmException e) {
+            throw new IllegalStateException("Kunne ikke lave nøgle til OpenAI request", e);
+        }
+    }
+}
@@ -0,0 +1,312 @@
+package com.example.moviesearch.Service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+// Plakater fra TMDB's billed-CDN, gemt på disk så /api/posters kan sende filen direkte (se PosterController).
+// En plakat hentes kun én gang: samtidige kald for samme plakat deler én download (SingleFlight),
+// som skrives direkte til en midlertidig fil (ingen byte[] på heapen) og flyttes på plads når den er hentet.
+// Cachen er LRU efter antal bytes: når den fylder mere end max-size, slettes de mindst brugte filer.
+// En fil der er smidt ud af indekset, slettes først efter delete-delay, så en request der lige har fået den
+// (og som Tomcat er ved at sende med sendfile) ikke mister filen under sig. Er plakaten hentet igen i mellemtiden, bliver filen.
+// Er en fil slettet uden om appen, opdages det ved næste opslag: den fjernes fra indekset og hentes igen (se lookup).
+// Filerne ligger i <dir>/<størrelse>/<fil> og læses ind igen ved opstart, ældste først.
+// TMDB's filnavne er unikke pr. billede, så ETag er blot størrelse og filnavn, og en plakat ændrer sig aldrig.
+// Hit/miss kan ses under /actuator/metrics/movie.posters.requests, fyld under movie.posters.disk.bytes.
+@Component
+public class PosterCache {
+
+    private static final Logger log = LoggerFactory.getLogger(PosterCache.class);
+    // Kun TMDB's egne filnavne, så stien ikke kan pege uden for cache-mappen
+    private static final Pattern FILE_NAME = Pattern.compile("[A-Za-z0-9_-]{1,100}\\.(jpg|jpeg|png|webp)");
+
+    private final WebClient webClient;
+    private final Path directory;
+    private final long maxBytes;
+    private final Set<String> sizes;
+    private final Duration timeout;
+    private final Duration deleteDelay;
+    private final SingleFlight<String, Poster> downloads = new SingleFlight<>();
+
+    // accessOrder = true giver LRU: den mindst brugte ligger forrest og slettes først (som i SummaryStore)
+    private final ReentrantLock lock = new ReentrantLock();
+    private final LinkedHashMap<String, Poster> index = new LinkedHashMap<>(256, 0.75f, true);
+    private long totalBytes;
+
+    private final Counter hits;
+    private final Counter misses;
+
+    public PosterCache(@Qualifier("tmdbImagesWebClient") WebClient webClient,
+                       MeterRegistry meterRegistry,
+                       @Value("${movie.posters.dir:data/posters}") String directory,
+                       @Value("${movie.posters.max-size:1GB}") DataSize maxSize,
+                       @Value("${movie.posters.sizes:w185,w342,w500,original}") List<String> sizes,
+                       @Value("${movie.posters.timeout:10s}") Duration timeout,
+                       @Value("${movie.posters.delete-delay:30s}") Duration deleteDelay) {
+        this.webClient = webClient;
+        this.directory = Path.of(directory);
+        this.maxBytes = maxSize.toBytes();
+        this.sizes = Set.copyOf(sizes);
+        this.timeout = timeout;
+        this.deleteDelay = deleteDelay;
+        this.hits = Counter.builder("movie.posters.requests")
+                .tag("outcome", "hit")
+                .register(meterRegistry);
+        this.misses = Counter.builder("movie.posters.requests")
+                .tag("outcome", "miss")
+                .register(meterRegistry);
+        Gauge.builder("movie.posters.disk.bytes", this, cache -> cache.totalBytes)
+                .description("Bytes brugt af plakat-cachen på disk")
+                .register(meterRegistry);
+        Gauge.builder("movie.posters.files", index, Map::size)
+                .register(meterRegistry);
+    }
+
+    // En plakat på disk. length er filens størrelse, så den kan sendes uden at spørge filsystemet.
+    public record Poster(Path file, long length, String etag, MediaType contentType) {
+
+        // true hvis klientens If-None-Match (evt. "*" eller W/"...") matcher
+        public boolean matches(List<String> ifNoneMatch) {
+            for (String tag : ifNoneMatch) {
+                String candidate = tag.startsWith("W/") ? tag.substring(2) : tag;
+                if (candidate.equals("*") || candidate.equals(etag)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    @PostConstruct
+    void open() throws IOException {
+        for (String size : sizes) {
+            Files.createDirectories(directory.resolve(size));
+        }
+        // Halvt hentede filer fra sidste kørsel slettes, resten kommer i LRU-rækkefølge efter ændringstid
+        List<Poster> existing = new ArrayList<>();
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : files.filter(file -> file.getFileName().toString().endsWith(".tmp")).toList()) {
+                Files.deleteIfExists(file);
+            }
+        }
+        for (String size : sizes) {
+            try (Stream<Path> files = Files.list(directory.resolve(size))) {
+                files.filter(file -> FILE_NAME.matcher(file.getFileName().toString()).matches())
+                        .sorted(Comparator.comparingLong(PosterCache::lastModified))
+                        .forEach(file -> existing.add(poster(size, file)));
+            }
+        }
+        existing.forEach(this::add);
+        if (!existing.isEmpty()) {
+            log.info("Plakat-cache: {} filer ({} MB) i {}", index.size(), totalBytes / (1024 * 1024), directory);
+        }
+    }
+
+    // false hvis størrelsen ikke er slået til i movie.posters.sizes, eller filnavnet ikke ligner TMDB's
+    public boolean isValid(String size, String fileName) {
+        return sizes.contains(size) && FILE_NAME.matcher(fileName).matches();
+    }
+
+    // Plakaten fra disk, eller hentet fra TMDB. Tom hvis TMDB ikke har den.
+    public Mono<Poster> get(String size, String fileName) {
+        if (!isValid(size, fileName)) {
+            return Mono.error(new IllegalArgumentException("Ugyldig plakat: " + size + "/" + fileName));
+        }
+        Poster cached = getCached(size, fileName);
+        if (cached != null) {
+            return Mono.just(cached);
+        }
+        String key = size + "/" + fileName;
+        return downloads.execute(key, () -> {
+            // Den kan være hentet færdig mens vi ventede
+            Poster downloaded = lookup(key);
+            if (downloaded != null) {
+                hits.increment();
+                return Mono.just(downloaded);
+            }
+            misses.increment();
+            return download(size, fileName);
+        });
+    }
+
+    // Plakaten hvis den allerede ligger på disk, ellers null. Bruges af PosterController til at svare uden async.
+    public Poster getCached(String size, String fileName) {
+        Poster cached = lookup(size + "/" + fileName);
+        if (cached != null) {
+            hits.increment();
+        }
+        return cached;
+    }
+
+    // Plakaten fra indekset, hvis filen stadig findes. Er den slettet uden om appen, fjernes den fra indekset,
+    // så den hentes igen (men kun hvis indekset stadig peger på den samme plakat).
+    // Files.exists koster ét stat-kald pr. hit (ingen data læses, og inode'en ligger i kernens cache). Det er nødvendigt,
+    // fordi indekset kun lever i hukommelsen: sletter noget andet end appen filen (oprydningsjob, en operatør),
+    // ville Tomcat først opdage det når den åbner filen til sendfile, og da er headers allerede sendt.
+    // delete-delay dækker kun appens egne sletninger. Selve sendingen er stadig zero-copy.
+    private Poster lookup(String key) {
+        Poster poster;
+        lock.lock();
+        try {
+            poster = index.get(key);
+        } finally {
+            lock.unlock();
+        }
+        if (poster == null || Files.exists(poster.file())) {
+            return poster;
+        }
+        lock.lock();
+        try {
+            if (index.remove(key, poster)) {
+                totalBytes -= poster.length();
+                log.warn("Plakat {} mangler på disken og hentes igen", poster.file());
+            }
+        } finally {
+            lock.unlock();
+        }
+        return null;
+    }
+
+    // Streames fra TMDB til <dir>/download-*.tmp og flyttes atomisk på plads, så en halv fil aldrig bliver serveret
+    private Mono<Poster> download(String size, String fileName) {
+        Path target = directory.resolve(size).resolve(fileName);
+        return Mono.usingWhen(
+                Mono.fromCallable(() -> Files.createTempFile(directory, "download-", ".tmp"))
+                        .subscribeOn(Schedulers.boundedElastic()),
+                temp -> {
+                    Flux<DataBuffer> body = webClient.get()
+                            .uri("/{size}/{file}", size, fileName)
+                            .retrieve()
+                            .bodyToFlux(DataBuffer.class);
+                    return DataBufferUtils.write(body, temp)
+                            .then(Mono.fromCallable(() -> {
+                                // Under låsen, så en forsinket sletning af en tidligere udgave ikke rammer den nye fil
+                                lock.lock();
+                                try {
+                                    Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                                    Poster poster = poster(size, target);
+                                    add(poster);
+                                    return poster;
+                                } finally {
+                                    lock.unlock();
+                                }
+                            }).subscribeOn(Schedulers.boundedElastic()));
+                },
+                temp -> Mono.fromRunnable(() -> deleteQuietly(temp)).subscribeOn(Schedulers.boundedElastic()))
+                .timeout(timeout)
+                .onErrorResume(WebClientResponseException.NotFound.class, e -> Mono.empty());
+    }
+
+    // Tilføjer plakaten og sletter de mindst brugte filer, indtil cachen er under max-size igen.
+    // Den nye plakat slettes aldrig selv, så en enkelt fil større end max-size kan stadig serveres.
+    private void add(Poster poster) {
+        List<Poster> evicted = new ArrayList<>();
+        lock.lock();
+        try {
+            Poster previous = index.put(key(poster), poster);
+            totalBytes += poster.length() - (previous == null ? 0 : previous.length());
+            Iterator<Poster> eldest = index.values().iterator();
+            while (totalBytes > maxBytes && eldest.hasNext()) {
+                Poster candidate = eldest.next();
+                if (candidate == poster) {
+                    break;
+                }
+                eldest.remove();
+                totalBytes -= candidate.length();
+                evicted.add(candidate);
+            }
+        } finally {
+            lock.unlock();
+        }
+        for (Poster candidate : evicted) {
+            Schedulers.boundedElastic().schedule(() -> deleteUnlessCachedAgain(candidate),
+                    deleteDelay.toMillis(), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    // Sletter en udsmidt fil, medmindre plakaten er hentet igen siden (så ligger den nye fil på samme sti).
+    // Under låsen, så en download ikke kan flytte en ny fil på plads mellem tjek og sletning.
+    // En fil der allerede er åbnet (fx af sendfile), kan stadig læses færdig efter sletningen.
+    private void deleteUnlessCachedAgain(Poster evicted) {
+        lock.lock();
+        try {
+            if (!index.containsKey(key(evicted))) {
+                deleteQuietly(evicted.file());
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static String key(Poster poster) {
+        return poster.file().getParent().getFileName() + "/" + poster.file().getFileName();
+    }
+
+    private static Poster poster(String size, Path file) {
+        String name = file.getFileName().toString();
+        try {
+            return new Poster(file.toAbsolutePath(), Files.size(file), "\"" + size + "-" + name + "\"", contentType(name));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static MediaType contentType(String name) {
+        String extension = name.substring(name.lastIndexOf('.') + 1);
+        return switch (extension) {
+            case "png" -> MediaType.IMAGE_PNG;
+            case "webp" -> MediaType.parseMediaType("image/webp");
+            default -> MediaType.IMAGE_JPEG;
+        };
+    }
+
+    private static long lastModified(Path file) {
+        try {
+            return Files.getLastModifiedTime(file).toMillis();
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    private static void deleteQuietly(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            log.warn("Kunne ikke slette {}: {}", file, e.getMessage());
+        }
+    }
+}
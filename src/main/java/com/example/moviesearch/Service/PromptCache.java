@@ -0,0 +1,139 @@
+package com.example.moviesearch.Service;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.text.Normalizer;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+// Cache for AI-titelanbefalinger, så næsten ens prompts ikke sendes til OpenAI igen.
+// "sjove film om hunde" og "Sjove  film om hunde!" giver samme nøgle (se normalize).
+// Hit rate kan ses under /actuator/metrics/movie.ai.prompt-cache.hit-ratio og cache.gets med cache=ai-prompts.
+@Component
+public class PromptCache {
+
+    private static final Logger log = LoggerFactory.getLogger(PromptCache.class);
+
+    private static final Locale DANISH = Locale.forLanguageTag("da-DK");
+    private static final Pattern COMBINING_MARKS = Pattern.compile("\\p{M}+");
+    private static final Pattern NON_WORD = Pattern.compile("[^\\p{L}\\p{N}]+");
+
+    private final Cache<String, List<String>> cache;
+    private final Duration ttl;
+    private final String persistPath;
+    private final ObjectMapper objectMapper;
+
+    public PromptCache(@Value("${movie.prompt-cache.ttl:24h}") Duration ttl,
+                       @Value("${movie.prompt-cache.max-size:10000}") long maxSize,
+                       @Value("${movie.prompt-cache.persist-path:}") String persistPath,
+                       ObjectMapper objectMapper,
+                       MeterRegistry meterRegistry) {
+        this.ttl = ttl;
+        this.persistPath = persistPath;
+        this.objectMapper = objectMapper;
+        // Variabel udløbstid, så poster læst fra disk kan få resten af deres TTL i stedet for en ny
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfter(Expiry.writing((String prompt, List<String> titles) -> ttl))
+                .recordStats()
+                .build();
+
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "ai-prompts");
+        Gauge.builder("movie.ai.prompt-cache.hit-ratio", cache, c -> c.stats().hitRate())
+                .description("Andel af AI-prompts der blev besvaret fra cachen uden et OpenAI-kald")
+                .register(meterRegistry);
+    }
+
+    // Gemt form på disk: hvornår titlerne blev hentet, så TTL også gælder efter genstart.
+    private record PersistedEntry(long savedAt, List<String> titles) {
+    }
+
+    public List<String> get(String normalizedPrompt) {
+        return cache.getIfPresent(normalizedPrompt);
+    }
+
+    public void put(String normalizedPrompt, List<String> titles) {
+        cache.put(normalizedPrompt, List.copyOf(titles));
+    }
+
+    // Små bogstaver, æ/ø/å skrevet ud, accenter og tegnsætning fjernet og mellemrum samlet.
+    public static String normalize(String prompt) {
+        if (prompt == null) {
+            return "";
+        }
+        String text = prompt.toLowerCase(DANISH)
+                .replace("æ", "ae")
+                .replace("ø", "oe")
+                .replace("å", "aa");
+        text = COMBINING_MARKS.matcher(Normalizer.normalize(text, Normalizer.Form.NFD)).replaceAll("");
+        return NON_WORD.matcher(text).replaceAll(" ").trim();
+    }
+
+    // Valgfri persistering: sættes movie.prompt-cache.persist-path, gemmes cachen ved nedlukning
+    // og læses ind igen ved opstart. Poster ældre end TTL springes over, resten lever kun den tid de havde tilbage.
+    @PostConstruct
+    void load() {
+        if (persistPath.isBlank() || !Files.exists(Path.of(persistPath))) {
+            return;
+        }
+        try {
+            Map<String, PersistedEntry> entries = objectMapper.readValue(Path.of(persistPath).toFile(),
+                    new TypeReference<Map<String, PersistedEntry>>() { });
+            long now = System.currentTimeMillis();
+            var expiry = cache.policy().expireVariably().orElseThrow();
+            entries.forEach((prompt, entry) -> {
+                Duration remaining = ttl.minusMillis(now - entry.savedAt());
+                if (remaining.isPositive() && entry.titles() != null) {
+                    expiry.put(prompt, List.copyOf(entry.titles()), remaining);
+                }
+            });
+        } catch (IOException e) {
+            log.warn("Kunne ikke indlæse prompt-cache fra {}: {}", persistPath, e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    void save() {
+        if (persistPath.isBlank()) {
+            return;
+        }
+        // Skrivetidspunktet regnes ud fra den tid posten har tilbage, så en genstart ikke forlænger TTL.
+        long now = System.currentTimeMillis();
+        var expiry = cache.policy().expireVariably().orElseThrow();
+        Map<String, PersistedEntry> entries = new HashMap<>();
+        cache.asMap().forEach((prompt, titles) -> expiry.getExpiresAfter(prompt).ifPresent(remaining ->
+                entries.put(prompt, new PersistedEntry(now - (ttl.toMillis() - remaining.toMillis()), titles))));
+        try {
+            Path path = Path.of(persistPath);
+            if (path.getParent() != null) {
+                Files.createDirectories(path.getParent());
+            }
+            Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+            objectMapper.writeValue(tmp.toFile(), entries);
+            Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            log.warn("Kunne ikke gemme prompt-cache til {}: {}", persistPath, e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package com.example.moviesearch.Service;
+
+import com.github.benmanes.caffeine.cache.AsyncLoadingCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import reactor.core.publisher.Mono;
+
+import java.util.function.Function;
+
+// Lille wrapper om en Caffeine AsyncLoadingCache, så MovieService kan arbejde med Mono.
+// Oprettes via ReactiveCacheFactory, som sætter TTL, stale-vindue, størrelse og metrics.
+public class ReactiveCache<K, V> {
+
+    private final String name;
+    private final AsyncLoadingCache<K, V> cache;
+
+    ReactiveCache(String name, Caffeine<Object, Object> builder, Function<K, Mono<V>> loader) {
+        this.name = name;
+        // En tom Mono bliver til null, som Caffeine ikke gemmer. "Ikke fundet" caches altså ikke.
+        this.cache = builder.buildAsync((key, executor) -> loader.apply(key).toFuture());
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    // Henter fra cachen, eller fra upstream ved miss. Er værdien udløbet men stadig inden for
+    // stale-vinduet, får kalderen den gamle værdi med det samme, mens én baggrundsopdatering kører.
+    // suppressCancel: en klient der afbryder må ikke annullere det load som andre venter på.
+    public Mono<V> get(K key) {
+        return Mono.fromFuture(() -> cache.get(key), true);
+    }
+
+    // Henter værdien på ny fra upstream, også selvom den stadig er frisk (bruges af CacheWarmer).
+    // Den gamle værdi serveres indtil den nye er klar. Er nøglen ikke i cachen, hentes den.
+    public Mono<V> refresh(K key) {
+        return Mono.fromFuture(() -> cache.synchronous().refresh(key), true);
+    }
+
+    // Starter et load i baggrunden, hvis nøglen hverken er i cachen eller ved at blive hentet.
+    // Bruges til at hente næste side på forhånd. Selve load'et tæller som et miss i cache.gets,
+    // og en fejl giver bare ingen post (Caffeine gemmer ikke fejlede loads).
+    public void prefetch(K key) {
+        if (!cache.asMap().containsKey(key)) {
+            cache.get(key);
+        }
+    }
+
+    AsyncLoadingCache<K, V> unwrap() {
+        return cache;
+    }
+}
@@ -0,0 +1,49 @@
+package com.example.moviesearch.Service;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.function.Function;
+
+// Bygger de in-memory caches der ligger foran TMDB.
+// Hver cache konfigureres i application.properties under movie.cache.<navn>.*:
+//   ttl       hvor længe en værdi er frisk
+//   stale     hvor længe en udløbet værdi stadig må serveres mens den opdateres i baggrunden
+//   max-size  maks antal nøgler før de mindst brugte smides ud
+// Hit/miss/eviction tællere kan ses under /actuator/metrics/cache.gets osv. med tag cache=<navn>.
+@Component
+public class ReactiveCacheFactory {
+
+    private final Environment environment;
+    private final MeterRegistry meterRegistry;
+
+    public ReactiveCacheFactory(Environment environment, MeterRegistry meterRegistry) {
+        this.environment = environment;
+        this.meterRegistry = meterRegistry;
+    }
+
+    public <K, V> ReactiveCache<K, V> create(String name, Duration defaultTtl, long defaultMaxSize,
+                                             Function<K, Mono<V>> loader) {
+        String prefix = "movie.cache." + name + ".";
+        Duration ttl = environment.getProperty(prefix + "ttl", Duration.class, defaultTtl);
+        Duration stale = environment.getProperty(prefix + "stale", Duration.class, ttl);
+        long maxSize = environment.getProperty(prefix + "max-size", Long.class, defaultMaxSize);
+
+        // refreshAfterWrite giver stale-while-revalidate: efter ttl serveres den gamle værdi,
+        // og Caffeine starter præcis én opdatering pr. nøgle. expireAfterWrite er den hårde grænse.
+        Caffeine<Object, Object> builder = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .refreshAfterWrite(ttl)
+                .expireAfterWrite(ttl.plus(stale))
+                .recordStats();
+
+        ReactiveCache<K, V> cache = new ReactiveCache<>(name, builder, loader);
+        CaffeineCacheMetrics.monitor(meterRegistry, cache.unwrap(), name);
+        return cache;
+    }
+}
@@ -0,0 +1,85 @@
+package com.example.moviesearch.Service;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Bestemmer hvordan controllerne venter på MovieService/AiService.
+// "reactive" (standard): Mono'en returneres direkte og ingen tråd venter.
+// "blocking": den gamle block()-model på Tomcats almindelige tråde, nyttig til sammenligning.
+// "virtual-threads": samme block()-model, men Tomcat kører handlerne på virtuelle tråde (se ExecutionModeConfig),
+// så en tråd der venter på TMDB/OpenAI bliver parkeret i stedet for at optage en platform-tråd.
+@Component
+public class RequestExecution {
+
+    public static final String REACTIVE = "reactive";
+    public static final String BLOCKING = "blocking";
+    public static final String VIRTUAL_THREADS = "virtual-threads";
+
+    private final String mode;
+
+    // Antal handler-tråde der lige nu kører, og hvor mange af dem der står og venter i block().
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger parked = new AtomicInteger();
+
+    public RequestExecution(@Value("${movie.execution.mode:reactive}") String mode, MeterRegistry meterRegistry) {
+        if (!REACTIVE.equals(mode) && !BLOCKING.equals(mode) && !VIRTUAL_THREADS.equals(mode)) {
+            throw new IllegalArgumentException("Ukendt movie.execution.mode: " + mode);
+        }
+        this.mode = mode;
+
+        Gauge.builder("movie.execution.threads.parked", parked, AtomicInteger::get)
+                .description("Handler-tråde der venter på TMDB/OpenAI i block()")
+                .tag("mode", mode)
+                .register(meterRegistry);
+        // inFlight tælles kun af ExecutionModeConfig's executor, så inflight og mounted findes kun i virtual-threads mode
+        if (VIRTUAL_THREADS.equals(mode)) {
+            Gauge.builder("movie.execution.threads.inflight", inFlight, AtomicInteger::get)
+                    .description("Handler-tråde der er i gang med en request")
+                    .tag("mode", mode)
+                    .register(meterRegistry);
+            Gauge.builder("movie.execution.threads.mounted", this, e -> Math.max(0, e.inFlight.get() - e.parked.get()))
+                    .description("Handler-tråde der faktisk kører kode lige nu")
+                    .tag("mode", mode)
+                    .register(meterRegistry);
+        }
+    }
+
+    public String getMode() {
+        return mode;
+    }
+
+    // Kaldes af controllerne rundt om hvert servicekald.
+    // I reactive mode returneres Mono'en uændret. Ellers blokerer den nuværende handler-tråd,
+    // og resultatet (eller fejlen) pakkes ind i en færdig Mono, så controllerens fejlhåndtering er den samme.
+    public <T> Mono<T> await(Mono<T> call) {
+        if (REACTIVE.equals(mode)) {
+            return call;
+        }
+
+        parked.incrementAndGet();
+        try {
+            return Mono.justOrEmpty(call.block());
+        } catch (RuntimeException e) {
+            return Mono.error(e);
+        } finally {
+            parked.decrementAndGet();
+        }
+    }
+
+    // Pakker en handler-opgave ind, så inflight-tælleren følger med. Bruges af ExecutionModeConfig.
+    public Runnable track(Runnable task) {
+        return () -> {
+            inFlight.incrementAndGet();
+            try {
+                task.run();
+            } finally {
+                inFlight.decrementAndGet();
+            }
+        };
+    }
+}
@@ -0,0 +1,93 @@
+package com.example.moviesearch.Service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+// Færdigserialiserede svar til de varme liste-endpoints (/popular, /now-playing, /genres, /by-genre).
+// Nøglen er selve listen fra MovieService's caches, sammenlignet på identitet (weakKeys): så længe
+// ReactiveCache giver den samme liste, gives de samme bytes. Først når listen er hentet på ny fra TMDB,
+// serialiseres den igen, og den gamle post forsvinder når listen ikke længere bruges.
+// ETag er et hash af JSON-bytes, så en opdatering med uændret indhold giver samme ETag.
+// Hit/miss kan ses under /actuator/metrics/cache.gets med cache=serialized-responses.
+@Component
+public class SerializedResponseCache {
+
+    private final ObjectMapper objectMapper;
+    private final Cache<Object, Body> cache;
+
+    public SerializedResponseCache(ObjectMapper objectMapper, MeterRegistry meterRegistry) {
+        this.objectMapper = objectMapper;
+        this.cache = Caffeine.newBuilder()
+                .weakKeys()
+                .maximumSize(500)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "serialized-responses");
+    }
+
+    // JSON-bytes i to varianter (identity og gzip) med hver sin ETag, da de er forskellige repræsentationer
+    public record Body(byte[] identity, byte[] gzip, String etag, String gzipEtag) {
+
+        // true hvis klientens If-None-Match (en liste af ETags, evt. "*" eller W/"...") matcher en af varianterne
+        public boolean matches(List<String> ifNoneMatch) {
+            for (String tag : ifNoneMatch) {
+                String candidate = tag.startsWith("W/") ? tag.substring(2) : tag;
+                if (candidate.equals("*") || candidate.equals(etag) || candidate.equals(gzipEtag)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    public Body get(Object value) {
+        return cache.get(value, this::serialize);
+    }
+
+    private Body serialize(Object value) {
+        try {
+            byte[] identity = objectMapper.writeValueAsBytes(value);
+            String hash = Long.toHexString(hash(identity));
+            return new Body(identity, gzip(identity), "\"" + hash + "\"", "\"" + hash + "-gzip\"");
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Kunne ikke serialisere svar: " + e.getMessage(), e);
+        }
+    }
+
+    // Komprimeres kun én gang pr. opdatering, så der bruges højeste niveau
+    private static byte[] gzip(byte[] bytes) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(bytes.length / 4 + 64);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out) {
+            {
+                def.setLevel(Deflater.BEST_COMPRESSION);
+            }
+        }) {
+            gzip.write(bytes);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toByteArray();
+    }
+
+    // FNV-1a over bytes, samme hash som SummaryStore bruger for tekst
+    private static long hash(byte[] bytes) {
+        long h = 0xcbf29ce484222325L;
+        for (byte b : bytes) {
+            h ^= b & 0xff;
+            h *= 0x100000001b3L;
+        }
+        return h;
+    }
+}
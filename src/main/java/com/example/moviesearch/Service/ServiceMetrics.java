@@ -0,0 +1,88 @@
+package com.example.moviesearch.Service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+// Fælles metrics for service-laget og controllerne, så vi kan se om tiden bruges hos TMDB, OpenAI eller hos os selv.
+//   movie.service.calls        latency pr. service-metode (tags: service, method, outcome)
+//   movie.endpoint.errors      fejl pr. endpoint, fordelt på årsag (exception-typen)
+//   movie.ai.titles.*          hvor mange af AI'ens foreslåede titler vi fandt på TMDB
+// Upstream-kaldene måles i UpstreamCallPolicy (movie.upstream.requests), OpenAI-tokens i OpenAiClient.
+@Component
+public class ServiceMetrics {
+
+    private final MeterRegistry meterRegistry;
+    private final Counter titlesSuggested;
+    private final Counter titlesResolved;
+    private final DistributionSummary titlesResolvedRatio;
+
+    public ServiceMetrics(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+        this.titlesSuggested = Counter.builder("movie.ai.titles.suggested")
+                .description("Titler foreslået af AI'en")
+                .register(meterRegistry);
+        this.titlesResolved = Counter.builder("movie.ai.titles.resolved")
+                .description("Foreslåede titler der blev fundet på TMDB")
+                .register(meterRegistry);
+        this.titlesResolvedRatio = DistributionSummary.builder("movie.ai.titles.resolved.ratio")
+                .description("Andel af AI'ens titler der blev fundet, pr. prompt (0-1)")
+                .register(meterRegistry);
+    }
+
+    public <T> Mono<T> timed(String service, String method, Mono<T> call) {
+        return Mono.defer(() -> {
+            Timer.Sample sample = Timer.start(meterRegistry);
+            return call
+                    .doOnSuccess(v -> stop(sample, service, method, "success"))
+                    .doOnError(e -> stop(sample, service, method, e.getClass().getSimpleName()))
+                    .doOnCancel(() -> stop(sample, service, method, "cancelled"));
+        });
+    }
+
+    public <T> Flux<T> timed(String service, String method, Flux<T> call) {
+        return Flux.defer(() -> {
+            Timer.Sample sample = Timer.start(meterRegistry);
+            return call
+                    .doOnComplete(() -> stop(sample, service, method, "success"))
+                    .doOnError(e -> stop(sample, service, method, e.getClass().getSimpleName()))
+                    .doOnCancel(() -> stop(sample, service, method, "cancelled"));
+        });
+    }
+
+    public void recordEndpointError(String endpoint, Throwable e) {
+        Counter.builder("movie.endpoint.errors")
+                .tag("endpoint", endpoint)
+                .tag("cause", e.getClass().getSimpleName())
+                .register(meterRegistry)
+                .increment();
+    }
+
+    public void recordAiTitleResolution(int suggested, int resolved) {
+        titlesSuggested.increment(suggested);
+        titlesResolved.increment(resolved);
+        if (suggested > 0) {
+            titlesResolvedRatio.record((double) resolved / suggested);
+        }
+    }
+
+    // outcome er local (svaret fra TitleIndex) eller tmdb (for få lokale hits, TMDB's søgning blev brugt)
+    public void recordAutocomplete(String outcome) {
+        Counter.builder("movie.autocomplete")
+                .tag("outcome", outcome)
+                .register(meterRegistry)
+                .increment();
+    }
+
+    private void stop(Timer.Sample sample, String service, String method, String outcome) {
+        sample.stop(Timer.builder("movie.service.calls")
+                .tag("service", service)
+                .tag("method", method)
+                .tag("outcome", outcome)
+                .register(meterRegistry));
+    }
+}
@@ -0,0 +1,48 @@
+package com.example.moviesearch.Service;
+
+import reactor.core.publisher.Mono;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+// Samler identiske upstream-kald: mens et kald for en nøgle er i gang, får alle andre kaldere
+// med samme nøgle det samme resultat (eller den samme fejl) i stedet for at starte deres eget kald.
+// Når kaldet er færdigt, fjernes nøglen igen, så næste kald går til upstream som normalt.
+public class SingleFlight<K, V> {
+
+    private final ConcurrentHashMap<K, Mono<V>> inFlight = new ConcurrentHashMap<>();
+    private final AtomicLong joined = new AtomicLong();
+
+    public Mono<V> execute(K key, Supplier<Mono<V>> call) {
+        return Mono.defer(() -> {
+            AtomicReference<Mono<V>> created = new AtomicReference<>();
+            Mono<V> shared = inFlight.computeIfAbsent(key, k -> {
+                // cache() deler ét upstream-kald mellem alle subscribers.
+                // remove(k, mono) sikrer at vi kun fjerner vores egen post.
+                // doOnTerminate fjerner nøglen før resultatet når frem til kalderne, så en kalder der reagerer på
+                // resultatet ikke kobles på det afsluttede kald. doFinally tager sig af cancel.
+                Mono<V> mono = call.get()
+                        .doOnTerminate(() -> inFlight.remove(k, created.get()))
+                        .doFinally(signal -> inFlight.remove(k, created.get()))
+                        .cache();
+                created.set(mono);
+                return mono;
+            });
+            if (created.get() == null) {
+                joined.incrementAndGet();
+            }
+            return shared;
+        });
+    }
+
+    // Antal kald der blev koblet på et kald der allerede var i gang (sparede upstream-kald).
+    public long getJoinedCount() {
+        return joined.get();
+    }
+
+    public int getInFlightCount() {
+        return inFlight.size();
+    }
+}
@@ -0,0 +1,106 @@
+package com.example.moviesearch.Service;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.FluxSink;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Samler AI-opsummeringer til batches, så mange film deles om ét OpenAI-kald (AiService.generateMovieSummaries).
+// Et kald venter højst movie.ai.summary-batch.window på andre, eller til der er max-size film, og sendes så af sted.
+// Svaret splittes ud til dem der venter. Samme film flere gange i et batch sendes kun med én gang.
+// Er der kun én film i batchet, bruges det almindelige enkeltkald (generateMovieSummary).
+// En film der mangler i svaret får SUMMARY_FALLBACK (gemmes ikke). Fejler kaldet, får alle i batchet fejlen.
+// Batch-størrelser kan ses under /actuator/metrics/movie.ai.summary.batch.size.
+// Er upstream-arkivet slået til (movie.upstream-archive.mode), sendes hver film for sig. Hvilke film der deles om et
+// batch afhænger af timing, og arkivets nøgle er hele request-JSON'en, så en afspilning ville spørge efter batches
+// der aldrig blev optaget. Med ét kald pr. film er nøglen den samme hver gang.
+@Component
+public class SummaryBatcher {
+
+    private final AiService aiService;
+    private final boolean enabled;
+    private final DistributionSummary batchSize;
+    // Sættes når pipelinen subscribes i konstruktøren
+    private FluxSink<Pending> requests;
+    private final Disposable pipeline;
+
+    public SummaryBatcher(AiService aiService,
+                          UpstreamArchive archive,
+                          MeterRegistry meterRegistry,
+                          @Value("${movie.ai.summary-batch.enabled:true}") boolean enabled,
+                          @Value("${movie.ai.summary-batch.window:50ms}") Duration window,
+                          @Value("${movie.ai.summary-batch.max-size:20}") int maxSize,
+                          @Value("${movie.ai.summary-batch.concurrency:4}") int concurrency) {
+        this.aiService = aiService;
+        this.enabled = enabled && !archive.isActive();
+        this.batchSize = DistributionSummary.builder("movie.ai.summary.batch.size")
+                .description("Antal film pr. OpenAI-kald til opsummeringer")
+                .register(meterRegistry);
+        // fairBackpressure: er alle concurrency kald i gang, venter næste batch i stedet for at fejle
+        // Flux.create giver en serialiseret sink: kommer flere tråde samtidig, lægges deres film i en MPSC-kø,
+        // og den tråd der allerede sender, tømmer den. Ingen kalder venter eller spinner (de er Netty- og request-tråde).
+        this.pipeline = Flux.<Pending>create(sink -> requests = sink)
+                .bufferTimeout(maxSize, window, true)
+                .flatMap(this::send, concurrency)
+                .subscribe();
+    }
+
+    private record Pending(AiService.MovieToSummarize movie, Sinks.One<String> result) {
+    }
+
+    public Mono<String> summarize(int movieId, String title, String overview) {
+        if (!enabled) {
+            return aiService.generateMovieSummary(title, overview);
+        }
+        return Mono.defer(() -> {
+            Pending pending = new Pending(new AiService.MovieToSummarize(movieId, title, overview), Sinks.one());
+            requests.next(pending);
+            return pending.result().asMono();
+        });
+    }
+
+    private Mono<Void> send(List<Pending> batch) {
+        Map<Integer, List<Pending>> byMovie = new LinkedHashMap<>();
+        for (Pending pending : batch) {
+            byMovie.computeIfAbsent(pending.movie().id(), id -> new ArrayList<>()).add(pending);
+        }
+        batchSize.record(byMovie.size());
+
+        Mono<Map<Integer, String>> summaries;
+        if (byMovie.size() == 1) {
+            AiService.MovieToSummarize movie = batch.get(0).movie();
+            summaries = aiService.generateMovieSummary(movie.title(), movie.overview())
+                    .map(summary -> Map.of(movie.id(), summary));
+        } else {
+            summaries = aiService.generateMovieSummaries(byMovie.values().stream()
+                    .map(waiting -> waiting.get(0).movie())
+                    .toList());
+        }
+        return summaries
+                .defaultIfEmpty(Map.of())
+                .doOnNext(results -> byMovie.forEach((id, waiting) -> {
+                    String summary = results.getOrDefault(id, AiService.SUMMARY_FALLBACK);
+                    waiting.forEach(pending -> pending.result().tryEmitValue(summary));
+                }))
+                .doOnError(e -> batch.forEach(pending -> pending.result().tryEmitError(e)))
+                .then()
+                .onErrorResume(e -> Mono.empty());
+    }
+
+    @PreDestroy
+    void close() {
+        pipeline.dispose();
+    }
+}
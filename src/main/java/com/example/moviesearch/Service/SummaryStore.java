@@ -0,0 +1,319 @@
+package com.example.moviesearch.Service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Persistent lager for AI-opsummeringer, så samme film ikke sendes til OpenAI igen og igen.
+// Gemmes som en append-only log på disk. Hver post er:
+//   [int movieId][long overviewHash][int længde][UTF-8 bytes]   (længde -1 = slettet)
+// Ved opstart læses loggen ind i et LRU-indeks i hukommelsen, så et opslag er et map-opslag.
+// Nøglen er filmens id plus en hash af TMDB's overview. Ændrer TMDB beskrivelsen, passer hashen
+// ikke længere, og opsummeringen genereres på ny.
+// Indekset opdateres med det samme, men skrivningen til disk sker i rækkefølge på én boundedElastic-worker,
+// så put kan kaldes fra en Netty event loop uden at blokere den. En skrivefejl logges bare:
+// opsummeringen er stadig i indekset, den overlever bare ikke en genstart.
+// Indekset og filen har hver sin lås, så get aldrig venter på en compaction eller en fsync.
+@Component
+public class SummaryStore {
+
+    private static final Logger log = LoggerFactory.getLogger(SummaryStore.class);
+
+    private static final int HEADER_BYTES = Integer.BYTES + Long.BYTES + Integer.BYTES;
+    private static final int TOMBSTONE = -1;
+
+    private final Path path;
+    private final int maxEntries;
+    private final boolean enabled;
+
+    // indexLock holdes kun mens indekset læses eller ændres. ReentrantLock i stedet for synchronized,
+    // så virtuelle tråde ikke bliver pinned (se movie.execution.mode).
+    private final ReentrantLock indexLock = new ReentrantLock();
+    private final LinkedHashMap<Integer, Entry> index;
+    // fileLock serialiserer al fil-I/O (writer og close). Den tages aldrig mens indexLock holdes.
+    final ReentrantLock fileLock = new ReentrantLock();
+    private volatile FileChannel channel;
+    private long records; // Antal poster i loggen, inkl. overskrevne og slettede. Beskyttet af fileLock.
+    // Én worker udfører opgaverne i den rækkefølge de blev lagt, så loggen får posterne i samme rækkefølge som indekset
+    private final Scheduler.Worker writer = Schedulers.boundedElastic().createWorker();
+
+    @FunctionalInterface
+    private interface Write {
+        void run() throws IOException;
+    }
+
+    public SummaryStore(@Value("${movie.summary-store.path:data/ai-summaries.log}") String path,
+                        @Value("${movie.summary-store.max-entries:10000}") int maxEntries,
+                        @Value("${movie.summary-store.enabled:true}") boolean enabled) {
+        this.path = Path.of(path);
+        this.maxEntries = maxEntries;
+        this.enabled = enabled;
+        // accessOrder = true giver LRU: den mindst brugte ligger forrest og smides ud først
+        this.index = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, Entry> eldest) {
+                return size() > SummaryStore.this.maxEntries;
+            }
+        };
+    }
+
+    private record Entry(long overviewHash, String summary) {
+    }
+
+    @PostConstruct
+    void open() throws IOException {
+        if (!enabled) {
+            return;
+        }
+        if (path.getParent() != null) {
+            Files.createDirectories(path.getParent());
+        }
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        replay();
+    }
+
+    // Skriver de ventende poster færdigt før filen lukkes
+    @PreDestroy
+    void close() throws IOException {
+        flush();
+        writer.dispose();
+        fileLock.lock();
+        try {
+            if (channel != null) {
+                channel.close();
+                channel = null;
+            }
+        } finally {
+            fileLock.unlock();
+        }
+    }
+
+    // Returnerer den gemte opsummering, eller null hvis den mangler eller overview er ændret.
+    public String get(Integer movieId, String overview) {
+        if (channel == null || movieId == null) {
+            return null;
+        }
+        indexLock.lock();
+        try {
+            Entry entry = index.get(movieId);
+            if (entry == null) {
+                return null;
+            }
+            if (entry.overviewHash() == hash(overview)) {
+                return entry.summary();
+            }
+            // TMDB har ændret beskrivelsen, den gamle tekst passer ikke længere
+            index.remove(movieId);
+        } finally {
+            indexLock.unlock();
+        }
+        // Slettes også i loggen, ellers kommer den tilbage ved næste opstart
+        persist(() -> append(movieId, 0L, null));
+        return null;
+    }
+
+    public void put(Integer movieId, String overview, String summary) {
+        if (channel == null || movieId == null || summary == null) {
+            return;
+        }
+        long overviewHash = hash(overview);
+        byte[] bytes = summary.getBytes(StandardCharsets.UTF_8);
+        indexLock.lock();
+        try {
+            index.put(movieId, new Entry(overviewHash, summary));
+        } finally {
+            indexLock.unlock();
+        }
+        persist(() -> {
+            append(movieId, overviewHash, bytes);
+            compactIfNeeded();
+        });
+    }
+
+    // Sletter en opsummering, fx hvis den skal genereres igen.
+    public void invalidate(Integer movieId) {
+        if (channel == null || movieId == null) {
+            return;
+        }
+        boolean removed;
+        indexLock.lock();
+        try {
+            removed = index.remove(movieId) != null;
+        } finally {
+            indexLock.unlock();
+        }
+        if (removed) {
+            persist(() -> append(movieId, 0L, null));
+        }
+    }
+
+    // Venter til alle skrivninger lagt indtil nu er på disken (bruges ved nedlukning og i tests)
+    void flush() {
+        CountDownLatch done = new CountDownLatch(1);
+        writer.schedule(done::countDown);
+        try {
+            if (!done.await(10, TimeUnit.SECONDS)) {
+                log.warn("SummaryStore nåede ikke at skrive færdigt til {}", path);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Lægger en skrivning i kø på writer. Filen røres kun med fileLock, så close ikke lukker den midt i en skrivning.
+    private void persist(Write write) {
+        writer.schedule(() -> {
+            fileLock.lock();
+            try {
+                if (channel != null) {
+                    write.run();
+                }
+            } catch (IOException e) {
+                log.warn("Kunne ikke skrive AI-opsummering til {}: {}", path, e.getMessage());
+            } finally {
+                fileLock.unlock();
+            }
+        });
+    }
+
+    public int size() {
+        indexLock.lock();
+        try {
+            return index.size();
+        } finally {
+            indexLock.unlock();
+        }
+    }
+
+    private void append(int movieId, long overviewHash, byte[] bytes) throws IOException {
+        int length = bytes == null ? TOMBSTONE : bytes.length;
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_BYTES + Math.max(length, 0));
+        buffer.putInt(movieId).putLong(overviewHash).putInt(length);
+        if (bytes != null) {
+            buffer.put(bytes);
+        }
+        buffer.flip();
+        long position = channel.size();
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+        records++;
+    }
+
+    // Læser hele loggen ind. En halvt skrevet post i slutningen (fx efter et nedbrud) skæres af.
+    private void replay() throws IOException {
+        long size = channel.size();
+        long position = 0;
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+        while (position + HEADER_BYTES <= size) {
+            header.clear();
+            readFully(header, position);
+            header.flip();
+            int movieId = header.getInt();
+            long overviewHash = header.getLong();
+            int length = header.getInt();
+
+            if (length == TOMBSTONE) {
+                index.remove(movieId);
+            } else {
+                if (length < 0 || position + HEADER_BYTES + length > size) {
+                    break;
+                }
+                ByteBuffer body = ByteBuffer.allocate(length);
+                readFully(body, position + HEADER_BYTES);
+                index.put(movieId, new Entry(overviewHash, new String(body.array(), StandardCharsets.UTF_8)));
+            }
+            position += HEADER_BYTES + Math.max(length, 0);
+            records++;
+        }
+        if (position < size) {
+            channel.truncate(position);
+        }
+    }
+
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                throw new IOException("Uventet slutning på " + path);
+            }
+            position += read;
+        }
+    }
+
+    // Når loggen er mere end dobbelt så stor som det levende indhold (overskrevne, slettede
+    // og LRU-smidte poster), skrives en ny fil med kun de levende poster, og den gamle udskiftes.
+    // De levende poster kopieres under indexLock, og selve skrivningen sker bagefter uden den.
+    // Ændringer efter kopien ligger i kø på writer efter denne opgave og havner derfor i den nye log.
+    private void compactIfNeeded() throws IOException {
+        if (records < 1_000 || records < 2L * size()) {
+            return;
+        }
+        List<Map.Entry<Integer, Entry>> live;
+        indexLock.lock();
+        try {
+            live = new ArrayList<>(index.size());
+            for (Map.Entry<Integer, Entry> e : index.entrySet()) {
+                live.add(Map.entry(e.getKey(), e.getValue()));
+            }
+        } finally {
+            indexLock.unlock();
+        }
+        Path tmp = path.resolveSibling(path.getFileName() + ".compact");
+        try (FileChannel out = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            for (Map.Entry<Integer, Entry> e : live) {
+                byte[] bytes = e.getValue().summary().getBytes(StandardCharsets.UTF_8);
+                ByteBuffer buffer = ByteBuffer.allocate(HEADER_BYTES + bytes.length);
+                buffer.putInt(e.getKey()).putLong(e.getValue().overviewHash()).putInt(bytes.length).put(bytes);
+                buffer.flip();
+                while (buffer.hasRemaining()) {
+                    out.write(buffer);
+                }
+            }
+            out.force(true);
+        }
+        channel.close();
+        try {
+            Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            records = live.size();
+        } finally {
+            // Også hvis move fejler: så skrives der videre i den gamle log
+            channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        }
+    }
+
+    // 64-bit FNV-1a over teksten. Bruges kun til at opdage at TMDB's overview har ændret sig.
+    static long hash(String text) {
+        long h = 0xcbf29ce484222325L;
+        if (text == null) {
+            return h;
+        }
+        for (int i = 0; i < text.length(); i++) {
+            h ^= text.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        return h;
+    }
+}
@@ -0,0 +1,360 @@
+package com.example.moviesearch.Service;
+
+import com.example.moviesearch.Model.MovieDto;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Autocomplete over titlerne på alle film MovieService har hentet fra TMDB, så søgefeltet ikke koster et TMDB-kald pr. tast.
+// Titlerne normaliseres som i PromptCache (små bogstaver, æ/ø/å skrevet ud, ingen tegnsætning).
+//
+// Indekset er et snapshot af primitive arrays, som bygges på ny når der er kommet nye film (højst hver rebuild-interval).
+// Bygningen kører på boundedElastic, så hverken søgninger eller addAll (som kaldes fra Netty-tråde) venter på den:
+// addAll lægger kun filmene i et ConcurrentHashMap, og search læser bare det nuværende snapshot.
+//   movies          filmene sorteret efter vote_average, højeste først. En films række er dens plads her.
+//   gramKeys        alle trigrammer (3 tegn inden for et ord) pakket i en long, sorteret
+//   gramStart       postings for gramKeys[i] er postings[gramStart[i] .. gramStart[i + 1]), stigende rækker
+//   words/wordRows  alle titelord sorteret, til prefix-opslag når forespørgslen er for kort til trigrammer
+// Da rækkerne er sorteret efter vote_average, er de første rækker der matcher også de mest populære,
+// så søgningen stopper når den har limit film.
+// En titel matcher når hvert ord i forespørgslen er starten af et ord i titlen (rækkefølgen er ligegyldig).
+@Component
+public class TitleIndex {
+
+    private static final Logger log = LoggerFactory.getLogger(TitleIndex.class);
+
+    private final boolean enabled;
+    private final int maxTitles;
+    private final long rebuildIntervalNanos;
+
+    // Nye film samles her og kommer med i næste snapshot. max-titles kan overskrides en smule ved samtidige addAll.
+    private final Map<Integer, MovieDto> moviesById = new ConcurrentHashMap<>();
+    private volatile boolean dirty;
+    private volatile long lastBuildNanos;
+    private volatile Snapshot snapshot = Snapshot.EMPTY;
+    // true mens en bygning er planlagt eller kører. buildLock sikrer at kun én bygger ad gangen (også via flush).
+    private final AtomicBoolean rebuildScheduled = new AtomicBoolean();
+    private final ReentrantLock buildLock = new ReentrantLock();
+
+    public TitleIndex(MeterRegistry meterRegistry,
+                      @Value("${movie.autocomplete.enabled:true}") boolean enabled,
+                      @Value("${movie.autocomplete.max-titles:50000}") int maxTitles,
+                      @Value("${movie.autocomplete.rebuild-interval:1s}") Duration rebuildInterval) {
+        this.enabled = enabled;
+        // Rækken gemmes i 24 bit i build
+        this.maxTitles = Math.min(maxTitles, 1 << 24);
+        this.rebuildIntervalNanos = rebuildInterval.toNanos();
+        this.lastBuildNanos = System.nanoTime() - rebuildIntervalNanos;
+        Gauge.builder("movie.autocomplete.titles", this, index -> index.snapshot.movies.length)
+                .description("Antal titler i autocomplete-indekset")
+                .register(meterRegistry);
+    }
+
+    private record Snapshot(MovieDto[] movies, String[][] titleWords, long[] gramKeys, int[] gramStart, int[] postings,
+                            String[] words, int[] wordRows) {
+        static final Snapshot EMPTY = new Snapshot(new MovieDto[0], new String[0][], new long[0], new int[1], new int[0],
+                new String[0], new int[0]);
+    }
+
+    // Tilføjer eller opdaterer filmene (nyeste vote_average vinder). Kaldes af MovieService for alt hvad der hentes fra TMDB.
+    public void addAll(List<MovieDto> movies) {
+        if (!enabled || movies == null || movies.isEmpty()) {
+            return;
+        }
+        boolean changed = false;
+        for (MovieDto movie : movies) {
+            if (movie == null || movie.getId() == null || movie.getTitle() == null || movie.getTitle().isBlank()) {
+                continue;
+            }
+            if (moviesById.size() < maxTitles || moviesById.containsKey(movie.getId())) {
+                moviesById.put(movie.getId(), movie);
+                changed = true;
+            }
+        }
+        if (changed) {
+            dirty = true;
+            scheduleRebuild();
+        }
+    }
+
+    public void add(MovieDto movie) {
+        if (movie != null) {
+            addAll(List.of(movie));
+        }
+    }
+
+    // Højst limit film hvis titel matcher, de mest populære først
+    public List<MovieDto> search(String query, int limit) {
+        if (!enabled || limit <= 0) {
+            return List.of();
+        }
+        String[] queryWords = words(query);
+        if (queryWords.length == 0) {
+            return List.of();
+        }
+        Snapshot current = snapshot;
+        if (current.movies.length == 0) {
+            return List.of();
+        }
+
+        // Én postingliste pr. trigram i ordene på 3+ tegn. Kortere ord tjekkes først i matches,
+        // medmindre alle ord er korte: så bruges prefix-opslag for det længste. Alle er stigende rækker (vote_average-orden).
+        List<Postings> lists = new ArrayList<>();
+        String longest = queryWords[0];
+        for (String word : queryWords) {
+            for (int i = 0; i + 3 <= word.length(); i++) {
+                int gram = Arrays.binarySearch(current.gramKeys, gramKey(word, i));
+                if (gram < 0) {
+                    return List.of();
+                }
+                lists.add(new Postings(current.postings, current.gramStart[gram], current.gramStart[gram + 1]));
+            }
+            if (word.length() > longest.length()) {
+                longest = word;
+            }
+        }
+        if (lists.isEmpty()) {
+            int[] rows = prefixRows(current, longest);
+            lists.add(new Postings(rows, 0, rows.length));
+        }
+        lists.sort(Comparator.comparingInt(list -> list.to - list.from));
+
+        // Den korteste liste gennemløbes i rækkefølge, og de andre tjekkes med hver sin cursor (rækkerne stiger,
+        // så en cursor går kun fremad). Ingen fællesmængde bygges, og der stoppes ved limit film.
+        Postings shortest = lists.get(0);
+        List<MovieDto> result = new ArrayList<>(limit);
+        candidates:
+        for (int i = shortest.from; i < shortest.to && result.size() < limit; i++) {
+            int row = shortest.rows[i];
+            for (int l = 1; l < lists.size(); l++) {
+                if (!lists.get(l).advanceTo(row)) {
+                    continue candidates;
+                }
+            }
+            if (matches(current.titleWords[row], queryWords)) {
+                result.add(current.movies[row]);
+            }
+        }
+        return result;
+    }
+
+    // rows[from .. to) er stigende rækker. advanceTo flytter from frem til den første række >= row
+    // (galoperende søgning) og svarer på om row er med.
+    private static final class Postings {
+        private final int[] rows;
+        private int from;
+        private final int to;
+
+        Postings(int[] rows, int from, int to) {
+            this.rows = rows;
+            this.from = from;
+            this.to = to;
+        }
+
+        boolean advanceTo(int row) {
+            int step = 1;
+            int high = from;
+            while (high < to && rows[high] < row) {
+                from = high + 1;
+                high += step;
+                step <<= 1;
+            }
+            int found = Arrays.binarySearch(rows, from, Math.min(high + 1, to), row);
+            from = found >= 0 ? found : -found - 1;
+            return found >= 0;
+        }
+    }
+
+    // Rækker med et titelord der starter med prefix, i stigende orden uden dubletter
+    private static int[] prefixRows(Snapshot index, String prefix) {
+        int from = lowerBound(index.words, prefix);
+        int to = from;
+        while (to < index.words.length && index.words[to].startsWith(prefix)) {
+            to++;
+        }
+        int[] rows = Arrays.copyOfRange(index.wordRows, from, to);
+        Arrays.sort(rows);
+        int distinct = 0;
+        for (int i = 0; i < rows.length; i++) {
+            if (i == 0 || rows[i] != rows[i - 1]) {
+                rows[distinct++] = rows[i];
+            }
+        }
+        return Arrays.copyOf(rows, distinct);
+    }
+
+    private static boolean matches(String[] titleWords, String[] queryWords) {
+        for (String queryWord : queryWords) {
+            boolean found = false;
+            for (String titleWord : titleWords) {
+                if (titleWord.startsWith(queryWord)) {
+                    found = true;
+                    break;
+                }
+            }
+            if (!found) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Planlægger en bygning på boundedElastic, tidligst rebuild-interval efter den forrige. Er der allerede en planlagt,
+    // kommer de nye film med i den.
+    // Fejler bygningen, logges det og flaget nulstilles altid, ellers ville ingen senere addAll kunne planlægge en ny,
+    // og indekset ville stå stille. Søgningen bruger det forrige snapshot, og næste addAll prøver igen.
+    private void scheduleRebuild() {
+        if (!rebuildScheduled.compareAndSet(false, true)) {
+            return;
+        }
+        long delayNanos = Math.max(0, lastBuildNanos + rebuildIntervalNanos - System.nanoTime());
+        Schedulers.boundedElastic().schedule(() -> {
+            boolean built = false;
+            try {
+                rebuild();
+                built = true;
+            } catch (RuntimeException | Error e) {
+                log.error("Kunne ikke bygge titelindekset ({} film), søgningen bruger det forrige", moviesById.size(), e);
+            } finally {
+                rebuildScheduled.set(false);
+            }
+            // Film der kom til efter kopien, men før flaget blev nulstillet, får deres egen bygning
+            if (built && dirty) {
+                scheduleRebuild();
+            }
+        }, delayNanos, TimeUnit.NANOSECONDS);
+    }
+
+    // Bygger snapshottet nu, hvis der er nye film. Filmene kopieres først, så addAll aldrig venter på bygningen.
+    // Package-private så tests og TitleIndexBenchmark kan søge i et færdigt snapshot med det samme.
+    void rebuild() {
+        buildLock.lock();
+        try {
+            if (!dirty) {
+                return;
+            }
+            dirty = false;
+            List<MovieDto> movies = new ArrayList<>(moviesById.values());
+            lastBuildNanos = System.nanoTime();
+            try {
+                snapshot = build(movies);
+            } catch (RuntimeException | Error e) {
+                // Filmene er stadig ikke i snapshottet, så de skal med i næste bygning
+                dirty = true;
+                throw e;
+            }
+        } finally {
+            buildLock.unlock();
+        }
+    }
+
+    private static Snapshot build(List<MovieDto> source) {
+        source.sort(Comparator.comparingDouble((MovieDto movie) -> movie.getVoteAverage() == null ? 0 : movie.getVoteAverage())
+                .reversed()
+                .thenComparing(MovieDto::getId));
+        MovieDto[] movies = source.toArray(new MovieDto[0]);
+        String[][] titleWords = new String[movies.length][];
+
+        // (trigram, række) og (ord, række) par, sorteret efter nøgle og række
+        int pairs = 0;
+        int wordCount = 0;
+        for (int row = 0; row < movies.length; row++) {
+            titleWords[row] = words(movies[row].getTitle());
+            for (String word : titleWords[row]) {
+                pairs += Math.max(0, word.length() - 2);
+                wordCount++;
+            }
+        }
+        long[] gramPairs = new long[pairs];
+        String[] words = new String[wordCount];
+        Integer[] wordOrder = new Integer[wordCount];
+        int[] wordRowsUnsorted = new int[wordCount];
+        int p = 0;
+        int w = 0;
+        for (int row = 0; row < movies.length; row++) {
+            for (String word : titleWords[row]) {
+                for (int i = 0; i + 3 <= word.length(); i++) {
+                    // Trigrammet i de høje 40 bit (højst 2^40 forskellige), rækken i de lave 24 (højst 16 mio. titler)
+                    gramPairs[p++] = (gramKey(word, i) << 24) | row;
+                }
+                words[w] = word;
+                wordRowsUnsorted[w] = row;
+                wordOrder[w] = w;
+                w++;
+            }
+        }
+        Arrays.sort(gramPairs);
+
+        // CSR-layout: distinkte trigrammer, start-offsets og postings (dubletter fra samme titel fjernes)
+        long[] gramKeys = new long[pairs];
+        int[] gramStart = new int[pairs + 1];
+        int[] postings = new int[pairs];
+        int grams = 0;
+        int posting = 0;
+        for (int i = 0; i < pairs; i++) {
+            long key = gramPairs[i] >>> 24;
+            int row = (int) (gramPairs[i] & 0xFFFFFF);
+            if (grams == 0 || gramKeys[grams - 1] != key) {
+                gramKeys[grams] = key;
+                gramStart[grams] = posting;
+                grams++;
+            } else if (postings[posting - 1] == row) {
+                continue;
+            }
+            postings[posting++] = row;
+        }
+        gramStart[grams] = posting;
+
+        Arrays.sort(wordOrder, Comparator.comparing((Integer i) -> words[i]));
+        String[] sortedWords = new String[wordCount];
+        int[] wordRows = new int[wordCount];
+        for (int i = 0; i < wordCount; i++) {
+            sortedWords[i] = words[wordOrder[i]];
+            wordRows[i] = wordRowsUnsorted[wordOrder[i]];
+        }
+
+        return new Snapshot(movies, titleWords, Arrays.copyOf(gramKeys, grams), Arrays.copyOf(gramStart, grams + 1),
+                Arrays.copyOf(postings, posting), sortedWords, wordRows);
+    }
+
+    // Tre tegn pakket i 40 bit. Efter normalize er tegnene bogstaver og tal, som regel ASCII. Større tegn beskæres til 13 bit.
+    private static long gramKey(String word, int offset) {
+        return ((long) (word.charAt(offset) & 0x1FFF) << 26)
+                | ((long) (word.charAt(offset + 1) & 0x1FFF) << 13)
+                | (word.charAt(offset + 2) & 0x1FFF);
+    }
+
+    private static int lowerBound(String[] sorted, String key) {
+        int low = 0;
+        int high = sorted.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (sorted[mid].compareTo(key) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private static String[] words(String text) {
+        String normalized = PromptCache.normalize(text);
+        return normalized.isEmpty() ? new String[0] : normalized.split(" ");
+    }
+}
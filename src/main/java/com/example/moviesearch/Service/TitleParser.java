@@ -0,0 +1,51 @@
+package com.example.moviesearch.Service;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+// Parser AI'ens kommaseparerede svar ("The Matrix, Inception, Blade Runner 2049") til filmtitler.
+public final class TitleParser {
+
+    private TitleParser() {
+    }
+
+    // Pars den kommaseparerede streng til en liste af titler
+    public static List<String> parse(String aiResponseContent) {
+        if (aiResponseContent == null) {
+            return List.of();
+        }
+        return Arrays.stream(aiResponseContent.split(","))
+                .map(String::trim) // Trim whitespace med ->
+                .filter(s -> !s.isEmpty()) // Fjern tomme strenge
+                .collect(Collectors.toList());
+    }
+
+    // Samme parsing, men på et svar der kommer i bidder (streaming).
+    // En titel sendes videre så snart kommaet efter den er modtaget, den sidste når strømmen slutter.
+    public static Flux<String> parseIncrementally(Flux<String> tokens) {
+        return Flux.defer(() -> {
+            StringBuilder buffer = new StringBuilder();
+            return tokens
+                    .concatMapIterable(token -> {
+                        buffer.append(token);
+                        List<String> completed = new ArrayList<>();
+                        int comma;
+                        while ((comma = buffer.indexOf(",")) >= 0) {
+                            String title = buffer.substring(0, comma).trim();
+                            buffer.delete(0, comma + 1);
+                            if (!title.isEmpty()) {
+                                completed.add(title);
+                            }
+                        }
+                        return completed;
+                    })
+                    .concatWith(Mono.fromSupplier(() -> buffer.toString().trim())
+                            .filter(title -> !title.isEmpty()));
+        });
+    }
+}
@@ -0,0 +1,115 @@
+package com.example.moviesearch.Service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.core.codec.DecodingException;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Mono;
+
+import java.io.IOException;
+
+// Al kommunikation med TMDB går igennem her.
+// Samtidige kald til præcis samme URL bliver samlet til ét kald (SingleFlight), så en trafikspids
+// på fx /popular eller /{id} ikke sender hundredvis af ens requests til TMDB.
+@Component
+public class TmdbClient {
+
+    private final WebClient webClient;
+    private final ObjectMapper objectMapper;
+    private final UpstreamArchive archive;
+    private final SingleFlight<String, Object> singleFlight = new SingleFlight<>();
+    private final UpstreamLimiter limiter;
+
+    // Timeout, circuit breaker og hedging pr. endpoint-familie (tmdb.timeout.*, tmdb.breaker.*, tmdb.hedge.*)
+    private final UpstreamCallPolicy searchPolicy;
+    private final UpstreamCallPolicy detailsPolicy;
+    private final UpstreamCallPolicy discoverPolicy;
+    private final UpstreamCallPolicy listsPolicy;
+
+    // WebClient med TMDB base url og connection pool kommer fra UpstreamClientConfig
+    // UpstreamLimiter holder os under TMDB's rate limit (tmdb.limit.*)
+    // UpstreamArchive kan optage eller afspille svarene (movie.upstream-archive.*)
+    public TmdbClient(@Qualifier("tmdbWebClient") WebClient webClient, ObjectMapper objectMapper,
+                      UpstreamArchive archive, Environment environment, MeterRegistry meterRegistry) {
+        this.webClient = webClient;
+        this.objectMapper = objectMapper;
+        this.archive = archive;
+        this.limiter = new UpstreamLimiter("tmdb", environment, meterRegistry);
+        this.searchPolicy = new UpstreamCallPolicy("tmdb", "search", environment, meterRegistry);
+        this.detailsPolicy = new UpstreamCallPolicy("tmdb", "details", environment, meterRegistry);
+        this.discoverPolicy = new UpstreamCallPolicy("tmdb", "discover", environment, meterRegistry);
+        this.listsPolicy = new UpstreamCallPolicy("tmdb", "lists", environment, meterRegistry);
+
+        FunctionCounter.builder("movie.upstream.coalesced", singleFlight, SingleFlight::getJoinedCount)
+                .description("Kald der delte svar med et identisk kald der allerede var i gang")
+                .tag("upstream", "tmdb")
+                .register(meterRegistry);
+        Gauge.builder("movie.upstream.inflight", singleFlight, SingleFlight::getInFlightCount)
+                .tag("upstream", "tmdb")
+                .register(meterRegistry);
+    }
+
+    // Dekoder de rå bytes fra TMDB, fx TmdbMovieDecoder::decodePage
+    @FunctionalInterface
+    public interface BodyDecoder<T> {
+        T decode(byte[] body) throws IOException;
+    }
+
+    // Fælles GET mod TMDB, dekodet med Jackson til responseType.
+    public <T> Mono<T> get(String url, Class<T> responseType) {
+        return get(url, responseType, body -> objectMapper.readValue(body, responseType));
+    }
+
+    // GET mod TMDB med egen dekoder. Nøglen er svar-typen plus den fulde URL.
+    // Rækkefølge: samles med identiske kald -> arkiv (replay) -> breaker -> rate limit -> timeout/hedging -> TMDB
+    // Svaret hentes som bytes og dekodes her, så de rå bytes kan optages i arkivet.
+    public <T> Mono<T> get(String url, Class<T> responseType, BodyDecoder<T> decoder) {
+        UpstreamCallPolicy policy = policyFor(url);
+        String archiveKey = withoutApiKey(url);
+        return singleFlight.execute(responseType.getName() + " " + url,
+                        () -> archive.replay("tmdb", archiveKey)
+                                .switchIfEmpty(Mono.defer(() -> policy.apply(limiter, 0,
+                                        () -> archive.record("tmdb", archiveKey, fetch(url)))))
+                                .map(body -> decode(body, decoder)))
+                .cast(responseType);
+    }
+
+    private Mono<byte[]> fetch(String url) {
+        return webClient.get()
+                .uri(url)
+                .retrieve() // Anmod og hent svar
+                .bodyToMono(byte[].class);
+    }
+
+    private Object decode(byte[] body, BodyDecoder<?> decoder) {
+        try {
+            return decoder.decode(body); // Konverter svar til dto
+        } catch (IOException e) {
+            throw new DecodingException("Ugyldigt svar fra TMDB: " + e.getMessage(), e);
+        }
+    }
+
+    // api_key skal hverken i arkivet eller være en del af nøglen, så et arkiv kan afspilles uden nøgle
+    static String withoutApiKey(String url) {
+        return url.replaceAll("api_key=[^&]*&?", "");
+    }
+
+    // /search/movie, /movie/{id}, /discover/movie, og resten (/movie/popular, /movie/now_playing, /genre/movie/list)
+    private UpstreamCallPolicy policyFor(String url) {
+        if (url.startsWith("/search/")) {
+            return searchPolicy;
+        }
+        if (url.startsWith("/discover/")) {
+            return discoverPolicy;
+        }
+        if (url.startsWith("/movie/") && url.length() > 7 && Character.isDigit(url.charAt(7))) {
+            return detailsPolicy;
+        }
+        return listsPolicy;
+    }
+}
@@ -0,0 +1,163 @@
+package com.example.moviesearch.Service;
+
+import com.example.moviesearch.Model.GenreDto;
+import com.example.moviesearch.Model.MovieDto;
+import com.example.moviesearch.Model.MoviePage;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+// Dekoder TMDB's film-JSON direkte til MovieDto med Jacksons streaming-API (JsonParser),
+// i stedet for først at bygge TMDB's eget objekt-træ og derefter kopiere det over.
+// Felter vi ikke bruger (backdrop_path, popularity, vote_count osv.) springes over uden at blive læst ind,
+// og genrer deles: genre_ids slås op i GenreTable, og fulde genre-objekter genbruger GenreTable's
+// instanser når navnet er det samme. Svaret fra /movie/{id} har "genres", listerne har "genre_ids".
+@Component
+public class TmdbMovieDecoder {
+
+    private final JsonFactory jsonFactory;
+    private final GenreTable genreTable;
+
+    public TmdbMovieDecoder(ObjectMapper objectMapper, GenreTable genreTable) {
+        this.jsonFactory = objectMapper.getFactory();
+        this.genreTable = genreTable;
+    }
+
+    // En side fra /movie/popular, /movie/now_playing, /discover/movie eller /search/movie
+    public MoviePage decodePage(byte[] body) throws IOException {
+        try (JsonParser parser = jsonFactory.createParser(body)) {
+            expect(parser, parser.nextToken(), JsonToken.START_OBJECT);
+            List<MovieDto> results = List.of();
+            int page = 0;
+            int totalPages = 0;
+            String field;
+            while ((field = parser.nextFieldName()) != null) {
+                JsonToken value = parser.nextToken();
+                switch (field) {
+                    case "page" -> page = value == JsonToken.VALUE_NUMBER_INT ? parser.getIntValue() : 0;
+                    case "total_pages" -> totalPages = value == JsonToken.VALUE_NUMBER_INT ? parser.getIntValue() : 0;
+                    case "results" -> results = readMovies(parser, value);
+                    default -> parser.skipChildren();
+                }
+            }
+            return new MoviePage(results, page, totalPages);
+        }
+    }
+
+    // Én film fra /movie/{id}
+    public MovieDto decodeMovie(byte[] body) throws IOException {
+        try (JsonParser parser = jsonFactory.createParser(body)) {
+            return readMovie(parser, parser.nextToken());
+        }
+    }
+
+    private List<MovieDto> readMovies(JsonParser parser, JsonToken token) throws IOException {
+        if (token != JsonToken.START_ARRAY) {
+            parser.skipChildren();
+            return List.of();
+        }
+        List<MovieDto> movies = new ArrayList<>(20); // TMDB's sider har 20 film
+        JsonToken next;
+        while ((next = parser.nextToken()) != JsonToken.END_ARRAY) {
+            movies.add(readMovie(parser, next));
+        }
+        return movies;
+    }
+
+    private MovieDto readMovie(JsonParser parser, JsonToken token) throws IOException {
+        expect(parser, token, JsonToken.START_OBJECT);
+        MovieDto movie = new MovieDto();
+        List<GenreDto> genres = null;
+        List<GenreDto> genresFromIds = null;
+        String field;
+        while ((field = parser.nextFieldName()) != null) {
+            JsonToken value = parser.nextToken();
+            switch (field) {
+                case "id" -> movie.setId(value == JsonToken.VALUE_NUMBER_INT ? parser.getIntValue() : null);
+                case "title" -> movie.setTitle(text(parser, value));
+                case "release_date" -> movie.setReleaseDate(text(parser, value));
+                case "vote_average" -> movie.setVoteAverage(value.isNumeric() ? parser.getDoubleValue() : null);
+                case "poster_path" -> movie.setPosterPath(text(parser, value));
+                case "overview" -> movie.setOverview(text(parser, value));
+                case "genres" -> genres = readGenres(parser, value);
+                case "genre_ids" -> genresFromIds = readGenreIds(parser, value);
+                default -> parser.skipChildren();
+            }
+        }
+        // Samme prioritet som før: fulde genre-objekter, ellers id'er slået op i GenreTable, ellers ingen
+        if (genres != null && !genres.isEmpty()) {
+            movie.setGenres(genres);
+        } else if (genresFromIds != null && !genresFromIds.isEmpty()) {
+            movie.setGenres(genresFromIds);
+        } else {
+            movie.setGenres(List.of());
+        }
+        return movie;
+    }
+
+    private List<GenreDto> readGenreIds(JsonParser parser, JsonToken token) throws IOException {
+        if (token != JsonToken.START_ARRAY) {
+            parser.skipChildren();
+            return null;
+        }
+        List<GenreDto> genres = new ArrayList<>(4);
+        JsonToken next;
+        while ((next = parser.nextToken()) != JsonToken.END_ARRAY) {
+            if (next == JsonToken.VALUE_NUMBER_INT) {
+                genres.add(genreTable.resolve(parser.getIntValue())); // Delt GenreDto, "N/A" hvis ukendt
+            }
+        }
+        return genres;
+    }
+
+    private List<GenreDto> readGenres(JsonParser parser, JsonToken token) throws IOException {
+        if (token != JsonToken.START_ARRAY) {
+            parser.skipChildren();
+            return null;
+        }
+        List<GenreDto> genres = new ArrayList<>(4);
+        JsonToken next;
+        while ((next = parser.nextToken()) != JsonToken.END_ARRAY) {
+            expect(parser, next, JsonToken.START_OBJECT);
+            Integer id = null;
+            String name = null;
+            String field;
+            while ((field = parser.nextFieldName()) != null) {
+                JsonToken value = parser.nextToken();
+                switch (field) {
+                    case "id" -> id = value == JsonToken.VALUE_NUMBER_INT ? parser.getIntValue() : null;
+                    case "name" -> name = text(parser, value);
+                    default -> parser.skipChildren();
+                }
+            }
+            GenreDto known = id != null ? genreTable.lookup(id) : null;
+            genres.add(known != null && Objects.equals(known.getName(), name) ? known : new GenreDto(id, name));
+        }
+        return genres;
+    }
+
+    private static String text(JsonParser parser, JsonToken token) throws IOException {
+        if (token == JsonToken.VALUE_NULL) {
+            return null;
+        }
+        if (!token.isScalarValue()) {
+            parser.skipChildren();
+            return null;
+        }
+        return parser.getText();
+    }
+
+    private static void expect(JsonParser parser, JsonToken actual, JsonToken expected) throws IOException {
+        if (actual != expected) {
+            throw new IOException("Uventet JSON fra TMDB: forventede " + expected + ", fik " + actual
+                    + " ved " + parser.currentLocation());
+        }
+    }
+}
@@ -0,0 +1,264 @@
+package com.example.moviesearch.Service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Optagelse og afspilning af de rå svar fra TMDB og OpenAI (movie.upstream-archive.mode):
+//   off          standard, alt går til upstream
+//   record       alle svar (også 404 o.l.) gemmes i arkivet
+//   replay       svar serveres fra arkivet, upstream kaldes aldrig (kræver ingen API-nøgler). Mangler et svar, fejler kaldet
+//   warm-start   hvert arkiveret svar serveres én gang (fx når cachen fyldes ved opstart), derefter går alt til upstream
+// Arkivet er to filer:
+//   <path>.dat   bodies efter hinanden, hver som [int længde][bytes]
+//   <path>.idx   indeks, hver post er [long nøgle-hash][long offset i .dat][int HTTP-status][int latency ms]
+// Nøglen er upstream plus request (TMDB: URL uden api_key, OpenAI: hash af request-JSON'en). Senere poster vinder.
+// Ved afspilning ventes den optagede latency, eller intet med movie.upstream-archive.replay-latency=zero.
+// I record-mode skrives svarene i rækkefølge på én boundedElastic-worker (som i SummaryStore),
+// så Netty-tråden der modtog svaret, aldrig venter på disken.
+@Component
+public class UpstreamArchive {
+
+    private static final Logger log = LoggerFactory.getLogger(UpstreamArchive.class);
+    private static final int INDEX_RECORD_BYTES = Long.BYTES + Long.BYTES + Integer.BYTES + Integer.BYTES;
+
+    enum Mode { OFF, RECORD, REPLAY, WARM_START }
+
+    private final Mode mode;
+    private final Path dataPath;
+    private final Path indexPath;
+    private final boolean recordedLatency;
+
+    private final Map<Long, Entry> index = new ConcurrentHashMap<>();
+    // Låsen beskytter skrivning til de to filer, så close ikke lukker dem midt i en skrivning.
+    // ReentrantLock så virtuelle tråde ikke bliver pinned.
+    final ReentrantLock writeLock = new ReentrantLock();
+    private final Scheduler.Worker writer = Schedulers.boundedElastic().createWorker();
+    private FileChannel data;
+    private FileChannel indexChannel;
+
+    public UpstreamArchive(@Value("${movie.upstream-archive.mode:off}") String mode,
+                           @Value("${movie.upstream-archive.path:data/upstream-archive}") String path,
+                           @Value("${movie.upstream-archive.replay-latency:recorded}") String replayLatency) {
+        this.mode = Mode.valueOf(mode.trim().toUpperCase(Locale.ROOT).replace('-', '_'));
+        this.dataPath = Path.of(path + ".dat");
+        this.indexPath = Path.of(path + ".idx");
+        this.recordedLatency = !"zero".equalsIgnoreCase(replayLatency.trim());
+    }
+
+    private record Entry(long offset, int status, int latencyMillis) {
+    }
+
+    @PostConstruct
+    void open() throws IOException {
+        if (mode == Mode.OFF) {
+            return;
+        }
+        if (dataPath.getParent() != null) {
+            Files.createDirectories(dataPath.getParent());
+        }
+        if (mode == Mode.RECORD) {
+            data = FileChannel.open(dataPath, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            indexChannel = FileChannel.open(indexPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+            data.position(data.size());
+            log.info("Optager upstream-svar til {}", dataPath);
+            return;
+        }
+        if (!Files.exists(dataPath) || !Files.exists(indexPath)) {
+            throw new IllegalStateException("Intet upstream-arkiv at afspille: " + dataPath + " / " + indexPath);
+        }
+        data = FileChannel.open(dataPath, StandardOpenOption.READ);
+        loadIndex();
+        log.info("Afspiller {} upstream-svar fra {} ({})", index.size(), dataPath, mode);
+    }
+
+    // Skriver de ventende svar færdigt før filerne lukkes
+    @PreDestroy
+    void close() throws IOException {
+        flush();
+        writer.dispose();
+        writeLock.lock();
+        try {
+            if (indexChannel != null) {
+                indexChannel.force(false);
+                indexChannel.close();
+            }
+            if (data != null) {
+                data.close();
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    // Svaret fra arkivet for nøglen, eller tom hvis upstream skal kaldes.
+    // Et optaget fejlsvar (fx 404) gives igen som WebClientResponseException, ligesom WebClient ville.
+    public Mono<byte[]> replay(String upstream, String key) {
+        if (mode != Mode.REPLAY && mode != Mode.WARM_START) {
+            return Mono.empty();
+        }
+        long hash = hash(upstream, key);
+        Entry entry = mode == Mode.WARM_START ? index.remove(hash) : index.get(hash);
+        if (entry == null) {
+            return mode == Mode.REPLAY
+                    ? Mono.error(UpstreamUnavailableException.notArchived(upstream, key))
+                    : Mono.empty();
+        }
+        Mono<byte[]> body = Mono.fromCallable(() -> read(entry.offset()))
+                .flatMap(bytes -> entry.status() >= 200 && entry.status() < 300
+                        ? Mono.just(bytes)
+                        : Mono.error(WebClientResponseException.create(entry.status(), "", HttpHeaders.EMPTY, bytes,
+                        StandardCharsets.UTF_8)));
+        return recordedLatency && entry.latencyMillis() > 0
+                ? body.delaySubscription(Duration.ofMillis(entry.latencyMillis()))
+                : body;
+    }
+
+    // Som replay, men for streams (OpenAI's SSE). Hver linje i den gemte body er én event.
+    public Flux<String> replayMany(String upstream, String key) {
+        return replay(upstream, key)
+                .flatMapMany(bytes -> Flux.fromArray(new String(bytes, StandardCharsets.UTF_8).split("\n")))
+                .filter(event -> !event.isEmpty());
+    }
+
+    // Optager svaret fra upstream i record-mode. I de andre modes gives kaldet videre uændret.
+    public Mono<byte[]> record(String upstream, String key, Mono<byte[]> call) {
+        if (mode != Mode.RECORD) {
+            return call;
+        }
+        return Mono.defer(() -> {
+            long start = System.nanoTime();
+            return call
+                    .doOnNext(bytes -> append(upstream, key, 200, bytes, start))
+                    .doOnError(WebClientResponseException.class,
+                            e -> append(upstream, key, e.getStatusCode().value(), e.getResponseBodyAsByteArray(), start));
+        });
+    }
+
+    // Optager en stream af events, gemt samlet når strømmen er færdig
+    public Flux<String> recordMany(String upstream, String key, Flux<String> call) {
+        if (mode != Mode.RECORD) {
+            return call;
+        }
+        return Flux.defer(() -> {
+            long start = System.nanoTime();
+            List<String> events = new ArrayList<>();
+            return call
+                    .doOnNext(events::add)
+                    .doOnComplete(() -> append(upstream, key, 200,
+                            String.join("\n", events).getBytes(StandardCharsets.UTF_8), start));
+        });
+    }
+
+    // Venter til alle svar optaget indtil nu er på disken (bruges ved nedlukning og i tests)
+    void flush() {
+        CountDownLatch done = new CountDownLatch(1);
+        writer.schedule(done::countDown);
+        try {
+            if (!done.await(10, TimeUnit.SECONDS)) {
+                log.warn("UpstreamArchive nåede ikke at skrive færdigt til {}", dataPath);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Latency måles her, på tråden der fik svaret. Selve skrivningen lægges i kø på writer.
+    private void append(String upstream, String key, int status, byte[] body, long startNanos) {
+        int latencyMillis = (int) Math.min(Integer.MAX_VALUE, (System.nanoTime() - startNanos) / 1_000_000);
+        writer.schedule(() -> write(upstream, key, status, body, latencyMillis));
+    }
+
+    private void write(String upstream, String key, int status, byte[] body, int latencyMillis) {
+        writeLock.lock();
+        try {
+            long offset = data.size();
+            ByteBuffer bodyRecord = ByteBuffer.allocate(Integer.BYTES + body.length);
+            bodyRecord.putInt(body.length).put(body).flip();
+            while (bodyRecord.hasRemaining()) {
+                data.write(bodyRecord, offset + bodyRecord.position());
+            }
+            ByteBuffer indexRecord = ByteBuffer.allocate(INDEX_RECORD_BYTES);
+            indexRecord.putLong(hash(upstream, key)).putLong(offset).putInt(status).putInt(latencyMillis).flip();
+            while (indexRecord.hasRemaining()) {
+                indexChannel.write(indexRecord);
+            }
+        } catch (IOException e) {
+            // Optagelsen må ikke vælte requesten
+            log.warn("Kunne ikke optage {}-svar til {}: {}", upstream, dataPath, e.getMessage());
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    private byte[] read(long offset) throws IOException {
+        ByteBuffer length = ByteBuffer.allocate(Integer.BYTES);
+        readFully(length, offset);
+        ByteBuffer body = ByteBuffer.allocate(length.flip().getInt());
+        readFully(body, offset + Integer.BYTES);
+        return body.array();
+    }
+
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (data.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Upstream-arkivet er afkortet ved offset " + position);
+            }
+        }
+    }
+
+    private void loadIndex() throws IOException {
+        long dataSize = data.size();
+        byte[] bytes = Files.readAllBytes(indexPath);
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        // En halvt skrevet post til sidst (fx efter et nedbrud) springes over
+        while (buffer.remaining() >= INDEX_RECORD_BYTES) {
+            long hash = buffer.getLong();
+            long offset = buffer.getLong();
+            int status = buffer.getInt();
+            int latencyMillis = buffer.getInt();
+            if (offset + Integer.BYTES <= dataSize) {
+                index.put(hash, new Entry(offset, status, latencyMillis));
+            }
+        }
+    }
+
+    private static long hash(String upstream, String key) {
+        return SummaryStore.hash(upstream + " " + key);
+    }
+
+    public boolean isWarmStart() {
+        return mode == Mode.WARM_START;
+    }
+
+    // true i record, replay og warm-start
+    public boolean isActive() {
+        return mode != Mode.OFF;
+    }
+}
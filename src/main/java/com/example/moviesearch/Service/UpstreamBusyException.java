@@ -0,0 +1,12 @@
+package com.example.moviesearch.Service;
+
+// Kastes når et kald ikke kunne få plads hos upstream (rate limit / concurrency limit) inden for sin deadline.
+// Controllerne svarer 503 på den, i stedet for 500.
+public class UpstreamBusyException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    public UpstreamBusyException(String upstream) {
+        super("Upstream " + upstream + " er optaget, prøv igen om lidt");
+    }
+}
@@ -0,0 +1,201 @@
+package com.example.moviesearch.Service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.core.env.Environment;
+import org.springframework.web.reactive.function.client.WebClientRequestException;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+// Timeout, circuit breaker og (valgfrit) hedging for én endpoint-familie hos en upstream,
+// fx tmdb.search, tmdb.details, tmdb.discover eller openai.chat.
+// Konfiguration (med <upstream>.<familie> som fx tmdb.details):
+//   <upstream>.timeout.<familie>          deadline pr. kald
+//   <upstream>.breaker.*                  fælles breaker-indstillinger for upstreamen
+//   <upstream>.hedge.families             familier hvor hedging er slået til (kun idempotente GETs)
+// Hedging: svarer det første kald ikke inden for p95 af de seneste latencies, sendes et kald mere
+// (hvis limiter har plads), og det svar der kommer først bruges. Det skærer halen af latency-fordelingen på sider med mange TMDB-kald.
+public class UpstreamCallPolicy {
+
+    private static final int LATENCY_SAMPLES = 256;
+
+    private final String upstream;
+    private final String family;
+    private final String name;
+    private final MeterRegistry meterRegistry;
+    private final Duration timeout;
+    private final CircuitBreaker breaker;
+    private final boolean hedge;
+    private final Duration hedgeMinDelay;
+
+    // Ringbuffer med de seneste latencies i nanosekunder, til p95
+    private final ReentrantLock latencyLock = new ReentrantLock();
+    private final long[] latencies = new long[LATENCY_SAMPLES];
+    private int latencyCount;
+    private int latencyPosition;
+
+    private final Counter hedged;
+    private final Counter shortCircuited;
+
+    public UpstreamCallPolicy(String upstream, String family, Environment environment, MeterRegistry meterRegistry) {
+        this.upstream = upstream;
+        this.family = family;
+        this.name = upstream + "." + family;
+        this.meterRegistry = meterRegistry;
+        this.timeout = environment.getProperty(upstream + ".timeout." + family, Duration.class, Duration.ofSeconds(5));
+
+        String breakerPrefix = upstream + ".breaker.";
+        this.breaker = new CircuitBreaker(name,
+                environment.getProperty(breakerPrefix + "window", Integer.class, 20),
+                environment.getProperty(breakerPrefix + "minimum-calls", Integer.class, 10),
+                environment.getProperty(breakerPrefix + "failure-rate", Double.class, 50.0),
+                environment.getProperty(breakerPrefix + "open-duration", Duration.class, Duration.ofSeconds(30)),
+                environment.getProperty(breakerPrefix + "half-open-calls", Integer.class, 3));
+
+        String[] hedgeFamilies = environment.getProperty(upstream + ".hedge.families", String[].class, new String[0]);
+        this.hedge = Arrays.asList(hedgeFamilies).contains(family);
+        this.hedgeMinDelay = environment.getProperty(upstream + ".hedge.min-delay", Duration.class, Duration.ofMillis(50));
+
+        Gauge.builder("movie.upstream.breaker.state", breaker, b -> b.getState().ordinal())
+                .description("0 = closed, 1 = open, 2 = half-open")
+                .tag("breaker", name)
+                .register(meterRegistry);
+        this.hedged = Counter.builder("movie.upstream.hedged")
+                .description("Ekstra kald sendt fordi det første var langsommere end p95")
+                .tag("breaker", name)
+                .register(meterRegistry);
+        this.shortCircuited = Counter.builder("movie.upstream.breaker.rejected")
+                .description("Kald afvist med det samme fordi breakeren var åben")
+                .tag("breaker", name)
+                .register(meterRegistry);
+    }
+
+    // Kaldet sendes gennem limiter, og timeout og latency-måling starter først når limiter har givet en plads.
+    // Når køen er løbet ud, bliver det til UpstreamBusyException, som breakeren ignorerer.
+    public <T> Mono<T> apply(UpstreamLimiter limiter, long estimatedTokens, Supplier<Mono<T>> call) {
+        return Mono.defer(() -> {
+            if (!breaker.tryAcquire()) {
+                shortCircuited.increment();
+                return Mono.error(new UpstreamUnavailableException(name));
+            }
+            Mono<T> result;
+            if (hedge) {
+                // Hedge-uret starter først når det første kald er sendt, ikke mens det står i kø.
+                // Hedget sendes kun hvis limiter har en ledig plads lige nu; ellers venter vi bare på det første.
+                Sinks.Empty<Void> sent = Sinks.empty();
+                Mono<T> first = limiter.execute(estimatedTokens, () -> {
+                    sent.tryEmitEmpty();
+                    return attempt(call);
+                });
+                Mono<T> second = sent.asMono()
+                        .then(Mono.defer(() -> Mono.delay(hedgeDelay())))
+                        .then(limiter.tryExecute(estimatedTokens, () -> {
+                            hedged.increment();
+                            return attempt(call);
+                        }))
+                        .onErrorResume(UpstreamBusyException.class, e -> Mono.never());
+                // firstWithSignal: det første svar vinder, også en fejl som 404, og det andet kald annulleres
+                result = Mono.firstWithSignal(first, second);
+            } else {
+                result = limiter.execute(estimatedTokens, () -> attempt(call));
+            }
+            return result
+                    .doOnSuccess(v -> breaker.onSuccess())
+                    .doOnError(this::recordFailure)
+                    .doOnCancel(breaker::onIgnored);
+        });
+    }
+
+    // Streams (OpenAI med stream=true) får kun breakeren. Timeout og hedging giver ikke mening for dem.
+    public <T> Flux<T> applyMany(Supplier<Flux<T>> call) {
+        return Flux.defer(() -> {
+            if (!breaker.tryAcquire()) {
+                shortCircuited.increment();
+                return Flux.error(new UpstreamUnavailableException(name));
+            }
+            return call.get()
+                    .doOnComplete(breaker::onSuccess)
+                    .doOnError(this::recordFailure)
+                    .doOnCancel(breaker::onIgnored);
+        });
+    }
+
+    // Hvert forsøg (også hedgede) måles i movie.upstream.requests med outcome = success/exception-type/cancelled.
+    // Kører inden for limiter's plads, så tiden i køen hverken tæller med i timeout eller latency.
+    private <T> Mono<T> attempt(Supplier<Mono<T>> call) {
+        return Mono.defer(() -> {
+            long start = System.nanoTime();
+            return call.get()
+                    .timeout(timeout)
+                    .doOnSuccess(v -> {
+                        long elapsed = System.nanoTime() - start;
+                        recordLatency(elapsed);
+                        recordRequest(elapsed, "success");
+                    })
+                    .doOnError(e -> recordRequest(System.nanoTime() - start, e.getClass().getSimpleName()))
+                    .doOnCancel(() -> recordRequest(System.nanoTime() - start, "cancelled"));
+        });
+    }
+
+    private void recordRequest(long nanos, String outcome) {
+        Timer.builder("movie.upstream.requests")
+                .tag("upstream", upstream)
+                .tag("family", family)
+                .tag("outcome", outcome)
+                .register(meterRegistry)
+                .record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    // Kun fejl der siger noget om upstreams helbred tæller: timeouts, netværksfejl og 5xx.
+    // 404 og andre 4xx er "rigtige" svar. Vores egen rate limiting (UpstreamBusyException) tæller ikke med.
+    private void recordFailure(Throwable e) {
+        if (e instanceof UpstreamBusyException) {
+            breaker.onIgnored();
+        } else if (e instanceof TimeoutException
+                || e instanceof WebClientRequestException
+                || (e instanceof WebClientResponseException response && response.getStatusCode().is5xxServerError())) {
+            breaker.onFailure();
+        } else {
+            breaker.onSuccess();
+        }
+    }
+
+    private void recordLatency(long nanos) {
+        latencyLock.lock();
+        try {
+            latencies[latencyPosition] = nanos;
+            latencyPosition = (latencyPosition + 1) % LATENCY_SAMPLES;
+            latencyCount = Math.min(latencyCount + 1, LATENCY_SAMPLES);
+        } finally {
+            latencyLock.unlock();
+        }
+    }
+
+    // p95 af de seneste latencies. Indtil vi har nok målinger, ventes halvdelen af timeout.
+    private Duration hedgeDelay() {
+        long[] copy;
+        latencyLock.lock();
+        try {
+            if (latencyCount < 20) {
+                return timeout.dividedBy(2);
+            }
+            copy = Arrays.copyOf(latencies, latencyCount);
+        } finally {
+            latencyLock.unlock();
+        }
+        Arrays.sort(copy);
+        long p95 = copy[(int) Math.ceil(copy.length * 0.95) - 1];
+        return Duration.ofNanos(Math.max(p95, hedgeMinDelay.toNanos()));
+    }
+}
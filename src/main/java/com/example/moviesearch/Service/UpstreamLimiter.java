@@ -0,0 +1,280 @@
+package com.example.moviesearch.Service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.core.env.Environment;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.util.retry.Retry;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+// Begrænser hvor hårdt vi rammer en upstream (TMDB eller OpenAI).
+// Tre ting skal være opfyldt før et kald sendes:
+//   1. Token bucket for requests pr. sekund (<upstream>.limit.rate / burst)
+//   2. Valgfri token bucket for OpenAI-tokens pr. minut (<upstream>.limit.tokens-per-minute)
+//   3. Adaptiv concurrency-grænse: vokser langsomt ved gode svar, skæres ned ved 429 eller stigende latency (AIMD)
+// Kan et kald ikke sendes med det samme, venter det i op til <upstream>.limit.queue-timeout,
+// og ellers fejler det med UpstreamBusyException. Et 429-svar prøves igen (inden for samme deadline).
+public class UpstreamLimiter {
+
+    private static final Duration MAX_POLL = Duration.ofMillis(10);
+
+    private final String upstream;
+    private final ReentrantLock lock = new ReentrantLock();
+
+    // Requests pr. sekund
+    private final double rate;
+    private final double burst;
+    private double requestTokens;
+
+    // OpenAI-tokens pr. minut (0 = ingen grænse). Må gå i minus når det faktiske forbrug var større end skønnet.
+    private final double tokensPerMinute;
+    private double budgetTokens;
+
+    private long lastRefillNanos = System.nanoTime();
+    private long blockedUntilNanos; // Sat efter et 429, hvor upstream har bedt os vente
+
+    // Adaptiv concurrency
+    private final double minConcurrency;
+    private final double maxConcurrency;
+    private final double latencyTolerance;
+    private double concurrencyLimit;
+    private int inFlight;
+    private double smoothedLatencyNanos;
+
+    private final Duration queueTimeout;
+    private final int maxRetries;
+
+    private final Counter throttled;
+    private final Counter rejected;
+
+    public UpstreamLimiter(String upstream, Environment environment, MeterRegistry meterRegistry) {
+        String prefix = upstream + ".limit.";
+        this.upstream = upstream;
+        this.rate = environment.getProperty(prefix + "rate", Double.class, 40.0);
+        this.burst = environment.getProperty(prefix + "burst", Double.class, rate);
+        this.tokensPerMinute = environment.getProperty(prefix + "tokens-per-minute", Double.class, 0.0);
+        this.minConcurrency = environment.getProperty(prefix + "min-concurrency", Double.class, 2.0);
+        this.maxConcurrency = environment.getProperty(prefix + "max-concurrency", Double.class, 64.0);
+        this.latencyTolerance = environment.getProperty(prefix + "latency-tolerance", Double.class, 2.0);
+        this.queueTimeout = environment.getProperty(prefix + "queue-timeout", Duration.class, Duration.ofSeconds(2));
+        this.maxRetries = environment.getProperty(prefix + "max-retries", Integer.class, 2);
+        this.requestTokens = burst;
+        this.budgetTokens = tokensPerMinute;
+        this.concurrencyLimit = maxConcurrency;
+
+        Gauge.builder("movie.upstream.limit.concurrency", this, l -> l.concurrencyLimit)
+                .description("Nuværende adaptive concurrency-grænse")
+                .tag("upstream", upstream)
+                .register(meterRegistry);
+        Gauge.builder("movie.upstream.limit.inflight", this, l -> l.inFlight)
+                .tag("upstream", upstream)
+                .register(meterRegistry);
+        Gauge.builder("movie.upstream.limit.token-budget", this, l -> l.budgetTokens)
+                .description("Tilbageværende OpenAI-tokens i det nuværende minut")
+                .tag("upstream", upstream)
+                .register(meterRegistry);
+        this.throttled = Counter.builder("movie.upstream.limit.throttled")
+                .description("Antal 429-svar fra upstream")
+                .tag("upstream", upstream)
+                .register(meterRegistry);
+        this.rejected = Counter.builder("movie.upstream.limit.rejected")
+                .description("Kald der gav op efter at have ventet hele queue-timeout")
+                .tag("upstream", upstream)
+                .register(meterRegistry);
+    }
+
+    // Kører kaldet når der er plads. estimatedTokens er kun relevant for OpenAI (0 for TMDB).
+    // call hentes først når pladsen er givet, så en timeout i den måler kun selve kaldet og ikke ventetiden.
+    public <T> Mono<T> execute(long estimatedTokens, Supplier<Mono<T>> call) {
+        return run(estimatedTokens, () -> call.get().flux(), true, queueTimeout, maxRetries).singleOrEmpty();
+    }
+
+    // Som execute, men kun hvis der er plads lige nu: ingen kø og ingen nye forsøg ved 429.
+    // Ellers UpstreamBusyException. Bruges til hedgede kald, som ikke må fortrænge almindelige kald.
+    public <T> Mono<T> tryExecute(long estimatedTokens, Supplier<Mono<T>> call) {
+        return run(estimatedTokens, () -> call.get().flux(), true, Duration.ZERO, 0).singleOrEmpty();
+    }
+
+    // Til streams (OpenAI med stream=true). Hele streamens varighed siger intet om upstreams latency,
+    // så den bruges ikke til at justere concurrency-grænsen.
+    public <T> Flux<T> executeMany(long estimatedTokens, Supplier<Flux<T>> call) {
+        return run(estimatedTokens, call, false, queueTimeout, maxRetries);
+    }
+
+    private <T> Flux<T> run(long estimatedTokens, Supplier<Flux<T>> call, boolean sampleLatency,
+                            Duration maxWait, int retries) {
+        return Flux.defer(() -> {
+            long deadline = System.nanoTime() + maxWait.toNanos();
+            return acquire(estimatedTokens, deadline, !maxWait.isZero())
+                    .thenMany(Flux.defer(() -> {
+                        long start = System.nanoTime();
+                        // retryWhen sender et cancel efter en fejl, så uden vagten blev pladsen frigivet to gange
+                        AtomicBoolean released = new AtomicBoolean();
+                        Consumer<Throwable> done = e -> {
+                            if (released.compareAndSet(false, true)) {
+                                release(latency(start, sampleLatency), e);
+                            }
+                        };
+                        // Et afbrudt kald (tabt hedge, timeout, klienten gik) siger intet om upstream:
+                        // pladsen gives tilbage, men grænsen og latency-normalen røres ikke
+                        return call.get()
+                                .doOnComplete(() -> done.accept(null))
+                                .doOnError(done)
+                                .doOnCancel(() -> {
+                                    if (released.compareAndSet(false, true)) {
+                                        freeSlot();
+                                    }
+                                });
+                    }))
+                    // Kun 429 prøves igen. Ét samlet filter: RetrySpec.filter erstatter et tidligere filter.
+                    // Når forsøgene er brugt, sendes selve 429-fejlen videre og ikke en RetryExhaustedException.
+                    .retryWhen(Retry.max(retries)
+                            .filter(e -> isThrottled(e) && System.nanoTime() < deadline)
+                            .onRetryExhaustedThrow((spec, signal) -> signal.failure()));
+        });
+    }
+
+    private static long latency(long start, boolean sampleLatency) {
+        return sampleLatency ? System.nanoTime() - start : -1;
+    }
+
+    // Når OpenAI har fortalt hvor mange tokens kaldet faktisk brugte, rettes budgettet til.
+    public void adjustTokens(long estimatedTokens, long actualTokens) {
+        if (tokensPerMinute <= 0) {
+            return;
+        }
+        lock.lock();
+        try {
+            budgetTokens -= (actualTokens - estimatedTokens);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Et kald der aldrig måtte vente (tryExecute), tæller ikke med i movie.upstream.limit.rejected
+    private Mono<Void> acquire(long estimatedTokens, long deadline, boolean queued) {
+        return Mono.defer(() -> {
+            long waitNanos = tryAcquire(estimatedTokens);
+            if (waitNanos == 0) {
+                return Mono.empty();
+            }
+            if (System.nanoTime() + waitNanos > deadline) {
+                if (queued) {
+                    rejected.increment();
+                }
+                return Mono.error(new UpstreamBusyException(upstream));
+            }
+            Duration wait = Duration.ofNanos(Math.min(waitNanos, MAX_POLL.toNanos()));
+            return Mono.delay(wait).then(acquire(estimatedTokens, deadline, queued));
+        });
+    }
+
+    // 0 hvis der blev taget en plads, ellers et skøn over hvor længe der skal ventes.
+    private long tryAcquire(long estimatedTokens) {
+        lock.lock();
+        try {
+            long now = System.nanoTime();
+            refill(now);
+            if (now < blockedUntilNanos) {
+                return blockedUntilNanos - now;
+            }
+            if (inFlight >= (int) concurrencyLimit) {
+                return MAX_POLL.toNanos(); // Vi ved ikke hvornår et kald bliver færdigt, så vi prøver igen snart
+            }
+            if (requestTokens < 1) {
+                return (long) ((1 - requestTokens) / rate * 1_000_000_000L);
+            }
+            if (tokensPerMinute > 0 && budgetTokens < estimatedTokens) {
+                double missing = estimatedTokens - budgetTokens;
+                return (long) (missing / tokensPerMinute * 60_000_000_000L);
+            }
+            requestTokens -= 1;
+            budgetTokens -= tokensPerMinute > 0 ? estimatedTokens : 0;
+            inFlight++;
+            return 0;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void refill(long now) {
+        double elapsedSeconds = (now - lastRefillNanos) / 1_000_000_000.0;
+        lastRefillNanos = now;
+        requestTokens = Math.min(burst, requestTokens + elapsedSeconds * rate);
+        if (tokensPerMinute > 0) {
+            budgetTokens = Math.min(tokensPerMinute, budgetTokens + elapsedSeconds * tokensPerMinute / 60.0);
+        }
+    }
+
+    // AIMD: ved 429 eller en latency langt over normalen skæres grænsen ned med 30 %,
+    // ellers vokser den med ca. 1 pr. "runde" af kald.
+    private void release(long latencyNanos, Throwable error) {
+        boolean wasThrottled = isThrottled(error);
+        if (wasThrottled) {
+            throttled.increment();
+        }
+        lock.lock();
+        try {
+            inFlight = Math.max(0, inFlight - 1);
+            boolean slow = latencyNanos >= 0 && smoothedLatencyNanos > 0
+                    && latencyNanos > smoothedLatencyNanos * latencyTolerance;
+            if (wasThrottled || slow) {
+                concurrencyLimit = Math.max(minConcurrency, concurrencyLimit * 0.7);
+            } else {
+                concurrencyLimit = Math.min(maxConcurrency, concurrencyLimit + 1.0 / concurrencyLimit);
+            }
+            if (wasThrottled) {
+                // Giv upstream et øjeblik (Retry-After hvis den er sat), før næste kald sendes
+                blockedUntilNanos = Math.max(blockedUntilNanos, System.nanoTime() + retryAfter(error).toNanos());
+            } else if (error == null && latencyNanos >= 0) {
+                smoothedLatencyNanos = smoothedLatencyNanos == 0
+                        ? latencyNanos
+                        : smoothedLatencyNanos * 0.9 + latencyNanos * 0.1;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void freeSlot() {
+        lock.lock();
+        try {
+            inFlight = Math.max(0, inFlight - 1);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Den udglattede latency som "langsomt" måles mod (0 før første måling). Til tests.
+    double baselineLatencyNanos() {
+        lock.lock();
+        try {
+            return smoothedLatencyNanos;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private boolean isThrottled(Throwable e) {
+        return e instanceof WebClientResponseException response
+                && response.getStatusCode().value() == HttpStatus.TOO_MANY_REQUESTS.value();
+    }
+
+    private Duration retryAfter(Throwable e) {
+        String header = ((WebClientResponseException) e).getHeaders().getFirst("Retry-After");
+        try {
+            return header != null ? Duration.ofSeconds(Long.parseLong(header.trim())) : Duration.ofSeconds(1);
+        } catch (NumberFormatException ignored) {
+            return Duration.ofSeconds(1); // Retry-After kan også være en dato, så bruger vi bare et sekund
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package com.example.moviesearch.Service;
+
+// Kastes uden at kalde upstream, når circuit breakeren for en endpoint-familie er åben
+// (for mange fejl/timeouts i træk), eller når et svar mangler i upstream-arkivet under replay.
+// Controllerne svarer 503 på den.
+public class UpstreamUnavailableException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    public UpstreamUnavailableException(String breakerName) {
+        super("Circuit breaker " + breakerName + " er åben, upstream kaldes ikke lige nu");
+    }
+
+    private UpstreamUnavailableException(String upstream, String key) {
+        super("Intet optaget " + upstream + "-svar for " + key + " (movie.upstream-archive.mode=replay)");
+    }
+
+    static UpstreamUnavailableException notArchived(String upstream, String key) {
+        return new UpstreamUnavailableException(upstream, key);
+    }
+}
@@ -1,11 +1,36 @@
 package com.example.moviesearch;
 
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
 
-@SpringBootTest
+import java.nio.file.Path;
+
+// Konteksten startes uden netværk og uden at skrive i arbejdsmappen: ingen opvarmning eller genre-opdatering ved opstart,
+// TMDB og OpenAI peger på en port hvor intet lytter, og alle filer (opsummeringer, plakater, arkiv) ligger i en temp-mappe.
+@SpringBootTest(properties = {
+        "movie.warmup.enabled=false",
+        "movie.genre-table.refresh-enabled=false",
+        "movie.upstream-archive.mode=off",
+        "tmdb.base.url=http://localhost:1",
+        "tmdb.images.base-url=http://localhost:1",
+        "openai.base.url=http://localhost:1",
+        "openai.url=http://localhost:1/chat/completions"
+})
 class MovieSearchApplicationTests {
 
+    @TempDir
+    static Path dataDir;
+
+    @DynamicPropertySource
+    static void dataPaths(DynamicPropertyRegistry registry) {
+        registry.add("movie.summary-store.path", () -> dataDir.resolve("ai-summaries.log").toString());
+        registry.add("movie.posters.dir", () -> dataDir.resolve("posters").toString());
+        registry.add("movie.upstream-archive.path", () -> dataDir.resolve("upstream-archive").toString());
+    }
+
     @Test
     void contextLoads() {
     }
@@ -0,0 +1,86 @@
+package com.example.moviesearch.Service;
+
+import com.example.moviesearch.Model.MovieDto;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.time.LocalTime;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class CacheWarmerTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final MovieService movieService = mock(MovieService.class);
+
+    private CacheWarmer warmer(long tokenBudget, String offPeak) {
+        return new CacheWarmer(movieService, meterRegistry, true, 4, 10, tokenBudget, true, offPeak, "Europe/Copenhagen");
+    }
+
+    // 60 film, og hver opsummering koster 1000 tokens i movie.openai.tokens ligesom et rigtigt OpenAI-kald
+    private AtomicInteger sixtyMoviesAtThousandTokensEach() {
+        List<MovieDto> movies = IntStream.rangeClosed(1, 60).mapToObj(id -> {
+            MovieDto movie = new MovieDto();
+            movie.setId(id);
+            return movie;
+        }).toList();
+        Counter tokens = Counter.builder("movie.openai.tokens").register(meterRegistry);
+        AtomicInteger summarized = new AtomicInteger();
+        when(movieService.refreshCachedLists(anyInt())).thenReturn(Mono.just(0L));
+        when(movieService.fetchPopularMovies()).thenReturn(Mono.just(movies));
+        when(movieService.fetchNowPlayingMovies()).thenReturn(Mono.just(List.of()));
+        when(movieService.fetchMovieDetails(anyInt()))
+                .thenAnswer(call -> Mono.just(movies.get((Integer) call.getArgument(0) - 1)));
+        when(movieService.precomputeAiSummary(any())).thenAnswer(call -> Mono.fromCallable(() -> {
+            summarized.incrementAndGet();
+            tokens.increment(1_000);
+            return true;
+        }).delayElement(Duration.ofMillis(5)));
+        return summarized;
+    }
+
+    // Bidder på 10 film: efter 2 bidder er 20.000 brugt (under 25.000), så 3. bid sendes, og derefter stopper det
+    @Test
+    void stopsSendingChunksOnceTheBudgetIsSpent() throws InterruptedException {
+        AtomicInteger summarized = sixtyMoviesAtThousandTokensEach();
+
+        warmer(25_000, "").warmOnStartup();
+
+        await().atMost(Duration.ofSeconds(5))
+                .until(() -> meterRegistry.get("movie.warmup.summaries").counter().count() >= 30);
+        Thread.sleep(300); // Giv en eventuel 4. bid tid til at blive sendt
+        assertThat(summarized).hasValue(30);
+    }
+
+    @Test
+    void noSummariesWhenTheBudgetIsZero() throws InterruptedException {
+        AtomicInteger summarized = sixtyMoviesAtThousandTokensEach();
+
+        warmer(0, "").warmOnStartup();
+
+        Thread.sleep(300);
+        assertThat(summarized).hasValue(0);
+    }
+
+    @Test
+    void offPeakWindowMayCrossMidnight() {
+        CacheWarmer warmer = warmer(1, "22:00-05:00");
+
+        assertThat(warmer.isOffPeak(LocalTime.of(23, 0))).isTrue();
+        assertThat(warmer.isOffPeak(LocalTime.of(4, 59))).isTrue();
+        assertThat(warmer.isOffPeak(LocalTime.of(5, 0))).isFalse();
+        assertThat(warmer.isOffPeak(LocalTime.of(12, 0))).isFalse();
+        assertThat(warmer(1, "").isOffPeak(LocalTime.NOON)).isTrue();
+    }
+}
@@ -0,0 +1,108 @@
+package com.example.moviesearch.Service;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CircuitBreakerTest {
+
+    // Vindue på 4 kald, mindst 4 målinger, åbner ved 50 % fejl, 2 prøvekald i HALF_OPEN
+    private static CircuitBreaker breaker(Duration openDuration) {
+        return new CircuitBreaker("tmdb.details", 4, 4, 50.0, openDuration, 2);
+    }
+
+    private static void call(CircuitBreaker breaker, boolean fails) {
+        assertThat(breaker.tryAcquire()).isTrue();
+        if (fails) {
+            breaker.onFailure();
+        } else {
+            breaker.onSuccess();
+        }
+    }
+
+    @Test
+    void staysClosedUntilMinimumCallsAreRecorded() {
+        CircuitBreaker breaker = breaker(Duration.ofMinutes(1));
+        call(breaker, true);
+        call(breaker, true);
+        call(breaker, true);
+
+        assertThat(breaker.getState()).isEqualTo(CircuitBreaker.State.CLOSED);
+        call(breaker, true);
+        assertThat(breaker.getState()).isEqualTo(CircuitBreaker.State.OPEN);
+    }
+
+    @Test
+    void opensWhenFailureRateReachesThresholdAndRejectsCalls() {
+        CircuitBreaker breaker = breaker(Duration.ofMinutes(1));
+        call(breaker, false);
+        call(breaker, true);
+        call(breaker, false);
+        call(breaker, true);
+
+        assertThat(breaker.getState()).isEqualTo(CircuitBreaker.State.OPEN);
+        assertThat(breaker.tryAcquire()).isFalse();
+    }
+
+    @Test
+    void onlyTheLastWindowCallsCount() {
+        CircuitBreaker breaker = breaker(Duration.ofMinutes(1));
+        call(breaker, true);
+        for (int i = 0; i < 4; i++) {
+            call(breaker, false);
+        }
+        // Fejlen er skubbet ud af vinduet, så én ny fejl giver 25 %
+        call(breaker, true);
+        assertThat(breaker.getState()).isEqualTo(CircuitBreaker.State.CLOSED);
+    }
+
+    @Test
+    void halfOpenClosesAfterSuccessfulTrialCalls() throws InterruptedException {
+        CircuitBreaker breaker = opened(Duration.ofMillis(50));
+        Thread.sleep(60);
+
+        assertThat(breaker.tryAcquire()).isTrue();
+        assertThat(breaker.getState()).isEqualTo(CircuitBreaker.State.HALF_OPEN);
+        assertThat(breaker.tryAcquire()).isTrue();
+        assertThat(breaker.tryAcquire()).isFalse(); // Kun 2 prøvekald ad gangen
+        breaker.onSuccess();
+        breaker.onSuccess();
+
+        assertThat(breaker.getState()).isEqualTo(CircuitBreaker.State.CLOSED);
+        assertThat(breaker.tryAcquire()).isTrue();
+    }
+
+    @Test
+    void failedTrialCallOpensAgain() throws InterruptedException {
+        CircuitBreaker breaker = opened(Duration.ofMillis(50));
+        Thread.sleep(60);
+
+        assertThat(breaker.tryAcquire()).isTrue();
+        breaker.onFailure();
+        assertThat(breaker.getState()).isEqualTo(CircuitBreaker.State.OPEN);
+        assertThat(breaker.tryAcquire()).isFalse();
+    }
+
+    @Test
+    void ignoredTrialCallGivesItsPermitBack() throws InterruptedException {
+        CircuitBreaker breaker = opened(Duration.ofMillis(50));
+        Thread.sleep(60);
+
+        assertThat(breaker.tryAcquire()).isTrue();
+        assertThat(breaker.tryAcquire()).isTrue();
+        breaker.onIgnored();
+        assertThat(breaker.tryAcquire()).isTrue();
+        assertThat(breaker.tryAcquire()).isFalse();
+    }
+
+    private static CircuitBreaker opened(Duration openDuration) {
+        CircuitBreaker breaker = breaker(openDuration);
+        for (int i = 0; i < 4; i++) {
+            call(breaker, true);
+        }
+        assertThat(breaker.getState()).isEqualTo(CircuitBreaker.State.OPEN);
+        return breaker;
+    }
+}
@@ -0,0 +1,135 @@
+package com.example.moviesearch.Service;
+
+import com.example.moviesearch.Model.GenreDto;
+import com.example.moviesearch.Model.MovieDto;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class LocalMovieIndexTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    // min-movies 5, min-coverage 0.6, min-score 0.25, min-results 2, max-results 3
+    private LocalMovieIndex index(int dimensions) {
+        return new LocalMovieIndex(meterRegistry, true, dimensions, 10_000, 5, 0.6, 0.25f, 2, 3);
+    }
+
+    private static MovieDto movie(int id, String title, String overview, double vote, String... genres) {
+        MovieDto movie = new MovieDto();
+        movie.setId(id);
+        movie.setTitle(title);
+        movie.setOverview(overview);
+        movie.setVoteAverage(vote);
+        List<GenreDto> genreList = new ArrayList<>();
+        for (String genre : genres) {
+            genreList.add(new GenreDto(genre.length(), genre));
+        }
+        movie.setGenres(genreList);
+        return movie;
+    }
+
+    private static List<MovieDto> catalogue() {
+        return List.of(
+                movie(1, "Lassie", "En trofast hund finder hjem gennem bjergene", 7.0, "Familie"),
+                movie(2, "Beethoven", "En stor hund skaber kaos hos en familie", 6.0, "Komedie", "Familie"),
+                movie(3, "Marley og mig", "Et par og deres vilde hund gennem mange år", 7.5, "Drama", "Familie"),
+                movie(4, "Alien", "Besætningen på et rumskib jages af et væsen", 8.5, "Gyser", "Science Fiction"),
+                movie(5, "Interstellar", "Astronauter rejser gennem et ormehul i rummet", 8.6, "Science Fiction", "Drama"),
+                movie(6, "Heat", "En detektiv jagter en bankrøver gennem Los Angeles", 8.3, "Krimi", "Action"));
+    }
+
+    private double outcome(String outcome) {
+        return meterRegistry.get("movie.ai.local-retrieval").tag("outcome", outcome).counter().count();
+    }
+
+    @Test
+    void answersLocallyWhenThePromptIsWellCovered() {
+        LocalMovieIndex index = index(512);
+        index.addAll(catalogue());
+
+        List<MovieDto> result = index.answer("En familie med en hund");
+
+        assertThat(result).extracting(MovieDto::getId).containsExactlyInAnyOrder(1, 2, 3);
+        assertThat(outcome("local")).isEqualTo(1);
+    }
+
+    @Test
+    void tooFewMoviesFallsBack() {
+        LocalMovieIndex index = index(512);
+        index.addAll(catalogue().subList(0, 4));
+
+        assertThat(index.answer("hund")).isEmpty();
+        assertThat(outcome("fallback")).isEqualTo(1);
+    }
+
+    @Test
+    void promptWithMostlyUnknownWordsFallsBack() {
+        LocalMovieIndex index = index(512);
+        index.addAll(catalogue());
+
+        assertThat(index.answer("hund zebra giraf okapi")).isEmpty();
+    }
+
+    // Med 8 pladser deler næsten alle ord plads med et ord fra indekset. Coverage må alligevel kun tælle ord
+    // som faktisk findes i en film, ellers ville prompten nedenfor se 100 % kendt ud.
+    @Test
+    void coverageCountsWordsNotHashSlots() {
+        LocalMovieIndex index = index(8);
+        index.addAll(catalogue());
+
+        assertThat(index.answer("hund zebra giraf okapi")).isEmpty();
+        assertThat(index.answer("hund familie")).isNotEmpty();
+    }
+
+    @Test
+    void fewerThanMinResultsAboveMinScoreFallsBack() {
+        LocalMovieIndex index = index(512);
+        index.addAll(catalogue());
+
+        // Kun Alien handler om et rumskib
+        assertThat(index.answer("rumskib")).isEmpty();
+    }
+
+    @Test
+    void voteAverageBreaksTiesBetweenEquallyGoodMatches() {
+        LocalMovieIndex index = index(512);
+        index.addAll(catalogue());
+        index.addAll(List.of(
+                movie(10, "Ørkenstorm", "Kampvogne i ørkenen", 5.0, "Krig"),
+                movie(11, "Ørkenild", "Kampvogne i ørkenen", 9.0, "Krig")));
+
+        assertThat(index.answer("kampvogne i ørkenen")).extracting(MovieDto::getId).startsWith(11, 10);
+    }
+
+    // Et ord der forsvinder fra den eneste film der havde det, er ukendt igen
+    @Test
+    void updatingAMovieUpdatesTheVocabulary() {
+        LocalMovieIndex index = index(512);
+        index.addAll(catalogue());
+        index.addAll(List.of(
+                movie(20, "Ubåd", "Ubåden dykker", 6.0, "Krig"),
+                movie(21, "Ubåd 2", "Ubåden dykker igen", 6.0, "Krig")));
+        assertThat(index.answer("ubåd")).isNotEmpty();
+
+        index.addAll(List.of(
+                movie(20, "Sejlbåd", "Sejlbåden krydser", 6.0, "Drama"),
+                movie(21, "Sejlbåd 2", "Sejlbåden krydser igen", 6.0, "Drama")));
+        assertThat(index.size()).isEqualTo(8);
+        assertThat(index.answer("ubåd")).isEmpty();
+        assertThat(index.answer("sejlbåd")).extracting(MovieDto::getId).containsExactlyInAnyOrder(20, 21);
+    }
+
+    @Test
+    void disabledIndexNeverAnswers() {
+        LocalMovieIndex index = new LocalMovieIndex(meterRegistry, false, 512, 10_000, 0, 0.6, 0.25f, 1, 3);
+        index.addAll(catalogue());
+
+        assertThat(index.size()).isZero();
+        assertThat(index.answer("hund")).isEmpty();
+    }
+}
@@ -0,0 +1,139 @@
+package com.example.moviesearch.Service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.http.HttpStatus;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+import reactor.test.StepVerifier;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+
+class PosterCacheTest {
+
+    private static final byte[] IMAGE = new byte[100];
+
+    @TempDir
+    Path dir;
+
+    // "TMDB": 100 bytes for alle plakater, undtagen missing.jpg som giver 404. slow-*.jpg svarer efter 200 ms
+    private final AtomicInteger downloads = new AtomicInteger();
+    private final WebClient webClient = WebClient.builder()
+            .exchangeFunction(request -> {
+                String path = request.url().getPath();
+                if (path.endsWith("/missing.jpg")) {
+                    return Mono.just(ClientResponse.create(HttpStatus.NOT_FOUND).build());
+                }
+                downloads.incrementAndGet();
+                Mono<ClientResponse> response = Mono.just(ClientResponse.create(HttpStatus.OK)
+                        .body(Flux.just(DefaultDataBufferFactory.sharedInstance.wrap(IMAGE)))
+                        .build());
+                return path.contains("/slow-") ? response.delayElement(Duration.ofMillis(200)) : response;
+            })
+            .build();
+
+    private PosterCache cache(long maxBytes, Duration deleteDelay) throws IOException {
+        PosterCache cache = new PosterCache(webClient, new SimpleMeterRegistry(), dir.toString(),
+                DataSize.ofBytes(maxBytes), List.of("w500"), Duration.ofSeconds(5), deleteDelay);
+        cache.open();
+        return cache;
+    }
+
+    private static PosterCache.Poster fetch(PosterCache cache, String file) {
+        return cache.get("w500", file).block(Duration.ofSeconds(5));
+    }
+
+    @Test
+    void posterIsDownloadedOnceAndThenServedFromDisk() throws IOException {
+        PosterCache cache = cache(1_000, Duration.ZERO);
+
+        PosterCache.Poster poster = fetch(cache, "abc.jpg");
+        assertThat(poster.file()).isEqualTo(dir.resolve("w500/abc.jpg").toAbsolutePath());
+        assertThat(poster.length()).isEqualTo(100);
+        assertThat(poster.etag()).isEqualTo("\"w500-abc.jpg\"");
+        assertThat(cache.getCached("w500", "abc.jpg")).isEqualTo(poster);
+        assertThat(fetch(cache, "abc.jpg")).isEqualTo(poster);
+        assertThat(downloads).hasValue(1);
+    }
+
+    // Samtidige misses for samme plakat deler én download (SingleFlight)
+    @Test
+    void concurrentMissesShareOneDownload() throws IOException {
+        PosterCache cache = cache(1_000, Duration.ZERO);
+
+        List<PosterCache.Poster> posters = Flux.range(0, 20)
+                .flatMap(i -> cache.get("w500", "slow-abc.jpg").subscribeOn(Schedulers.parallel()))
+                .collectList()
+                .block(Duration.ofSeconds(5));
+
+        assertThat(posters).hasSize(20).containsOnly(cache.getCached("w500", "slow-abc.jpg"));
+        assertThat(downloads).hasValue(1);
+    }
+
+    @Test
+    void postersSurviveARestart() throws IOException {
+        fetch(cache(1_000, Duration.ZERO), "abc.jpg");
+
+        assertThat(cache(1_000, Duration.ZERO).getCached("w500", "abc.jpg")).isNotNull();
+    }
+
+    @Test
+    void unknownPosterIsEmptyAndInvalidNamesAreRejected() throws IOException {
+        PosterCache cache = cache(1_000, Duration.ZERO);
+
+        StepVerifier.create(cache.get("w500", "missing.jpg")).verifyComplete();
+        StepVerifier.create(cache.get("w500", "../secret.jpg")).expectError(IllegalArgumentException.class).verify();
+        assertThat(cache.isValid("w92", "abc.jpg")).isFalse();
+    }
+
+    // Den udsmidte fil bliver på disken i delete-delay, så en request der lige har fået den, kan nå at sende den
+    @Test
+    void evictedFileIsDeletedOnlyAfterTheDelay() throws IOException {
+        PosterCache cache = cache(150, Duration.ofMillis(300));
+        fetch(cache, "first.jpg");
+        fetch(cache, "second.jpg");
+
+        assertThat(cache.getCached("w500", "first.jpg")).isNull();
+        assertThat(dir.resolve("w500/first.jpg")).exists();
+        await().atMost(Duration.ofSeconds(3)).until(() -> !Files.exists(dir.resolve("w500/first.jpg")));
+        assertThat(dir.resolve("w500/second.jpg")).exists();
+    }
+
+    @Test
+    void posterFetchedAgainBeforeTheDelayIsNotDeleted() throws IOException, InterruptedException {
+        PosterCache cache = cache(150, Duration.ofMillis(200));
+        fetch(cache, "first.jpg");
+        fetch(cache, "second.jpg");
+        fetch(cache, "first.jpg");
+
+        Thread.sleep(500);
+        assertThat(dir.resolve("w500/first.jpg")).exists();
+        assertThat(cache.getCached("w500", "first.jpg")).isNotNull();
+    }
+
+    @Test
+    void fileDeletedOutsideTheAppIsFetchedAgain() throws IOException {
+        PosterCache cache = cache(1_000, Duration.ZERO);
+        fetch(cache, "abc.jpg");
+        Files.delete(dir.resolve("w500/abc.jpg"));
+
+        assertThat(cache.getCached("w500", "abc.jpg")).isNull();
+        assertThat(fetch(cache, "abc.jpg")).isNotNull();
+        assertThat(dir.resolve("w500/abc.jpg")).exists();
+        assertThat(downloads).hasValue(2);
+    }
+}
@@ -0,0 +1,93 @@
+package com.example.moviesearch.Service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class PromptCacheTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @TempDir
+    Path dir;
+
+    private PromptCache cache(Duration ttl, Path persistPath) {
+        PromptCache cache = new PromptCache(ttl, 100, persistPath == null ? "" : persistPath.toString(),
+                objectMapper, new SimpleMeterRegistry());
+        cache.load();
+        return cache;
+    }
+
+    @Test
+    void normalizeIgnoresCaseWhitespaceAndPunctuation() {
+        assertThat(PromptCache.normalize("Sjove  film om hunde!")).isEqualTo("sjove film om hunde");
+        assertThat(PromptCache.normalize("sjove film om hunde")).isEqualTo(PromptCache.normalize("  SJOVE film, om hunde?? "));
+    }
+
+    @Test
+    void normalizeWritesOutDanishLettersAndDropsAccents() {
+        assertThat(PromptCache.normalize("Ære, Øl og Åer")).isEqualTo("aere oel og aaer");
+        assertThat(PromptCache.normalize("Café Amélie")).isEqualTo("cafe amelie");
+        assertThat(PromptCache.normalize(null)).isEmpty();
+    }
+
+    @Test
+    void entriesSurviveSaveAndLoad() {
+        Path file = dir.resolve("prompts.json");
+        PromptCache first = cache(Duration.ofHours(1), file);
+        first.put("film om hunde", List.of("Lassie", "Beethoven"));
+        first.save();
+
+        assertThat(cache(Duration.ofHours(1), file).get("film om hunde")).containsExactly("Lassie", "Beethoven");
+    }
+
+    @Test
+    void entriesOlderThanTtlAreSkippedOnLoad() throws IOException {
+        Path file = dir.resolve("prompts.json");
+        long now = System.currentTimeMillis();
+        objectMapper.writeValue(file.toFile(), Map.of(
+                "gammel", Map.of("savedAt", now - Duration.ofHours(2).toMillis(), "titles", List.of("A")),
+                "ny", Map.of("savedAt", now, "titles", List.of("B"))));
+
+        PromptCache cache = cache(Duration.ofHours(1), file);
+        assertThat(cache.get("gammel")).isNull();
+        assertThat(cache.get("ny")).containsExactly("B");
+    }
+
+    @Test
+    void loadedEntriesOnlyLiveForTheirRemainingTtl() throws IOException, InterruptedException {
+        Path file = dir.resolve("prompts.json");
+        // Gemt for 2,5 sekunder siden med en TTL på 3 sekunder: har et halvt sekund tilbage, ikke 3 nye
+        objectMapper.writeValue(file.toFile(), Map.of(
+                "film om hunde", Map.of("savedAt", System.currentTimeMillis() - 2_500, "titles", List.of("Lassie"))));
+
+        PromptCache cache = cache(Duration.ofSeconds(3), file);
+        assertThat(cache.get("film om hunde")).containsExactly("Lassie");
+        Thread.sleep(1_000);
+        assertThat(cache.get("film om hunde")).isNull();
+    }
+
+    @Test
+    void saveKeepsTheOriginalWriteTime() throws IOException {
+        Path file = dir.resolve("prompts.json");
+        long savedAt = System.currentTimeMillis() - Duration.ofMinutes(30).toMillis();
+        objectMapper.writeValue(file.toFile(), Map.of(
+                "film om hunde", Map.of("savedAt", savedAt, "titles", List.of("Lassie"))));
+
+        cache(Duration.ofHours(1), file).save();
+
+        long resaved = objectMapper.readTree(file.toFile()).get("film om hunde").get("savedAt").asLong();
+        assertThat(resaved).isBetween(savedAt - 1_000, savedAt + 1_000);
+        assertThat(Files.exists(dir.resolve("prompts.json.tmp"))).isFalse();
+    }
+}
@@ -0,0 +1,77 @@
+package com.example.moviesearch.Service;
+
+import com.example.moviesearch.Model.GenreDto;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SerializedResponseCacheTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final SerializedResponseCache cache = new SerializedResponseCache(objectMapper, new SimpleMeterRegistry());
+
+    private static List<GenreDto> genres() {
+        return new ArrayList<>(List.of(new GenreDto(28, "Action"), new GenreDto(35, "Komedie")));
+    }
+
+    @Test
+    void sameListGivesTheSameBytes() {
+        List<GenreDto> genres = genres();
+
+        SerializedResponseCache.Body first = cache.get(genres);
+        assertThat(cache.get(genres)).isSameAs(first);
+    }
+
+    @Test
+    void bodyIsTheJsonOfTheList() throws IOException {
+        List<GenreDto> genres = genres();
+        SerializedResponseCache.Body body = cache.get(genres);
+
+        assertThat(body.identity()).isEqualTo(objectMapper.writeValueAsBytes(genres));
+        try (GZIPInputStream gzip = new GZIPInputStream(new ByteArrayInputStream(body.gzip()))) {
+            assertThat(gzip.readAllBytes()).isEqualTo(body.identity());
+        }
+    }
+
+    // Nøglen er listens identitet, men ETag kommer fra indholdet: en ny liste med samme indhold giver samme ETag
+    @Test
+    void etagDependsOnContentOnly() {
+        SerializedResponseCache.Body first = cache.get(genres());
+        SerializedResponseCache.Body refreshed = cache.get(genres());
+        List<GenreDto> changed = genres();
+        changed.get(1).setName("Comedy");
+
+        assertThat(refreshed).isNotSameAs(first);
+        assertThat(refreshed.etag()).isEqualTo(first.etag());
+        assertThat(cache.get(changed).etag()).isNotEqualTo(first.etag());
+    }
+
+    @Test
+    void identityAndGzipHaveDifferentQuotedEtags() {
+        SerializedResponseCache.Body body = cache.get(genres());
+
+        assertThat(body.etag()).startsWith("\"").endsWith("\"");
+        assertThat(body.gzipEtag()).isEqualTo(body.etag().replaceAll("\"$", "-gzip\""));
+    }
+
+    // Det er matches der afgør om MovieController svarer 304
+    @Test
+    void ifNoneMatchMatchesEitherVariantWeakTagsAndStar() {
+        SerializedResponseCache.Body body = cache.get(genres());
+
+        assertThat(body.matches(List.of(body.etag()))).isTrue();
+        assertThat(body.matches(List.of(body.gzipEtag()))).isTrue();
+        assertThat(body.matches(List.of("\"andet\"", "W/" + body.etag()))).isTrue();
+        assertThat(body.matches(List.of("*"))).isTrue();
+        assertThat(body.matches(List.of("\"andet\""))).isFalse();
+        assertThat(body.matches(List.of())).isFalse();
+    }
+}
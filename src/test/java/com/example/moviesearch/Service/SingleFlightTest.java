@@ -0,0 +1,53 @@
+package com.example.moviesearch.Service;
+
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.test.StepVerifier;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SingleFlightTest {
+
+    private final SingleFlight<String, Integer> singleFlight = new SingleFlight<>();
+    private final AtomicInteger calls = new AtomicInteger();
+
+    private Mono<Integer> call(String key) {
+        return singleFlight.execute(key, () -> Mono.fromCallable(calls::incrementAndGet));
+    }
+
+    @Test
+    void concurrentCallersShareOneCall() {
+        Sinks.One<Integer> upstream = Sinks.one();
+        Mono<Integer> first = singleFlight.execute("a", () -> upstream.asMono().doOnSubscribe(s -> calls.incrementAndGet()));
+        Mono<Integer> second = singleFlight.execute("a", () -> Mono.error(new AssertionError("ikke delt")));
+
+        StepVerifier.create(Mono.zip(first, second))
+                .then(() -> upstream.tryEmitValue(42))
+                .assertNext(both -> assertThat(both.toList()).containsExactly(42, 42))
+                .verifyComplete();
+        assertThat(calls).hasValue(1);
+        assertThat(singleFlight.getJoinedCount()).isEqualTo(1);
+        assertThat(singleFlight.getInFlightCount()).isZero();
+    }
+
+    // En kalder der reagerer på resultatet (fx en ny request lige efter), må ikke få det afsluttede kald igen
+    @Test
+    void callAfterTheResultStartsANewCall() {
+        StepVerifier.create(call("a").flatMap(first -> call("a")))
+                .expectNext(2)
+                .verifyComplete();
+        assertThat(calls).hasValue(2);
+    }
+
+    @Test
+    void errorIsSharedAndTheKeyIsFreedAgain() {
+        AtomicInteger attempts = new AtomicInteger();
+        Mono<Integer> failing = singleFlight.execute("a", () -> Mono.error(new IllegalStateException("fejl " + attempts.incrementAndGet())));
+
+        StepVerifier.create(failing).expectErrorMessage("fejl 1").verify();
+        StepVerifier.create(call("a")).expectNext(1).verifyComplete();
+    }
+}
@@ -0,0 +1,201 @@
+package com.example.moviesearch.Service;
+
+import com.example.moviesearch.Model.ChatCompletionRequest;
+import com.example.moviesearch.Model.ChatCompletionResponse;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Function;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class SummaryBatcherTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final OpenAiClient openAiClient = mock(OpenAiClient.class);
+    private final AiService aiService = new AiService(openAiClient, mock(PromptCache.class),
+            new ServiceMetrics(new SimpleMeterRegistry()), objectMapper);
+    // Film-id'erne i hvert kald til OpenAI, i den rækkefølge kaldene kom
+    private final List<List<Integer>> calls = new CopyOnWriteArrayList<>();
+    private final List<SummaryBatcher> opened = new ArrayList<>();
+
+    @AfterEach
+    void closeAll() {
+        opened.forEach(SummaryBatcher::close);
+    }
+
+    private SummaryBatcher batcher(Duration window, int maxSize) {
+        return batcher("off", window, maxSize);
+    }
+
+    private SummaryBatcher batcher(String archiveMode, Duration window, int maxSize) {
+        UpstreamArchive archive = new UpstreamArchive(archiveMode, "upstream-archive", "zero");
+        SummaryBatcher batcher = new SummaryBatcher(aiService, archive, new SimpleMeterRegistry(), true, window, maxSize, 4);
+        opened.add(batcher);
+        return batcher;
+    }
+
+    // "OpenAI": enkeltkald svarer "Tekst <id>", batches svarer med det reply giver for filmenes id'er
+    private void openAiReplies(Function<List<Integer>, String> reply) {
+        when(openAiClient.complete(any())).thenAnswer(call -> {
+            ChatCompletionRequest request = call.getArgument(0);
+            String user = request.getMessages().get(1).getContent();
+            if (request.getResponse_format() == null) {
+                String id = user.substring("Filmtitel: ".length(), user.indexOf('\n'));
+                calls.add(List.of(Integer.parseInt(id)));
+                return Mono.just(response("Tekst " + id));
+            }
+            List<Integer> ids = new ArrayList<>();
+            objectMapper.readTree(user).forEach(movie -> ids.add(movie.get("id").asInt()));
+            calls.add(ids);
+            return Mono.just(response(reply.apply(ids)));
+        });
+    }
+
+    private String summariesFor(List<Integer> ids) {
+        return ids.stream()
+                .map(id -> "\"" + id + "\": \"Tekst " + id + "\"")
+                .reduce((a, b) -> a + ", " + b)
+                .map(fields -> "{" + fields + "}")
+                .orElse("{}");
+    }
+
+    private static ChatCompletionResponse response(String content) {
+        ChatCompletionResponse.Message message = new ChatCompletionResponse.Message();
+        message.setContent(content);
+        ChatCompletionResponse.Choice choice = new ChatCompletionResponse.Choice();
+        choice.setMessage(message);
+        ChatCompletionResponse response = new ChatCompletionResponse();
+        response.setChoices(List.of(choice));
+        return response;
+    }
+
+    // Titlen er id'et, så enkeltkaldets prompt kan føres tilbage til filmen
+    private static Mono<String> summarize(SummaryBatcher batcher, int id) {
+        return batcher.summarize(id, String.valueOf(id), "overview " + id);
+    }
+
+    private static List<String> summarizeAll(SummaryBatcher batcher, int... ids) {
+        return Flux.fromStream(IntStream.of(ids).boxed())
+                .flatMapSequential(id -> summarize(batcher, id))
+                .collectList()
+                .block(Duration.ofSeconds(5));
+    }
+
+    @Test
+    void fullBatchIsSentWithoutWaitingForTheWindow() {
+        openAiReplies(this::summariesFor);
+        SummaryBatcher batcher = batcher(Duration.ofSeconds(30), 3);
+
+        assertThat(summarizeAll(batcher, 1, 2, 3)).containsExactly("Tekst 1", "Tekst 2", "Tekst 3");
+        assertThat(calls).containsExactly(List.of(1, 2, 3));
+    }
+
+    @Test
+    void windowSendsWhatHasArrived() {
+        openAiReplies(this::summariesFor);
+        SummaryBatcher batcher = batcher(Duration.ofMillis(50), 20);
+
+        assertThat(summarizeAll(batcher, 1, 2)).containsExactly("Tekst 1", "Tekst 2");
+        assertThat(calls).containsExactly(List.of(1, 2));
+    }
+
+    @Test
+    void batchLargerThanMaxSizeIsSplit() {
+        openAiReplies(this::summariesFor);
+        SummaryBatcher batcher = batcher(Duration.ofMillis(50), 2);
+
+        assertThat(summarizeAll(batcher, 1, 2, 3, 4, 5)).containsExactly("Tekst 1", "Tekst 2", "Tekst 3", "Tekst 4", "Tekst 5");
+        assertThat(calls).hasSize(3).allSatisfy(ids -> assertThat(ids).hasSizeLessThanOrEqualTo(2));
+    }
+
+    @Test
+    void singleMovieUsesTheSingleCall() {
+        openAiReplies(this::summariesFor);
+
+        assertThat(summarizeAll(batcher(Duration.ofMillis(20), 20), 7)).containsExactly("Tekst 7");
+        assertThat(calls).containsExactly(List.of(7));
+    }
+
+    // Med arkivet slået til skal hver film have sin egen request, så optagelse og afspilning giver samme nøgler
+    @Test
+    void everyMovieIsSentAloneWhenTheArchiveIsOn() {
+        openAiReplies(this::summariesFor);
+        SummaryBatcher batcher = batcher("replay", Duration.ofMillis(50), 20);
+
+        assertThat(summarizeAll(batcher, 1, 2, 3)).containsExactly("Tekst 1", "Tekst 2", "Tekst 3");
+        assertThat(calls).containsExactlyInAnyOrder(List.of(1), List.of(2), List.of(3));
+    }
+
+    @Test
+    void sameMovieTwiceIsSentOnceAndBothGetTheAnswer() {
+        openAiReplies(this::summariesFor);
+        SummaryBatcher batcher = batcher(Duration.ofMillis(50), 20);
+
+        assertThat(summarizeAll(batcher, 1, 2, 1)).containsExactly("Tekst 1", "Tekst 2", "Tekst 1");
+        assertThat(calls).containsExactly(List.of(1, 2));
+    }
+
+    @Test
+    void movieMissingFromTheAnswerGetsTheFallback() {
+        openAiReplies(ids -> "{\"1\": \"Tekst 1\", \"2\": \"  \", \"999\": \"ukendt film\"}");
+        SummaryBatcher batcher = batcher(Duration.ofMillis(50), 20);
+
+        assertThat(summarizeAll(batcher, 1, 2, 3))
+                .containsExactly("Tekst 1", AiService.SUMMARY_FALLBACK, AiService.SUMMARY_FALLBACK);
+    }
+
+    @Test
+    void invalidJsonGivesEveryoneTheFallback() {
+        openAiReplies(ids -> "{\"1\": \"Tekst 1\", \"2\": ");
+        SummaryBatcher batcher = batcher(Duration.ofMillis(50), 20);
+
+        assertThat(summarizeAll(batcher, 1, 2)).containsOnly(AiService.SUMMARY_FALLBACK);
+    }
+
+    @Test
+    void failedCallFailsEveryoneInTheBatch() {
+        when(openAiClient.complete(any())).thenReturn(Mono.error(new UpstreamBusyException("openai")));
+        SummaryBatcher batcher = batcher(Duration.ofMillis(50), 20);
+
+        StepVerifier.create(Flux.merge(summarize(batcher, 1), summarize(batcher, 2)))
+                .expectError(UpstreamBusyException.class)
+                .verify(Duration.ofSeconds(5));
+        StepVerifier.create(summarize(batcher, 3))
+                .expectError(UpstreamBusyException.class)
+                .verify(Duration.ofSeconds(5));
+    }
+
+    // Mange tråde på én gang: alle kommer med i et batch og får deres egen films tekst tilbage
+    @Test
+    void concurrentCallersAreAllBatchedAndMatchedBack() {
+        openAiReplies(this::summariesFor);
+        SummaryBatcher batcher = batcher(Duration.ofMillis(50), 20);
+
+        List<String> results = Flux.range(1, 200)
+                .parallel(16)
+                .runOn(Schedulers.parallel())
+                .flatMap(id -> summarize(batcher, id).map(summary -> id + "=" + summary))
+                .sequential()
+                .collectList()
+                .block(Duration.ofSeconds(10));
+
+        assertThat(results).containsExactlyInAnyOrderElementsOf(
+                IntStream.rangeClosed(1, 200).mapToObj(id -> id + "=Tekst " + id).toList());
+        assertThat(calls.stream().mapToInt(List::size).sum()).isEqualTo(200);
+    }
+}
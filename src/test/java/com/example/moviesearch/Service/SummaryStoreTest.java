@@ -0,0 +1,165 @@
+package com.example.moviesearch.Service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+
+class SummaryStoreTest {
+
+    @TempDir
+    Path dir;
+
+    private final List<SummaryStore> opened = new ArrayList<>();
+
+    @AfterEach
+    void closeAll() throws IOException {
+        for (SummaryStore store : opened) {
+            store.close();
+        }
+    }
+
+    private SummaryStore open(int maxEntries) throws IOException {
+        SummaryStore store = new SummaryStore(dir.resolve("summaries.log").toString(), maxEntries, true);
+        store.open();
+        opened.add(store);
+        return store;
+    }
+
+    // Lukker (og skriver færdigt) og åbner loggen igen, som ved en genstart
+    private SummaryStore reopen(SummaryStore store) throws IOException {
+        store.close();
+        opened.remove(store);
+        return open(10_000);
+    }
+
+    @Test
+    void putIsVisibleImmediatelyAndSurvivesRestart() throws IOException {
+        SummaryStore store = open(10_000);
+        store.put(1, "overview", "Kort opsummering med æøå");
+
+        assertThat(store.get(1, "overview")).isEqualTo("Kort opsummering med æøå");
+        assertThat(reopen(store).get(1, "overview")).isEqualTo("Kort opsummering med æøå");
+    }
+
+    @Test
+    void changedOverviewDropsTheSummaryAlsoAfterRestart() throws IOException {
+        SummaryStore store = open(10_000);
+        store.put(1, "gammel beskrivelse", "tekst");
+
+        assertThat(store.get(1, "ny beskrivelse")).isNull();
+        assertThat(store.get(1, "gammel beskrivelse")).isNull();
+        assertThat(reopen(store).get(1, "gammel beskrivelse")).isNull();
+    }
+
+    @Test
+    void invalidateWritesATombstone() throws IOException {
+        SummaryStore store = open(10_000);
+        store.put(1, "overview", "tekst");
+        store.put(2, "overview", "anden tekst");
+        store.invalidate(1);
+
+        SummaryStore reopened = reopen(store);
+        assertThat(reopened.get(1, "overview")).isNull();
+        assertThat(reopened.get(2, "overview")).isEqualTo("anden tekst");
+    }
+
+    @Test
+    void compactionKeepsOnlyTheLatestValues() throws IOException {
+        SummaryStore store = open(10_000);
+        for (int i = 0; i < 1_500; i++) {
+            store.put(i % 10, "overview", "version " + i);
+        }
+        store.flush();
+
+        // 1500 poster på hver ca. 30 bytes ville være over 40 KB uden compaction
+        assertThat(Files.size(dir.resolve("summaries.log"))).isLessThan(20_000);
+        SummaryStore reopened = reopen(store);
+        assertThat(reopened.size()).isEqualTo(10);
+        assertThat(reopened.get(9, "overview")).isEqualTo("version 1499");
+    }
+
+    // Mens filen er optaget (her holdt af en anden tråd, ellers fx en compaction med fsync) svarer get og put stadig
+    @Test
+    void indexIsUsableWhileTheFileIsBusy() throws IOException, InterruptedException {
+        SummaryStore store = open(10_000);
+        CountDownLatch held = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Thread busy = new Thread(() -> {
+            store.fileLock.lock();
+            try {
+                held.countDown();
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                store.fileLock.unlock();
+            }
+        });
+        busy.start();
+        held.await();
+
+        assertTimeoutPreemptively(Duration.ofSeconds(2), () -> {
+            for (int i = 0; i < 1_500; i++) {
+                store.put(i % 10, "overview", "version " + i);
+            }
+            assertThat(store.get(9, "overview")).isEqualTo("version 1499");
+            assertThat(store.size()).isEqualTo(10);
+        });
+        release.countDown();
+        busy.join();
+        assertThat(reopen(store).get(9, "overview")).isEqualTo("version 1499");
+    }
+
+    @Test
+    void halfWrittenRecordAtTheEndIsCutOff() throws IOException {
+        SummaryStore store = open(10_000);
+        store.put(1, "overview", "tekst");
+        store.close();
+        opened.remove(store);
+        // Header for en post på 100 bytes, men kun 3 bytes skrevet, som efter et nedbrud midt i en skrivning
+        Files.write(dir.resolve("summaries.log"), new byte[]{0, 0, 0, 2, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 100, 1, 2, 3},
+                StandardOpenOption.APPEND);
+
+        SummaryStore reopened = open(10_000);
+        assertThat(reopened.get(1, "overview")).isEqualTo("tekst");
+        assertThat(reopened.size()).isEqualTo(1);
+
+        reopened.put(3, "overview", "efter nedbrud");
+        assertThat(reopen(reopened).get(3, "overview")).isEqualTo("efter nedbrud");
+    }
+
+    @Test
+    void leastRecentlyUsedEntryIsEvicted() throws IOException {
+        SummaryStore store = open(2);
+        store.put(1, "overview", "en");
+        store.put(2, "overview", "to");
+        store.get(1, "overview");
+        store.put(3, "overview", "tre");
+
+        assertThat(store.get(1, "overview")).isEqualTo("en");
+        assertThat(store.get(2, "overview")).isNull();
+        assertThat(store.get(3, "overview")).isEqualTo("tre");
+    }
+
+    @Test
+    void disabledStoreKeepsNothing() throws IOException {
+        SummaryStore store = new SummaryStore(dir.resolve("disabled.log").toString(), 10, false);
+        store.open();
+        store.put(1, "overview", "tekst");
+
+        assertThat(store.get(1, "overview")).isNull();
+        assertThat(Files.exists(dir.resolve("disabled.log"))).isFalse();
+    }
+}
@@ -0,0 +1,154 @@
+package com.example.moviesearch.Service;
+
+import com.example.moviesearch.Model.MovieDto;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+
+class TitleIndexTest {
+
+    private static MovieDto movie(int id, String title, double vote) {
+        MovieDto movie = new MovieDto();
+        movie.setId(id);
+        movie.setTitle(title);
+        movie.setVoteAverage(vote);
+        return movie;
+    }
+
+    private static TitleIndex index(int maxTitles, Duration rebuildInterval, MovieDto... movies) {
+        TitleIndex index = new TitleIndex(new SimpleMeterRegistry(), true, maxTitles, rebuildInterval);
+        index.addAll(List.of(movies));
+        index.rebuild();
+        return index;
+    }
+
+    private static TitleIndex catalogue() {
+        return index(1_000, Duration.ofHours(1),
+                movie(1, "Gladiator", 8.2),
+                movie(2, "Gladiator II", 6.8),
+                movie(3, "Planet of the Apes", 6.7),
+                movie(4, "War for the Planet of the Apes", 7.2),
+                movie(5, "Dune", 7.8),
+                movie(6, "Dune: Part Two", 8.3),
+                movie(7, "Ødemarken", 6.0),
+                movie(8, "Duel", 7.3));
+    }
+
+    private static List<Integer> ids(List<MovieDto> movies) {
+        return movies.stream().map(MovieDto::getId).toList();
+    }
+
+    @Test
+    void trigramSearchFindsTitlesStartingWithTheWordMostPopularFirst() {
+        assertThat(ids(catalogue().search("gladi", 10))).containsExactly(1, 2);
+    }
+
+    // "du" er for kort til trigrammer og slås op som prefix i titelordene
+    @Test
+    void shortQueryUsesPrefixLookup() {
+        assertThat(ids(catalogue().search("du", 10))).containsExactly(6, 5, 8);
+    }
+
+    @Test
+    void everyQueryWordMustStartAWordInTheTitleInAnyOrder() {
+        TitleIndex index = catalogue();
+
+        assertThat(ids(index.search("planet of the ap", 10))).containsExactly(4, 3);
+        assertThat(ids(index.search("apes war", 10))).containsExactly(4);
+        assertThat(ids(index.search("dune two", 10))).containsExactly(6);
+        // "lane" er inde i "planet", men ikke starten af et ord
+        assertThat(index.search("lane", 10)).isEmpty();
+    }
+
+    @Test
+    void queryIsNormalizedLikeTheTitles() {
+        TitleIndex index = catalogue();
+
+        assertThat(ids(index.search("  DUNE:  ", 10))).containsExactly(6, 5);
+        assertThat(ids(index.search("oedem", 10))).containsExactly(7);
+    }
+
+    @Test
+    void limitStopsAtTheMostPopular() {
+        assertThat(ids(catalogue().search("d", 2))).containsExactly(6, 5);
+        assertThat(catalogue().search("dune", 0)).isEmpty();
+    }
+
+    @Test
+    void updatedMovieMovesToItsNewVote() {
+        TitleIndex index = catalogue();
+        index.add(movie(2, "Gladiator II", 9.0));
+        index.rebuild();
+
+        assertThat(ids(index.search("gladiator", 10))).containsExactly(2, 1);
+    }
+
+    @Test
+    void maxTitlesOnlyLimitsNewMovies() {
+        TitleIndex index = index(2, Duration.ofHours(1), movie(1, "Alien", 8.5), movie(2, "Aliens", 8.0));
+        index.addAll(List.of(movie(3, "Alien 3", 6.4), movie(2, "Aliens", 9.0)));
+        index.rebuild();
+
+        assertThat(ids(index.search("alien", 10))).containsExactly(2, 1);
+    }
+
+    @Test
+    void moviesWithoutIdOrTitleAreSkipped() {
+        MovieDto noTitle = movie(1, " ", 5.0);
+        MovieDto noId = movie(2, "Alien", 5.0);
+        noId.setId(null);
+
+        assertThat(index(10, Duration.ZERO, noTitle, noId).search("alien", 10)).isEmpty();
+    }
+
+    // Uden rebuild: snapshottet bygges i baggrunden, og search ser først de nye film bagefter
+    @Test
+    void snapshotIsRebuiltInTheBackground() {
+        TitleIndex index = new TitleIndex(new SimpleMeterRegistry(), true, 1_000, Duration.ofMillis(50));
+        index.add(movie(1, "Alien", 8.5));
+        await().atMost(Duration.ofSeconds(2)).until(() -> !index.search("alien", 10).isEmpty());
+
+        index.add(movie(2, "Aliens", 8.0));
+        await().atMost(Duration.ofSeconds(2)).until(() -> index.search("alien", 10).size() == 2);
+    }
+
+    // En bygning der fejler, må ikke efterlade indekset låst: næste addAll skal stadig give et nyt snapshot
+    @Test
+    void failedRebuildDoesNotFreezeTheIndex() {
+        AtomicBoolean broken = new AtomicBoolean(true);
+        MovieDto fragile = new MovieDto() {
+            @Override
+            public Double getVoteAverage() {
+                if (broken.get()) {
+                    throw new IllegalStateException("ødelagt film");
+                }
+                return 7.0;
+            }
+        };
+        fragile.setId(1);
+        fragile.setTitle("Alien");
+        TitleIndex index = new TitleIndex(new SimpleMeterRegistry(), true, 1_000, Duration.ofMillis(20));
+        // Sammen, så sorteringen i bygningen spørger fragile om vote_average
+        index.addAll(List.of(fragile, movie(2, "Aliens", 8.0)));
+        await().during(Duration.ofMillis(200)).atMost(Duration.ofSeconds(2)).until(() -> index.search("alien", 10).isEmpty());
+
+        broken.set(false);
+        index.add(movie(3, "Alien 3", 6.4));
+        await().atMost(Duration.ofSeconds(2)).until(() -> index.search("alien", 10).size() == 3);
+    }
+
+    @Test
+    void disabledIndexFindsNothing() {
+        TitleIndex index = new TitleIndex(new SimpleMeterRegistry(), false, 1_000, Duration.ZERO);
+        index.add(movie(1, "Alien", 8.5));
+        index.rebuild();
+
+        assertThat(index.search("alien", 10)).isEmpty();
+    }
+}
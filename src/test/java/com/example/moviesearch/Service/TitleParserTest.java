@@ -0,0 +1,57 @@
+package com.example.moviesearch.Service;
+
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+import reactor.test.StepVerifier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TitleParserTest {
+
+    @Test
+    void parseSplitsOnCommasAndTrims() {
+        assertThat(TitleParser.parse(" The Matrix,Inception ,  Blade Runner 2049 "))
+                .containsExactly("The Matrix", "Inception", "Blade Runner 2049");
+    }
+
+    @Test
+    void parseDropsEmptyTitles() {
+        assertThat(TitleParser.parse("Her,, ,Moon,")).containsExactly("Her", "Moon");
+        assertThat(TitleParser.parse("")).isEmpty();
+        assertThat(TitleParser.parse(null)).isEmpty();
+    }
+
+    @Test
+    void incrementalParsingEmitsEachTitleWhenItsCommaArrives() {
+        StepVerifier.create(TitleParser.parseIncrementally(Flux.just("The Ma", "trix, Incep", "tion,", " Blade Runner 2049")))
+                .expectNext("The Matrix")
+                .expectNext("Inception")
+                .expectNext("Blade Runner 2049")
+                .verifyComplete();
+    }
+
+    @Test
+    void incrementalParsingMatchesParseForTheSameText() {
+        String text = "Arrival, Ex Machina,,Moon , Gattaca";
+        Flux<String> tokens = Flux.fromArray(text.split("(?<=\\G.{3})"));
+
+        StepVerifier.create(TitleParser.parseIncrementally(tokens).collectList())
+                .assertNext(titles -> assertThat(titles).isEqualTo(TitleParser.parse(text)))
+                .verifyComplete();
+    }
+
+    @Test
+    void incrementalParsingOfAnEmptyStreamGivesNoTitles() {
+        StepVerifier.create(TitleParser.parseIncrementally(Flux.just(" ", ",")))
+                .verifyComplete();
+    }
+
+    // Flux.defer: hver subscriber har sin egen buffer
+    @Test
+    void eachSubscriptionParsesFromScratch() {
+        Flux<String> titles = TitleParser.parseIncrementally(Flux.just("Her, Mo", "on"));
+
+        StepVerifier.create(titles).expectNext("Her", "Moon").verifyComplete();
+        StepVerifier.create(titles).expectNext("Her", "Moon").verifyComplete();
+    }
+}
@@ -0,0 +1,119 @@
+package com.example.moviesearch.Service;
+
+import com.example.moviesearch.Model.GenreDto;
+import com.example.moviesearch.Model.MovieDto;
+import com.example.moviesearch.Model.MoviePage;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class TmdbMovieDecoderTest {
+
+    private final GenreTable genreTable = new GenreTable();
+    private final TmdbMovieDecoder decoder = new TmdbMovieDecoder(new ObjectMapper(), genreTable);
+
+    TmdbMovieDecoderTest() {
+        genreTable.update(List.of(new GenreDto(28, "Action"), new GenreDto(878, "Science Fiction")));
+    }
+
+    private static byte[] json(String json) {
+        return json.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    void decodesAListPageAndSkipsUnusedFields() throws IOException {
+        MoviePage page = decoder.decodePage(json("""
+                {"page": 2, "total_pages": 40, "total_results": 800,
+                 "results": [
+                   {"id": 603, "title": "The Matrix", "release_date": "1999-03-31", "vote_average": 8.2,
+                    "poster_path": "/matrix.jpg", "overview": "Neo", "backdrop_path": "/b.jpg",
+                    "popularity": 71.5, "genre_ids": [28, 878], "belongs_to_collection": {"id": 1, "parts": [1, 2]}},
+                   {"id": 604, "title": "The Matrix Reloaded", "vote_average": 7, "genre_ids": []}
+                 ]}
+                """));
+
+        assertThat(page.getPage()).isEqualTo(2);
+        assertThat(page.getTotalPages()).isEqualTo(40);
+        assertThat(page.getResults()).hasSize(2);
+        MovieDto matrix = page.getResults().get(0);
+        assertThat(matrix.getId()).isEqualTo(603);
+        assertThat(matrix.getTitle()).isEqualTo("The Matrix");
+        assertThat(matrix.getReleaseDate()).isEqualTo("1999-03-31");
+        assertThat(matrix.getVoteAverage()).isEqualTo(8.2);
+        assertThat(matrix.getPosterPath()).isEqualTo("/matrix.jpg");
+        assertThat(matrix.getOverview()).isEqualTo("Neo");
+        assertThat(matrix.getGenres()).extracting(GenreDto::getName).containsExactly("Action", "Science Fiction");
+        // Et heltal som vote_average er også en double, og ingen genrer giver en tom liste
+        assertThat(page.getResults().get(1).getVoteAverage()).isEqualTo(7.0);
+        assertThat(page.getResults().get(1).getGenres()).isEmpty();
+    }
+
+    @Test
+    void genreIdsShareTheTableInstancesAndUnknownIdsBecomeNa() throws IOException {
+        MoviePage page = decoder.decodePage(json("""
+                {"results": [{"id": 1, "genre_ids": [28, 99999]}, {"id": 2, "genre_ids": [28]}]}
+                """));
+
+        GenreDto action = page.getResults().get(0).getGenres().get(0);
+        assertThat(action).isSameAs(genreTable.lookup(28));
+        assertThat(page.getResults().get(1).getGenres().get(0)).isSameAs(action);
+        assertThat(page.getResults().get(0).getGenres().get(1)).isEqualTo(new GenreDto(99999, "N/A"));
+    }
+
+    @Test
+    void decodesDetailsWithFullGenreObjects() throws IOException {
+        MovieDto movie = decoder.decodeMovie(json("""
+                {"id": 603, "title": "The Matrix", "genres": [{"id": 28, "name": "Action"}, {"id": 878, "name": "Sci-Fi"}],
+                 "production_companies": [{"id": 79, "name": "Village Roadshow"}], "runtime": 136}
+                """));
+
+        assertThat(movie.getId()).isEqualTo(603);
+        // Samme navn som i tabellen: den delte instans. Et andet navn (fx et andet sprog) bevares
+        assertThat(movie.getGenres().get(0)).isSameAs(genreTable.lookup(28));
+        assertThat(movie.getGenres().get(1)).isEqualTo(new GenreDto(878, "Sci-Fi"));
+    }
+
+    @Test
+    void fullGenresWinOverGenreIds() throws IOException {
+        MovieDto movie = decoder.decodeMovie(json("""
+                {"id": 1, "genre_ids": [28], "genres": [{"id": 878, "name": "Science Fiction"}]}
+                """));
+
+        assertThat(movie.getGenres()).extracting(GenreDto::getId).containsExactly(878);
+    }
+
+    @Test
+    void nullAndUnexpectedValuesBecomeNull() throws IOException {
+        MovieDto movie = decoder.decodeMovie(json("""
+                {"id": "603", "title": null, "overview": {"text": "x"}, "vote_average": "8.2",
+                 "poster_path": null, "genre_ids": null}
+                """));
+
+        assertThat(movie.getId()).isNull();
+        assertThat(movie.getTitle()).isNull();
+        assertThat(movie.getOverview()).isNull();
+        assertThat(movie.getVoteAverage()).isNull();
+        assertThat(movie.getGenres()).isEmpty();
+    }
+
+    @Test
+    void pageWithoutResultsIsEmpty() throws IOException {
+        assertThat(decoder.decodePage(json("{\"page\": 1}")).getResults()).isEmpty();
+        assertThat(decoder.decodePage(json("{\"results\": null}")).getResults()).isEmpty();
+    }
+
+    @Test
+    void bodyThatIsNotAnObjectIsRejected() {
+        assertThatThrownBy(() -> decoder.decodePage(json("[1, 2]")))
+                .isInstanceOf(IOException.class)
+                .hasMessageContaining("START_OBJECT");
+        assertThatThrownBy(() -> decoder.decodeMovie(json("{\"id\": 1")))
+                .isInstanceOf(IOException.class);
+    }
+}
@@ -0,0 +1,199 @@
+package com.example.moviesearch.Service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+
+class UpstreamArchiveTest {
+
+    private static final String URL = "/movie/603?language=da-DK";
+    private static final byte[] BODY = "{\"id\":603,\"title\":\"The Matrix\"}".getBytes(StandardCharsets.UTF_8);
+
+    @TempDir
+    Path dir;
+
+    private final List<UpstreamArchive> opened = new ArrayList<>();
+
+    @AfterEach
+    void closeAll() throws IOException {
+        for (UpstreamArchive archive : opened) {
+            archive.close();
+        }
+    }
+
+    private UpstreamArchive open(String mode) throws IOException {
+        UpstreamArchive archive = new UpstreamArchive(mode, dir.resolve("archive").toString(), "zero");
+        archive.open();
+        opened.add(archive);
+        return archive;
+    }
+
+    // Optager et svar, et 404 og en stream, og lukker arkivet så det kan afspilles
+    private void recordSample() throws IOException {
+        UpstreamArchive recorder = open("record");
+        StepVerifier.create(recorder.record("tmdb", URL, Mono.just(BODY)))
+                .expectNext(BODY)
+                .verifyComplete();
+        StepVerifier.create(recorder.record("tmdb", "/movie/0", Mono.error(notFound())))
+                .expectError(WebClientResponseException.NotFound.class)
+                .verify();
+        StepVerifier.create(recorder.recordMany("openai", "stream", Flux.just("{\"a\":1}", "{\"b\":2}", "[DONE]")))
+                .expectNextCount(3)
+                .verifyComplete();
+        recorder.close();
+        opened.remove(recorder);
+    }
+
+    private static WebClientResponseException notFound() {
+        return WebClientResponseException.create(404, "Not Found", HttpHeaders.EMPTY,
+                "{\"status_code\":34}".getBytes(StandardCharsets.UTF_8), StandardCharsets.UTF_8);
+    }
+
+    @Test
+    void replayGivesBackTheRecordedBytes() throws IOException {
+        recordSample();
+        UpstreamArchive replay = open("replay");
+
+        StepVerifier.create(replay.replay("tmdb", URL))
+                .assertNext(bytes -> assertThat(bytes).isEqualTo(BODY))
+                .verifyComplete();
+        // Replay kan afspille det samme svar igen og igen
+        StepVerifier.create(replay.replay("tmdb", URL)).expectNextCount(1).verifyComplete();
+    }
+
+    @Test
+    void recordedErrorIsReplayedAsTheSameStatusAndBody() throws IOException {
+        recordSample();
+        UpstreamArchive replay = open("replay");
+
+        StepVerifier.create(replay.replay("tmdb", "/movie/0"))
+                .expectErrorSatisfies(e -> {
+                    assertThat(e).isInstanceOf(WebClientResponseException.NotFound.class);
+                    assertThat(((WebClientResponseException) e).getResponseBodyAsString()).isEqualTo("{\"status_code\":34}");
+                })
+                .verify();
+    }
+
+    @Test
+    void recordedStreamIsReplayedEventByEvent() throws IOException {
+        recordSample();
+        UpstreamArchive replay = open("replay");
+
+        StepVerifier.create(replay.replayMany("openai", "stream"))
+                .expectNext("{\"a\":1}", "{\"b\":2}", "[DONE]")
+                .verifyComplete();
+    }
+
+    @Test
+    void missingEntryFailsInReplayMode() throws IOException {
+        recordSample();
+        UpstreamArchive replay = open("replay");
+
+        StepVerifier.create(replay.replay("tmdb", "/movie/1"))
+                .expectError(UpstreamUnavailableException.class)
+                .verify();
+        // Samme URL hos en anden upstream er en anden nøgle
+        StepVerifier.create(replay.replay("openai", URL))
+                .expectError(UpstreamUnavailableException.class)
+                .verify();
+    }
+
+    @Test
+    void warmStartServesEachEntryOnceAndThenGoesLive() throws IOException {
+        recordSample();
+        UpstreamArchive warmStart = open("warm-start");
+
+        StepVerifier.create(warmStart.replay("tmdb", URL)).expectNextCount(1).verifyComplete();
+        StepVerifier.create(warmStart.replay("tmdb", URL)).verifyComplete();
+        StepVerifier.create(warmStart.replay("tmdb", "/movie/1")).verifyComplete();
+    }
+
+    @Test
+    void laterRecordingOfTheSameKeyWins() throws IOException {
+        recordSample();
+        UpstreamArchive recorder = open("record");
+        byte[] newer = "{\"id\":603,\"title\":\"Matrix\"}".getBytes(StandardCharsets.UTF_8);
+        StepVerifier.create(recorder.record("tmdb", URL, Mono.just(newer))).expectNextCount(1).verifyComplete();
+        recorder.close();
+        opened.remove(recorder);
+
+        StepVerifier.create(open("replay").replay("tmdb", URL))
+                .assertNext(bytes -> assertThat(bytes).isEqualTo(newer))
+                .verifyComplete();
+    }
+
+    // Svaret når frem selv om filerne er optaget (her holdt af en anden tråd), og skrives når de bliver ledige
+    @Test
+    void recordingDoesNotWaitForTheFiles() throws IOException, InterruptedException {
+        UpstreamArchive recorder = open("record");
+        CountDownLatch held = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Thread busy = new Thread(() -> {
+            recorder.writeLock.lock();
+            try {
+                held.countDown();
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                recorder.writeLock.unlock();
+            }
+        });
+        busy.start();
+        held.await();
+
+        assertTimeoutPreemptively(Duration.ofSeconds(2), () ->
+                StepVerifier.create(recorder.record("tmdb", URL, Mono.just(BODY))).expectNext(BODY).verifyComplete());
+        release.countDown();
+        busy.join();
+        recorder.close();
+        opened.remove(recorder);
+
+        StepVerifier.create(open("replay").replay("tmdb", URL))
+                .assertNext(bytes -> assertThat(bytes).isEqualTo(BODY))
+                .verifyComplete();
+    }
+
+    @Test
+    void halfWrittenIndexRecordIsSkipped() throws IOException {
+        recordSample();
+        Files.write(dir.resolve("archive.idx"), new byte[]{1, 2, 3, 4, 5}, StandardOpenOption.APPEND);
+
+        StepVerifier.create(open("replay").replay("tmdb", URL)).expectNextCount(1).verifyComplete();
+    }
+
+    @Test
+    void offModePassesCallsThroughAndWritesNothing() throws IOException {
+        UpstreamArchive off = open("off");
+
+        StepVerifier.create(off.record("tmdb", URL, Mono.just(BODY))).expectNext(BODY).verifyComplete();
+        StepVerifier.create(off.replay("tmdb", URL)).verifyComplete();
+        assertThat(Files.exists(dir.resolve("archive.dat"))).isFalse();
+    }
+
+    @Test
+    void replayWithoutAnArchiveFailsAtStartup() {
+        UpstreamArchive replay = new UpstreamArchive("replay", dir.resolve("missing").toString(), "zero");
+
+        assertThatThrownBy(replay::open).isInstanceOf(IllegalStateException.class);
+    }
+}
@@ -0,0 +1,141 @@
+package com.example.moviesearch.Service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.convert.ApplicationConversionService;
+import org.springframework.core.convert.support.ConfigurableConversionService;
+import org.springframework.mock.env.MockEnvironment;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class UpstreamCallPolicyTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final MockEnvironment environment = new MockEnvironment()
+            .withProperty("tmdb.timeout.details", "300ms")
+            .withProperty("tmdb.breaker.window", "2")
+            .withProperty("tmdb.breaker.minimum-calls", "2")
+            .withProperty("tmdb.limit.min-concurrency", "1")
+            .withProperty("tmdb.limit.max-concurrency", "1");
+
+    UpstreamCallPolicyTest() {
+        environment.setConversionService((ConfigurableConversionService) ApplicationConversionService.getSharedInstance());
+    }
+
+    private UpstreamCallPolicy policy() {
+        return new UpstreamCallPolicy("tmdb", "details", environment, meterRegistry);
+    }
+
+    private UpstreamLimiter limiter(String queueTimeout) {
+        environment.setProperty("tmdb.limit.queue-timeout", queueTimeout);
+        return new UpstreamLimiter("tmdb", environment, meterRegistry);
+    }
+
+    private double breakerState() {
+        return meterRegistry.get("movie.upstream.breaker.state").gauge().value();
+    }
+
+    // Kaldet venter 200 ms i køen og svarer efter yderligere 200 ms: over timeout i alt, men kun 200 ms efter pladsen
+    @Test
+    void timeoutStartsWhenTheLimiterGrantsASlot() {
+        UpstreamCallPolicy policy = policy();
+        UpstreamLimiter limiter = limiter("2s");
+        Sinks.One<String> blocker = Sinks.one();
+        policy.apply(limiter, 0, blocker::asMono).subscribe();
+        Mono.delay(Duration.ofMillis(200)).subscribe(tick -> blocker.tryEmitValue("første"));
+
+        Duration took = StepVerifier.create(policy.apply(limiter, 0,
+                        () -> Mono.just("anden").delayElement(Duration.ofMillis(200))))
+                .expectNext("anden")
+                .verifyComplete();
+        assertThat(took).isGreaterThan(Duration.ofMillis(300));
+    }
+
+    @Test
+    void slowCallTimesOutAndCountsAsAFailure() {
+        UpstreamCallPolicy policy = policy();
+        UpstreamLimiter limiter = limiter("2s");
+
+        for (int i = 0; i < 2; i++) {
+            StepVerifier.create(policy.apply(limiter, 0, Mono::never))
+                    .expectError(TimeoutException.class)
+                    .verify(Duration.ofSeconds(2));
+        }
+        assertThat(breakerState()).isEqualTo(CircuitBreaker.State.OPEN.ordinal());
+        StepVerifier.create(policy.apply(limiter, 0, () -> Mono.just("svar")))
+                .expectError(UpstreamUnavailableException.class)
+                .verify();
+    }
+
+    // Et kald der aldrig fik en plads, siger intet om upstreams helbred
+    @Test
+    void queueTimeoutIsUpstreamBusyAndDoesNotOpenTheBreaker() {
+        UpstreamCallPolicy policy = policy();
+        UpstreamLimiter limiter = limiter("50ms");
+        AtomicInteger started = new AtomicInteger();
+        Sinks.One<String> blocker = Sinks.one();
+
+        StepVerifier.create(policy.apply(limiter, 0, blocker::asMono))
+                .then(() -> {
+                    for (int i = 0; i < 3; i++) {
+                        StepVerifier.create(policy.apply(limiter, 0, () -> {
+                                    started.incrementAndGet();
+                                    return Mono.just("for sent");
+                                }))
+                                .expectError(UpstreamBusyException.class)
+                                .verify(Duration.ofSeconds(2));
+                    }
+                })
+                .then(() -> blocker.tryEmitValue("blokerer"))
+                .expectNext("blokerer")
+                .verifyComplete();
+        assertThat(started).hasValue(0);
+        assertThat(breakerState()).isEqualTo(CircuitBreaker.State.CLOSED.ordinal());
+    }
+
+    // Hedging: er der ingen ledig plads i limiter, sendes intet ekstra kald, og det første svar bruges
+    @Test
+    void hedgeIsSkippedWhenTheLimiterHasNoFreeSlot() {
+        environment.setProperty("tmdb.hedge.families", "details");
+        environment.setProperty("tmdb.timeout.details", "2s");
+        UpstreamCallPolicy policy = policy();
+        UpstreamLimiter limiter = limiter("2s");
+        AtomicInteger attempts = new AtomicInteger();
+
+        // Før målinger ventes halvdelen af timeout (1 s) før hedget, så et svar efter 1,3 s giver et forsøg på at hedge
+        StepVerifier.create(policy.apply(limiter, 0, () -> {
+                    attempts.incrementAndGet();
+                    return Mono.just("svar").delayElement(Duration.ofMillis(1_300));
+                }))
+                .expectNext("svar")
+                .verifyComplete();
+        assertThat(attempts).hasValue(1);
+        assertThat(meterRegistry.get("movie.upstream.hedged").counter().count()).isZero();
+    }
+
+    @Test
+    void hedgeIsSentWhenTheLimiterHasRoom() {
+        environment.setProperty("tmdb.hedge.families", "details");
+        environment.setProperty("tmdb.timeout.details", "400ms");
+        environment.setProperty("tmdb.limit.max-concurrency", "2");
+        UpstreamCallPolicy policy = policy();
+        UpstreamLimiter limiter = limiter("2s");
+        AtomicInteger attempts = new AtomicInteger();
+
+        // Første forsøg hænger, hedget efter 200 ms svarer med det samme
+        StepVerifier.create(policy.apply(limiter, 0, () -> attempts.incrementAndGet() == 1
+                        ? Mono.never()
+                        : Mono.just("hedget")))
+                .expectNext("hedget")
+                .verifyComplete();
+        assertThat(attempts).hasValue(2);
+        assertThat(meterRegistry.get("movie.upstream.hedged").counter().count()).isEqualTo(1);
+    }
+}
@@ -0,0 +1,176 @@
+package com.example.moviesearch.Service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.convert.ApplicationConversionService;
+import org.springframework.core.convert.support.ConfigurableConversionService;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.test.StepVerifier;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.offset;
+
+class UpstreamLimiterTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    // Boots conversion service, så "200ms" kan læses som Duration ligesom i application.properties
+    private UpstreamLimiter limiter(MockEnvironment environment) {
+        environment.setConversionService((ConfigurableConversionService) ApplicationConversionService.getSharedInstance());
+        return new UpstreamLimiter("tmdb", environment, meterRegistry);
+    }
+
+    private static MockEnvironment environment() {
+        return new MockEnvironment()
+                .withProperty("tmdb.limit.rate", "1000")
+                .withProperty("tmdb.limit.queue-timeout", "200ms");
+    }
+
+    private double concurrencyLimit() {
+        return meterRegistry.get("movie.upstream.limit.concurrency").gauge().value();
+    }
+
+    private static WebClientResponseException status(int status, String retryAfter) {
+        HttpHeaders headers = new HttpHeaders();
+        if (retryAfter != null) {
+            headers.add("Retry-After", retryAfter);
+        }
+        return WebClientResponseException.create(status, "status " + status, headers, new byte[0], StandardCharsets.UTF_8);
+    }
+
+    @Test
+    void throttledCallIsRetriedWithinTheDeadline() {
+        UpstreamLimiter limiter = limiter(environment());
+        AtomicInteger attempts = new AtomicInteger();
+
+        Mono<String> call = limiter.execute(0, () -> attempts.incrementAndGet() == 1
+                ? Mono.error(status(429, "0"))
+                : Mono.just("svar"));
+
+        StepVerifier.create(call).expectNext("svar").verifyComplete();
+        assertThat(attempts).hasValue(2);
+        assertThat(meterRegistry.get("movie.upstream.limit.throttled").counter().count()).isEqualTo(1);
+    }
+
+    // Før var filtrene kædet med RetrySpec.filter, hvor det sidste erstattede det første, så også 404 blev prøvet igen
+    @Test
+    void otherErrorsAreNotRetried() {
+        UpstreamLimiter limiter = limiter(environment());
+        AtomicInteger attempts = new AtomicInteger();
+
+        StepVerifier.create(limiter.execute(0, () -> {
+                    attempts.incrementAndGet();
+                    return Mono.error(status(404, null));
+                }))
+                .expectError(WebClientResponseException.NotFound.class)
+                .verify();
+        assertThat(attempts).hasValue(1);
+    }
+
+    @Test
+    void callThatCannotGetASlotBeforeTheQueueTimeoutIsRejected() {
+        UpstreamLimiter limiter = limiter(environment()
+                .withProperty("tmdb.limit.min-concurrency", "1")
+                .withProperty("tmdb.limit.max-concurrency", "1"));
+        Sinks.One<String> first = Sinks.one();
+        AtomicInteger started = new AtomicInteger();
+
+        StepVerifier.create(limiter.execute(0, first::asMono))
+                .then(() -> StepVerifier.create(limiter.execute(0, () -> {
+                            started.incrementAndGet();
+                            return Mono.just("for sent");
+                        }))
+                        .expectError(UpstreamBusyException.class)
+                        .verify(Duration.ofSeconds(2)))
+                .then(() -> first.tryEmitValue("første"))
+                .expectNext("første")
+                .verifyComplete();
+        assertThat(started).hasValue(0);
+        assertThat(meterRegistry.get("movie.upstream.limit.rejected").counter().count()).isEqualTo(1);
+    }
+
+    @Test
+    void emptyRequestBucketRejectsAfterTheQueueTimeout() {
+        UpstreamLimiter limiter = limiter(new MockEnvironment()
+                .withProperty("tmdb.limit.rate", "0.1")
+                .withProperty("tmdb.limit.burst", "1")
+                .withProperty("tmdb.limit.queue-timeout", "100ms"));
+
+        StepVerifier.create(limiter.execute(0, () -> Mono.just("første"))).expectNext("første").verifyComplete();
+        StepVerifier.create(limiter.execute(0, () -> Mono.just("anden")))
+                .expectError(UpstreamBusyException.class)
+                .verify(Duration.ofSeconds(2));
+    }
+
+    // AIMD: 429 skærer grænsen ned med 30 %, gode svar får den til at vokse langsomt igen
+    @Test
+    void concurrencyLimitShrinksOnThrottlingAndGrowsOnSuccess() {
+        // Høj latency-tolerance, så et enkelt langsomt kald i testen (JIT, GC) ikke tæller som overbelastning
+        UpstreamLimiter limiter = limiter(environment()
+                .withProperty("tmdb.limit.max-concurrency", "10")
+                .withProperty("tmdb.limit.max-retries", "0")
+                .withProperty("tmdb.limit.latency-tolerance", "1000"));
+        assertThat(concurrencyLimit()).isEqualTo(10.0);
+
+        StepVerifier.create(limiter.execute(0, () -> Mono.error(status(429, "0"))))
+                .expectError(WebClientResponseException.TooManyRequests.class)
+                .verify();
+        assertThat(concurrencyLimit()).isCloseTo(7.0, offset(1e-9));
+
+        for (int i = 0; i < 5; i++) {
+            StepVerifier.create(limiter.execute(0, () -> Mono.just("svar"))).expectNext("svar").verifyComplete();
+        }
+        assertThat(concurrencyLimit()).isGreaterThan(7.0).isLessThan(8.0);
+    }
+
+    // Tabte hedges, timeouts og afbrudte requests er hverken gode eller dårlige svar
+    @Test
+    void cancelledCallFreesItsSlotButLeavesTheLimitAndLatencyAlone() {
+        UpstreamLimiter limiter = limiter(environment()
+                .withProperty("tmdb.limit.min-concurrency", "1")
+                .withProperty("tmdb.limit.max-concurrency", "10")
+                .withProperty("tmdb.limit.max-retries", "0"));
+        StepVerifier.create(limiter.execute(0, () -> Mono.error(status(429, "0"))))
+                .expectError()
+                .verify();
+        StepVerifier.create(limiter.execute(0, () -> Mono.just("svar").delayElement(Duration.ofMillis(20))))
+                .expectNext("svar")
+                .verifyComplete();
+        double limit = concurrencyLimit();
+        double baseline = limiter.baselineLatencyNanos();
+
+        for (int i = 0; i < 3; i++) {
+            StepVerifier.create(limiter.execute(0, Mono::never))
+                    .thenAwait(Duration.ofMillis(5))
+                    .thenCancel()
+                    .verify();
+        }
+
+        assertThat(concurrencyLimit()).isEqualTo(limit);
+        assertThat(limiter.baselineLatencyNanos()).isEqualTo(baseline);
+        assertThat(meterRegistry.get("movie.upstream.limit.inflight").gauge().value()).isZero();
+    }
+
+    @Test
+    void concurrencyLimitNeverDropsBelowTheMinimum() {
+        UpstreamLimiter limiter = limiter(environment()
+                .withProperty("tmdb.limit.min-concurrency", "3")
+                .withProperty("tmdb.limit.max-concurrency", "4")
+                .withProperty("tmdb.limit.max-retries", "0"));
+
+        for (int i = 0; i < 5; i++) {
+            StepVerifier.create(limiter.execute(0, () -> Mono.error(status(429, "0"))))
+                    .expectError()
+                    .verify();
+        }
+        assertThat(concurrencyLimit()).isEqualTo(3.0);
+    }
+}